@@ -20,6 +20,7 @@ import org.springframework.context.support.ReloadableResourceBundleMessageSource
 import com.foilen.infra.plugin.app.test.docker.webapp.InitSystemBean;
 import com.foilen.infra.plugin.core.system.common.context.CommonServicesContextBean;
 import com.foilen.infra.plugin.core.system.common.context.InternalServicesContextBean;
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.core.system.common.service.IPPluginServiceImpl;
 import com.foilen.infra.plugin.core.system.common.service.MessagingServiceLoggerImpl;
 import com.foilen.infra.plugin.core.system.common.service.TimerServiceInExecutorImpl;
@@ -63,6 +64,7 @@ public class CreateSampleResourcesApp {
         LogbackTools.changeConfig("/logback-quiet.xml");
         AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
         applicationContext.register(CreateSampleResourcesApp.class);
+        applicationContext.register(ChangeExecutionQueue.class);
         applicationContext.register(CommonServicesContextBean.class);
         applicationContext.register(InitSystemBean.class);
         applicationContext.register(InternalServicesContextBean.class);
@@ -30,6 +30,7 @@ import com.foilen.infra.plugin.app.test.docker.model.UnixUser;
 import com.foilen.infra.plugin.app.test.docker.webapp.InitSystemBean;
 import com.foilen.infra.plugin.core.system.common.context.CommonServicesContextBean;
 import com.foilen.infra.plugin.core.system.common.context.InternalServicesContextBean;
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.core.system.common.service.IPPluginServiceImpl;
 import com.foilen.infra.plugin.core.system.common.service.MessagingServiceLoggerImpl;
 import com.foilen.infra.plugin.core.system.common.service.TimerServiceInExecutorImpl;
@@ -47,7 +48,6 @@ import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
 import com.foilen.infra.plugin.v1.core.service.IPResourceService;
-import com.foilen.infra.plugin.v1.core.service.internal.InternalChangeService;
 import com.foilen.infra.plugin.v1.model.outputter.docker.DockerContainerOutputContext;
 import com.foilen.infra.plugin.v1.model.resource.IPResource;
 import com.foilen.smalltools.tools.FileTools;
@@ -61,7 +61,7 @@ public class StartResourcesApp {
         // Import all the resources
         Map<String, IPResource> resourcesByFullName = new HashMap<>();
         IPResourceService resourceService = ctx.getBean(IPResourceService.class);
-        InternalChangeService internalChangeService = ctx.getBean(InternalChangeService.class);
+        ChangeExecutionQueue changeExecutionQueue = ctx.getBean(ChangeExecutionQueue.class);
         File[] subDirectories = inputDirectory.listFiles(new FileFilter() {
             @Override
             public boolean accept(File file) {
@@ -153,7 +153,7 @@ public class StartResourcesApp {
 
         // Execute the changes
         System.out.println("\n---[ Execute the changes ]---");
-        internalChangeService.changesExecute(changes);
+        changeExecutionQueue.execute(changes);
         changes.clear();
     }
 
@@ -202,6 +202,7 @@ public class StartResourcesApp {
         }
         AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
         applicationContext.register(CreateSampleResourcesApp.class);
+        applicationContext.register(ChangeExecutionQueue.class);
         applicationContext.register(CommonServicesContextBean.class);
         applicationContext.register(InitSystemBean.class);
         applicationContext.register(InternalServicesContextBean.class);
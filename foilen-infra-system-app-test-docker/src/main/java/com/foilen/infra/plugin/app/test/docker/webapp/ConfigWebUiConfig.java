@@ -26,6 +26,7 @@ import org.springframework.web.servlet.resource.VersionResourceResolver;
 
 import com.foilen.infra.plugin.core.system.common.context.CommonServicesContextBean;
 import com.foilen.infra.plugin.core.system.common.context.InternalServicesContextBean;
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.core.system.common.service.IPPluginServiceImpl;
 import com.foilen.infra.plugin.core.system.common.service.MessagingServiceLoggerImpl;
 import com.foilen.infra.plugin.core.system.common.service.SecurityServiceConstantImpl;
@@ -78,6 +79,11 @@ public class ConfigWebUiConfig implements WebMvcConfigurer {
 
     }
 
+    @Bean
+    public ChangeExecutionQueue changeExecutionQueue() {
+        return new ChangeExecutionQueue();
+    }
+
     @Bean
     public CommonServicesContextBean commonServicesContextBean() {
         return new CommonServicesContextBean();
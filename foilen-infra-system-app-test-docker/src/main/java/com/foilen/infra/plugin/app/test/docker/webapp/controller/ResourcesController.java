@@ -34,6 +34,7 @@ import com.foilen.infra.plugin.app.test.docker.webapp.controller.response.Resour
 import com.foilen.infra.plugin.app.test.docker.webapp.controller.response.ResourceUpdateResponse;
 import com.foilen.infra.plugin.app.test.docker.webapp.mvc.Authentication;
 import com.foilen.infra.plugin.app.test.docker.webapp.mvc.UiSuccessErrorView;
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.core.system.memory.service.ResourceServicesInMemoryImpl;
 import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
@@ -41,7 +42,6 @@ import com.foilen.infra.plugin.v1.core.exception.ResourcePrimaryKeyCollisionExce
 import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
 import com.foilen.infra.plugin.v1.core.service.IPPluginService;
 import com.foilen.infra.plugin.v1.core.service.SecurityService;
-import com.foilen.infra.plugin.v1.core.service.internal.InternalChangeService;
 import com.foilen.infra.plugin.v1.core.visual.PageDefinition;
 import com.foilen.infra.plugin.v1.core.visual.editor.ResourceEditor;
 import com.foilen.infra.plugin.v1.core.visual.pageItem.field.HiddenFieldPageItem;
@@ -58,13 +58,13 @@ public class ResourcesController extends ResourcesControllerExtra {
     public static final String RESOURCE_ID_FIELD = "_resourceId";
     public static final String VIEW_BASE_PATH = "resource";
 
+    @Autowired
+    private ChangeExecutionQueue changeExecutionQueue;
     @Autowired
     private CommonServicesContext commonServicesContext;
     @Autowired
     private ResourceServicesInMemoryImpl resourceService;
     @Autowired
-    private InternalChangeService internalChangeService;
-    @Autowired
     private MessageSource messageSource;
     @Autowired
     private IPPluginService ipPluginService;
@@ -145,7 +145,7 @@ public class ResourcesController extends ResourcesControllerExtra {
                 .execute((ui, modelAndView) -> {
                     ChangesContext changes = new ChangesContext(resourceService);
                     changes.resourceDelete(resourceId);
-                    internalChangeService.changesExecute(changes);
+                    changeExecutionQueue.execute(changes);
                 });
     }
 
@@ -344,7 +344,7 @@ public class ResourcesController extends ResourcesControllerExtra {
                     resourceEditor.fillResource(commonServicesContext, changesContext, formValues, newResource);
                     newResource.setResourceEditorName(editorName);
                     changesContext.resourceUpdate(resourceId, newResource);
-                    internalChangeService.changesExecute(changesContext);
+                    changeExecutionQueue.execute(changesContext);
                 } catch (ResourcePrimaryKeyCollisionException e) {
                     logger.error("Problem saving the resource", e);
                     resourceUpdateResponse.setTopError(messageSource.getMessage("error.duplicateResource", null, locale));
@@ -366,7 +366,7 @@ public class ResourcesController extends ResourcesControllerExtra {
                     resourceEditor.fillResource(commonServicesContext, changesContext, formValues, resource);
                     changesContext.resourceAdd(resource);
                     resource.setResourceEditorName(editorName);
-                    internalChangeService.changesExecute(changesContext);
+                    changeExecutionQueue.execute(changesContext);
                     resource = resourceService.resourceFindByPk(resource).get();
                 } catch (ResourcePrimaryKeyCollisionException e) {
                     logger.error("Problem saving the resource", e);
@@ -0,0 +1,33 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangeExecutionHook;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesInTransactionContext;
+
+/**
+ * A {@link ChangeExecutionHook} that is also told about the timings of the transaction. All the durations are in nanoseconds.
+ */
+public interface ChangeExecutionLifecycleHook extends ChangeExecutionHook {
+
+    default void actionExecuted(ChangesInTransactionContext changesInTransactionContext, ActionHandler actionHandler, long durationInNs) {
+    }
+
+    default void changesApplied(ChangesInTransactionContext changesInTransactionContext, ChangeKind changeKind, int count, long durationInNs) {
+    }
+
+    default void iterationCompleted(ChangesInTransactionContext changesInTransactionContext, int iteration, int actionsCount, long durationInNs) {
+    }
+
+    default void transactionCompleted(ChangesInTransactionContext changesInTransactionContext, boolean success, int iterations, long durationInNs) {
+    }
+
+}
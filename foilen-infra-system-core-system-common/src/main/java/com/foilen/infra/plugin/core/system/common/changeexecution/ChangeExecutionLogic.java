@@ -11,16 +11,24 @@ package com.foilen.infra.plugin.core.system.common.changeexecution;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import com.foilen.infra.plugin.core.system.common.resource.ResourceStructuralEquality;
 import com.foilen.infra.plugin.v1.core.context.ChangesContext;
+import com.foilen.infra.plugin.v1.core.context.ChangesEventContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
 import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
 import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangeExecutionHook;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesEventHandler;
 import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesInTransactionContext;
 import com.foilen.infra.plugin.v1.core.exception.InfiniteUpdateLoop;
 import com.foilen.infra.plugin.v1.core.exception.ResourceNotFoundException;
@@ -32,12 +40,9 @@ import com.foilen.infra.plugin.v1.model.resource.IPResource;
 import com.foilen.smalltools.JavaEnvironmentValues;
 import com.foilen.smalltools.tools.AbstractBasics;
 import com.foilen.smalltools.tools.CollectionsTools;
-import com.foilen.smalltools.tools.JsonTools;
 import com.foilen.smalltools.tools.SecureRandomTools;
-import com.foilen.smalltools.tools.StringTools;
 import com.foilen.smalltools.tools.ThreadNameStateTool;
 import com.foilen.smalltools.tools.ThreadTools;
-import com.foilen.smalltools.tools.TimeExecutionTools;
 import com.foilen.smalltools.tuple.Tuple2;
 import com.foilen.smalltools.tuple.Tuple3;
 import com.google.common.base.Joiner;
@@ -52,15 +57,25 @@ public class ChangeExecutionLogic extends AbstractBasics {
     private IPPluginService ipPluginService;
     private IPResourceService ipResourceService;
     private InternalChangeService internalChangeService;
+    private TransactionResourceCache transactionResourceCache;
+    private ConvergenceTracker convergenceTracker;
+    private Map<ChangesEventHandler, ResourcesReadSet> readSetByHandler = new ConcurrentHashMap<>();
+    private ResourcesChangedSet changedSinceLastCompute = new ResourcesChangedSet();
 
     // Properties
     private List<ChangeExecutionHook> hooks = new ArrayList<>();
     private long infiniteLoopTimeoutInMs = 15000;
+    private int maxIdenticalIterations = 3;
+    private int maxUpdatesPerResource = 0;
+    private ForkJoinPool computeActionsPool;
+    private ForkJoinPool executeActionsPool;
 
     public ChangeExecutionLogic(CommonServicesContext commonServicesContext, InternalServicesContext internalServicesContext) {
-        this.commonServicesContext = commonServicesContext;
+        this.transactionResourceCache = new TransactionResourceCache(commonServicesContext.getResourceService());
+        this.commonServicesContext = new CommonServicesContext(commonServicesContext.getMessagingService(), commonServicesContext.getPluginService(), transactionResourceCache,
+                commonServicesContext.getTimerService(), commonServicesContext.getTranslationService());
         this.ipPluginService = commonServicesContext.getPluginService();
-        this.ipResourceService = commonServicesContext.getResourceService();
+        this.ipResourceService = transactionResourceCache;
         this.internalChangeService = internalServicesContext.getInternalChangeService();
     }
 
@@ -77,6 +92,7 @@ public class ChangeExecutionLogic extends AbstractBasics {
         );
 
         // Mark refreshed
+        long sectionStartInNs = System.nanoTime();
         for (String id : changes.getResourcesToRefresh()) {
             Optional<IPResource> resourceO = ipResourceService.resourceFind(id);
             if (resourceO.isPresent()) {
@@ -88,9 +104,12 @@ public class ChangeExecutionLogic extends AbstractBasics {
 
             // Mark it
             changesInTransactionContext.addRefreshedResource(resourceO.get());
+            changedSinceLastCompute.resourceChanged(resourceO.get());
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.RESOURCE_REFRESH, changes.getResourcesToRefresh().size(), sectionStartInNs);
 
         // Delete
+        sectionStartInNs = System.nanoTime();
         for (String id : changes.getResourcesToDelete()) {
 
             Optional<IPResource> resourceO = ipResourceService.resourceFind(id);
@@ -103,29 +122,44 @@ public class ChangeExecutionLogic extends AbstractBasics {
 
             // The resource
             IPResource resource = resourceO.get();
-            CollectionsTools.getOrCreateEmpty(changesInTransactionContext.getUpdateCountByResourceId(), resource.getClass().getSimpleName() + " / " + resource.getResourceName(), AtomicInteger.class)
-                    .incrementAndGet();
+            incrementUpdateCount(changesInTransactionContext, resource);
+            convergenceTracker.resourceChanged(ChangeKind.RESOURCE_DELETE, resource);
             hooks.forEach(h -> h.resourceDeleted(changesInTransactionContext, resource));
             changesInTransactionContext.addDeletedResource(resource);
 
+            changedSinceLastCompute.resourceChanged(resource);
+
             // The links
-            changesInTransactionContext.addDeletedLinks(ipResourceService.linkFindAllRelatedByResource(id));
+            List<Tuple3<IPResource, String, IPResource>> deletedLinks = ipResourceService.linkFindAllRelatedByResource(id);
+            changesInTransactionContext.addDeletedLinks(deletedLinks);
+            deletedLinks.forEach(it -> changedSinceLastCompute.linkChanged(it.getA(), it.getC()));
 
             // The tags
             changesInTransactionContext.addDeletedTags(resource, ipResourceService.tagFindAllByResource(resource));
+            changedSinceLastCompute.tagChanged(resource);
 
             // Execution
             internalChangeService.resourceDelete(id);
+            transactionResourceCache.invalidate(resource);
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.RESOURCE_DELETE, changes.getResourcesToDelete().size(), sectionStartInNs);
+
+        // Resolve the resources of the links and tags to delete
+        sectionStartInNs = System.nanoTime();
+        ResourcePrimaryKeyResolver resourcePrimaryKeyResolver = new ResourcePrimaryKeyResolver(ipResourceService);
+        resourcePrimaryKeyResolver.prefetch(getLinksAndTagsResources(changes.getLinksToDelete(), changes.getTagsToDelete()));
+
         for (Tuple3<IPResource, String, IPResource> link : changes.getLinksToDelete()) {
             logger.debug("[APPLY] Delete link {}", link);
-            Optional<IPResource> fromResource = ipResourceService.resourceFindByPk(link.getA());
-            Optional<IPResource> toResource = ipResourceService.resourceFindByPk(link.getC());
+            Optional<IPResource> fromResource = resourcePrimaryKeyResolver.resolve(link.getA());
+            Optional<IPResource> toResource = resourcePrimaryKeyResolver.resolve(link.getC());
             if (fromResource.isPresent() && toResource.isPresent()) {
                 String fromId = fromResource.get().getInternalId();
                 String toId = toResource.get().getInternalId();
                 String linkType = link.getB();
                 if (internalChangeService.linkDelete(fromId, linkType, toId)) {
+                    convergenceTracker.linkChanged(ChangeKind.LINK_DELETE, fromResource.get(), linkType, toResource.get());
+                    changedSinceLastCompute.linkChanged(fromResource.get(), toResource.get());
                     hooks.forEach(h -> h.linkDeleted(changesInTransactionContext, fromResource.get(), linkType, toResource.get()));
                     changesInTransactionContext.addDeletedLink(new Tuple3<IPResource, String, IPResource>(fromResource.get(), linkType, toResource.get()));
                 } else {
@@ -133,13 +167,17 @@ public class ChangeExecutionLogic extends AbstractBasics {
                 }
             }
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.LINK_DELETE, changes.getLinksToDelete().size(), sectionStartInNs);
+        sectionStartInNs = System.nanoTime();
         for (Tuple2<IPResource, String> tag : changes.getTagsToDelete()) {
             logger.debug("[APPLY] Delete tag {}", tag);
-            Optional<IPResource> resource = ipResourceService.resourceFindByPk(tag.getA());
+            Optional<IPResource> resource = resourcePrimaryKeyResolver.resolve(tag.getA());
             if (resource.isPresent()) {
                 String internalId = resource.get().getInternalId();
                 String tagName = tag.getB();
                 if (internalChangeService.tagDelete(internalId, tagName)) {
+                    convergenceTracker.tagChanged(ChangeKind.TAG_DELETE, resource.get(), tagName);
+                    changedSinceLastCompute.tagChanged(resource.get());
                     hooks.forEach(h -> h.tagDeleted(changesInTransactionContext, resource.get(), tagName));
                     changesInTransactionContext.addDeletedTag(resource.get(), tagName);
                 } else {
@@ -147,8 +185,10 @@ public class ChangeExecutionLogic extends AbstractBasics {
                 }
             }
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.TAG_DELETE, changes.getTagsToDelete().size(), sectionStartInNs);
 
         // Add
+        sectionStartInNs = System.nanoTime();
         for (IPResource resource : changes.getResourcesToAdd()) {
             logger.debug("[APPLY] Add resource {}", resource);
             // Check if already exists
@@ -156,23 +196,31 @@ public class ChangeExecutionLogic extends AbstractBasics {
                 throw new ResourcePrimaryKeyCollisionException(resource);
             }
 
-            CollectionsTools.getOrCreateEmpty(changesInTransactionContext.getUpdateCountByResourceId(), resource.getClass().getSimpleName() + " / " + resource.getResourceName(), AtomicInteger.class)
-                    .incrementAndGet();
-
             hooks.forEach(h -> h.resourceAdded(changesInTransactionContext, resource));
 
             IPResource addedResource = internalChangeService.resourceAdd(resource);
             resource.setInternalId(addedResource.getInternalId());
+            incrementUpdateCount(changesInTransactionContext, addedResource);
+            transactionResourceCache.invalidate(addedResource);
+            convergenceTracker.resourceChanged(ChangeKind.RESOURCE_ADD, addedResource);
+            changedSinceLastCompute.resourceChanged(addedResource);
 
             changesInTransactionContext.addAddedResource(addedResource);
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.RESOURCE_ADD, changes.getResourcesToAdd().size(), sectionStartInNs);
+
+        // Resolve the resources of the links and tags to add
+        sectionStartInNs = System.nanoTime();
+        resourcePrimaryKeyResolver = new ResourcePrimaryKeyResolver(ipResourceService);
+        resourcePrimaryKeyResolver.prefetch(getLinksAndTagsResources(changes.getLinksToAdd(), changes.getTagsToAdd()));
+
         for (Tuple3<IPResource, String, IPResource> link : changes.getLinksToAdd()) {
             logger.debug("[APPLY] Add link {}", link);
-            Optional<IPResource> fromResource = ipResourceService.resourceFindByPk(link.getA());
+            Optional<IPResource> fromResource = resourcePrimaryKeyResolver.resolve(link.getA());
             if (!fromResource.isPresent()) {
                 throw new ResourceNotFoundException(link.getA());
             }
-            Optional<IPResource> toResource = ipResourceService.resourceFindByPk(link.getC());
+            Optional<IPResource> toResource = resourcePrimaryKeyResolver.resolve(link.getC());
             if (!toResource.isPresent()) {
                 throw new ResourceNotFoundException(link.getC());
             }
@@ -186,13 +234,17 @@ public class ChangeExecutionLogic extends AbstractBasics {
             } else {
                 // Add
                 internalChangeService.linkAdd(fromId, linkType, toId);
+                convergenceTracker.linkChanged(ChangeKind.LINK_ADD, fromResource.get(), linkType, toResource.get());
+                changedSinceLastCompute.linkChanged(fromResource.get(), toResource.get());
                 hooks.forEach(h -> h.linkAdded(changesInTransactionContext, fromResource.get(), linkType, toResource.get()));
                 changesInTransactionContext.addAddedLink(link);
             }
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.LINK_ADD, changes.getLinksToAdd().size(), sectionStartInNs);
+        sectionStartInNs = System.nanoTime();
         for (Tuple2<IPResource, String> tag : changes.getTagsToAdd()) {
             logger.debug("[APPLY] Add tag {}", tag);
-            Optional<IPResource> resource = ipResourceService.resourceFindByPk(tag.getA());
+            Optional<IPResource> resource = resourcePrimaryKeyResolver.resolve(tag.getA());
             if (!resource.isPresent()) {
                 throw new ResourceNotFoundException(tag.getA());
             }
@@ -205,12 +257,16 @@ public class ChangeExecutionLogic extends AbstractBasics {
             } else {
                 // Add
                 internalChangeService.tagAdd(pluginResourceId, tagName);
+                convergenceTracker.tagChanged(ChangeKind.TAG_ADD, resource.get(), tagName);
+                changedSinceLastCompute.tagChanged(resource.get());
                 hooks.forEach(h -> h.tagAdded(changesInTransactionContext, resource.get(), tagName));
                 changesInTransactionContext.addAddedTag(resource.get(), tagName);
             }
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.TAG_ADD, changes.getTagsToAdd().size(), sectionStartInNs);
 
         // Update
+        sectionStartInNs = System.nanoTime();
         for (Tuple2<String, IPResource> update : changes.getResourcesToUpdate()) {
 
             logger.debug("[APPLY] Update resource {}", update);
@@ -234,23 +290,71 @@ public class ChangeExecutionLogic extends AbstractBasics {
             }
 
             // Update the resource
-            CollectionsTools.getOrCreateEmpty(changesInTransactionContext.getUpdateCountByResourceId(), previousResource.getClass().getSimpleName() + " / " + previousResource.getResourceName(),
-                    AtomicInteger.class).incrementAndGet();
+            incrementUpdateCount(changesInTransactionContext, previousResource);
             updatedResource.setInternalId(update.getA());
             // check if really different
-            if (StringTools.safeEquals(JsonTools.compactPrintWithoutNulls(previousResource), JsonTools.compactPrintWithoutNulls(updatedResource))) {
+            if (ResourceStructuralEquality.resourceEquals(previousResource, updatedResource)) {
                 logger.debug("[APPLY] Updated resource {} didn't really change", update);
             } else {
                 internalChangeService.resourceUpdate(previousResource, updatedResource);
+                transactionResourceCache.invalidate(previousResource);
+                transactionResourceCache.invalidate(updatedResource);
+                convergenceTracker.resourceChanged(ChangeKind.RESOURCE_UPDATE, updatedResource);
+                changedSinceLastCompute.resourceChanged(previousResource);
+                changedSinceLastCompute.resourceChanged(updatedResource);
                 hooks.forEach(h -> h.resourceUpdated(changesInTransactionContext, previousResource, updatedResource));
                 changesInTransactionContext.addUpdatedResource(previousResource, updatedResource);
             }
 
         }
+        notifyChangesApplied(changesInTransactionContext, ChangeKind.RESOURCE_UPDATE, changes.getResourcesToUpdate().size(), sectionStartInNs);
 
         changes.clear();
     }
 
+    private List<ActionHandler> computeActionsToExecute(ChangesInTransactionContext changesInTransactionContext) {
+
+        // Skip the handlers that did not have anything they read changed
+        List<ChangesEventContext> changesEvents = ipPluginService.getChangesEvents().stream() //
+                .filter(changesEvent -> isToCompute(changesEvent)) //
+                .collect(Collectors.toList());
+        changedSinceLastCompute.clear();
+
+        // Sequential
+        if (computeActionsPool == null || changesEvents.size() <= 1) {
+            List<ActionHandler> actionHandlers = new ArrayList<>();
+            changesEvents.forEach(changesEvent -> {
+                actionHandlers.addAll(computeActionsToExecute(changesEvent.getChangesEventHandler(), changesInTransactionContext));
+            });
+            return actionHandlers;
+        }
+
+        // In parallel (the results are kept in the same order as the events)
+        List<List<ActionHandler>> actionHandlersPerEvent = computeActionsPool.submit(() -> changesEvents.parallelStream() //
+                .map(changesEvent -> computeActionsToExecute(changesEvent.getChangesEventHandler(), changesInTransactionContext)) //
+                .collect(Collectors.toList()) //
+        ).join();
+        List<ActionHandler> actionHandlers = new ArrayList<>();
+        actionHandlersPerEvent.forEach(it -> actionHandlers.addAll(it));
+        return actionHandlers;
+    }
+
+    private List<ActionHandler> computeActionsToExecute(ChangesEventHandler changesEventHandler, ChangesInTransactionContext changesInTransactionContext) {
+
+        if (!(changesEventHandler instanceof IncrementalChangesEventHandler)) {
+            return changesEventHandler.computeActionsToExecute(commonServicesContext, changesInTransactionContext);
+        }
+
+        // Record what it reads
+        ResourcesReadSet readSet = new ResourcesReadSet();
+        readSet.addWatchedResourceClasses(((IncrementalChangesEventHandler) changesEventHandler).getWatchedResourceClasses());
+        CommonServicesContext recordingCommonServicesContext = new CommonServicesContext(commonServicesContext.getMessagingService(), commonServicesContext.getPluginService(),
+                new ReadSetRecordingResourceService(ipResourceService, readSet), commonServicesContext.getTimerService(), commonServicesContext.getTranslationService());
+        List<ActionHandler> actionHandlers = changesEventHandler.computeActionsToExecute(recordingCommonServicesContext, changesInTransactionContext);
+        readSetByHandler.put(changesEventHandler, readSet);
+        return actionHandlers;
+    }
+
     public void execute(ChangesContext changes) {
 
         // Prepare contexts
@@ -275,22 +379,32 @@ public class ChangeExecutionLogic extends AbstractBasics {
 
         logger.info("----- [changesExecute] Begin -----");
 
+        long transactionStartInNs = System.nanoTime();
         long maxTime = System.currentTimeMillis() + infiniteLoopTimeoutInMs;
+        transactionResourceCache.clear();
+        readSetByHandler.clear();
+        changedSinceLastCompute.clear();
+        convergenceTracker = new ConvergenceTracker(ipResourceService);
+        convergenceTracker.setMaxIdenticalIterations(maxIdenticalIterations);
+        convergenceTracker.setMaxUpdatesPerResource(maxUpdatesPerResource);
+        AtomicInteger iterations = new AtomicInteger();
 
         try {
 
             // 1. Apply the changes
+            convergenceTracker.setLastActionHandler(null);
             applyChanges(changesInTransactionContext, changes);
+            convergenceTracker.completeIteration(0);
             changesInTransactionContext.setExplicitChange(false);
 
             boolean hadChangesInLastLoop = changesInTransactionContext.hasChangesInLastRun();
             while (System.currentTimeMillis() < maxTime) {
 
+                int iteration = iterations.incrementAndGet();
+                long iterationStartInNs = System.nanoTime();
+
                 // 2. Call the rules
-                List<ActionHandler> actionHandlers = new ArrayList<>();
-                ipPluginService.getChangesEvents().forEach(changesEvent -> {
-                    actionHandlers.addAll(changesEvent.getChangesEventHandler().computeActionsToExecute(commonServicesContext, changesInTransactionContext));
-                });
+                List<ActionHandler> actionHandlers = computeActionsToExecute(changesInTransactionContext);
 
                 // Clear the changes in the last loop
                 changesInTransactionContext.clearLast();
@@ -298,22 +412,14 @@ public class ChangeExecutionLogic extends AbstractBasics {
                 // 3. Run all ActionHandler
                 AtomicBoolean hadChanges = new AtomicBoolean();
                 logger.info("There are {} actions to handle", actionHandlers.size());
-                actionHandlers.forEach(actionHandler -> {
-                    long executionTimeInMs = TimeExecutionTools.measureInMs(() -> {
-                        logger.info("Begin action {}", actionHandler.getClass().getName());
-                        actionHandler.executeAction(commonServicesContext, changes);
-                        logger.info("End action {}", actionHandler.getClass().getName());
-                    });
-
-                    // 4. If any changes, apply the changes
-                    if (changes.hasChanges()) {
-                        hadChanges.set(true);
-                        applyChanges(changesInTransactionContext, changes);
-                    }
-
-                    // Report
-                    changesInTransactionContext.addExecutionTime(actionHandler, executionTimeInMs);
-                });
+                if (executeActionsPool == null || actionHandlers.size() <= 1) {
+                    actionHandlers.forEach(actionHandler -> executeActionAndApply(changesInTransactionContext, changes, actionHandler, hadChanges));
+                } else {
+                    executeActionsConcurrentlyAndApply(changesInTransactionContext, changes, actionHandlers, hadChanges);
+                }
+                convergenceTracker.completeIteration(iteration);
+                long iterationDurationInNs = System.nanoTime() - iterationStartInNs;
+                forEachLifecycleHook(h -> h.iterationCompleted(changesInTransactionContext, iteration, actionHandlers.size(), iterationDurationInNs));
 
                 // 4. If any changes, go to #2
                 if (!hadChanges.get() && !hadChangesInLastLoop) {
@@ -328,25 +434,35 @@ public class ChangeExecutionLogic extends AbstractBasics {
             }
 
             if (changesInTransactionContext.hasChangesInLastRun()) {
-                // InfiniteUpdateLoop Display report
-                logger.error("Iterated for too long and there are always changes");
-                hooks.forEach(h -> h.failureInfinite(changesInTransactionContext));
-                logger.info("Report Update count: {}", Joiner.on(", ").join(changesInTransactionContext.generateTop10UpdateCountReport()));
-                logger.info("Report Event Handler execution time: {}", Joiner.on(", ").join(changesInTransactionContext.generateTop10UpdateEventHandlerExecutionTimeReport()));
-                throw new InfiniteUpdateLoop("Iterated for too long and there are always changes");
+                throw new InfiniteUpdateLoop("Iterated for too long and there are always changes. Last applied by " + convergenceTracker.getLastActionHandler() + " on "
+                        + convergenceTracker.getLastResource());
             }
 
             // Show reports
             hooks.forEach(h -> h.success(changesInTransactionContext));
             logger.info("Report Update count: {}", Joiner.on(", ").join(changesInTransactionContext.generateTop10UpdateCountReport()));
             logger.info("Report Event Handler execution time: {}", Joiner.on(", ").join(changesInTransactionContext.generateTop10UpdateEventHandlerExecutionTimeReport()));
+            logger.info("Report Resource cache: {} hits, {} misses", transactionResourceCache.getHits(), transactionResourceCache.getMisses());
 
             // Complete the transaction
+            long transactionDurationInNs = System.nanoTime() - transactionStartInNs;
+            forEachLifecycleHook(h -> h.transactionCompleted(changesInTransactionContext, true, iterations.get(), transactionDurationInNs));
             logger.info("===== [changesExecute] Completed =====");
 
+        } catch (InfiniteUpdateLoop e) {
+            // Display report
+            logger.error("===== [changesExecute] Changes are not converging. Rolling back transaction =====", e);
+            hooks.forEach(h -> h.failureInfinite(changesInTransactionContext));
+            logger.info("Report Update count: {}", Joiner.on(", ").join(changesInTransactionContext.generateTop10UpdateCountReport()));
+            logger.info("Report Event Handler execution time: {}", Joiner.on(", ").join(changesInTransactionContext.generateTop10UpdateEventHandlerExecutionTimeReport()));
+            long transactionDurationInNs = System.nanoTime() - transactionStartInNs;
+            forEachLifecycleHook(h -> h.transactionCompleted(changesInTransactionContext, false, iterations.get(), transactionDurationInNs));
+            throw e;
         } catch (RuntimeException e) {
             // Rollback the transaction
             logger.error("===== [changesExecute] Problem while executing the changes. Rolling back transaction =====", e);
+            long transactionDurationInNs = System.nanoTime() - transactionStartInNs;
+            forEachLifecycleHook(h -> h.transactionCompleted(changesInTransactionContext, false, iterations.get(), transactionDurationInNs));
             throw e;
         } finally {
             threadNameStateTool.revert();
@@ -354,12 +470,178 @@ public class ChangeExecutionLogic extends AbstractBasics {
 
     }
 
+    private void executeActionAndApply(ChangesInTransactionContext changesInTransactionContext, ChangesContext changes, ActionHandler actionHandler, AtomicBoolean hadChanges) {
+        long startInNs = System.nanoTime();
+        logger.info("Begin action {}", actionHandler.getClass().getName());
+        actionHandler.executeAction(commonServicesContext, changes);
+        logger.info("End action {}", actionHandler.getClass().getName());
+        long executionTimeInNs = System.nanoTime() - startInNs;
+
+        // 4. If any changes, apply the changes
+        if (changes.hasChanges()) {
+            hadChanges.set(true);
+            convergenceTracker.setLastActionHandler(actionHandler);
+            applyChanges(changesInTransactionContext, changes);
+        }
+
+        // Report
+        changesInTransactionContext.addExecutionTime(actionHandler, executionTimeInNs / 1000000);
+        forEachLifecycleHook(h -> h.actionExecuted(changesInTransactionContext, actionHandler, executionTimeInNs));
+    }
+
+    private void executeActionsConcurrentlyAndApply(ChangesInTransactionContext changesInTransactionContext, ChangesContext changes, List<ActionHandler> actionHandlers,
+            AtomicBoolean hadChanges) {
+
+        // Execute all of them at the same time, each with their own changes
+        List<Tuple3<ActionHandler, ChangesContext, Long>> executedActions = executeActionsPool.submit(() -> actionHandlers.parallelStream() //
+                .map(actionHandler -> {
+                    ChangesContext actionChanges = new ChangesContext(ipResourceService);
+                    long startInNs = System.nanoTime();
+                    logger.info("Begin action {}", actionHandler.getClass().getName());
+                    actionHandler.executeAction(commonServicesContext, actionChanges);
+                    logger.info("End action {}", actionHandler.getClass().getName());
+                    return new Tuple3<>(actionHandler, actionChanges, System.nanoTime() - startInNs);
+                }) //
+                .collect(Collectors.toList()) //
+        ).join();
+
+        // 4. Apply the changes, in order, of those that do not write on the same resources, links or tags than the ones applied before them
+        ChangesWriteSet appliedWriteSet = new ChangesWriteSet();
+        List<ActionHandler> conflictingActionHandlers = new ArrayList<>();
+        for (Tuple3<ActionHandler, ChangesContext, Long> executedAction : executedActions) {
+            ActionHandler actionHandler = executedAction.getA();
+            ChangesContext actionChanges = executedAction.getB();
+            changesInTransactionContext.addExecutionTime(actionHandler, executedAction.getC() / 1000000);
+            forEachLifecycleHook(h -> h.actionExecuted(changesInTransactionContext, actionHandler, executedAction.getC()));
+
+            if (!actionChanges.hasChanges()) {
+                continue;
+            }
+
+            ChangesWriteSet actionWriteSet = new ChangesWriteSet(ipResourceService, actionChanges);
+            if (actionWriteSet.conflictsWith(appliedWriteSet)) {
+                logger.debug("Action {} has changes that conflict with the actions applied before it. Will execute it again", actionHandler.getClass().getName());
+                conflictingActionHandlers.add(actionHandler);
+                continue;
+            }
+
+            appliedWriteSet.addAll(actionWriteSet);
+            hadChanges.set(true);
+            convergenceTracker.setLastActionHandler(actionHandler);
+            applyChanges(changesInTransactionContext, actionChanges);
+        }
+
+        // Execute again the conflicting ones one after the other
+        if (!conflictingActionHandlers.isEmpty()) {
+            logger.info("{} actions had conflicting changes. Executing them again one after the other", conflictingActionHandlers.size());
+            conflictingActionHandlers.forEach(actionHandler -> executeActionAndApply(changesInTransactionContext, changes, actionHandler, hadChanges));
+        }
+
+    }
+
+    private void forEachLifecycleHook(Consumer<ChangeExecutionLifecycleHook> consumer) {
+        for (ChangeExecutionHook hook : hooks) {
+            if (hook instanceof ChangeExecutionLifecycleHook) {
+                consumer.accept((ChangeExecutionLifecycleHook) hook);
+            }
+        }
+    }
+
+    public ForkJoinPool getComputeActionsPool() {
+        return computeActionsPool;
+    }
+
+    public ForkJoinPool getExecuteActionsPool() {
+        return executeActionsPool;
+    }
+
     public long getInfiniteLoopTimeoutInMs() {
         return infiniteLoopTimeoutInMs;
     }
 
+    public int getMaxIdenticalIterations() {
+        return maxIdenticalIterations;
+    }
+
+    public int getMaxUpdatesPerResource() {
+        return maxUpdatesPerResource;
+    }
+
+    private List<IPResource> getLinksAndTagsResources(List<Tuple3<IPResource, String, IPResource>> links, List<Tuple2<IPResource, String>> tags) {
+        List<IPResource> resources = new ArrayList<>();
+        for (Tuple3<IPResource, String, IPResource> link : links) {
+            resources.add(link.getA());
+            resources.add(link.getC());
+        }
+        for (Tuple2<IPResource, String> tag : tags) {
+            resources.add(tag.getA());
+        }
+        return resources;
+    }
+
+    private void incrementUpdateCount(ChangesInTransactionContext changesInTransactionContext, IPResource resource) {
+        String resourceDescription = resource.getClass().getSimpleName() + " / " + resource.getResourceName();
+        CollectionsTools.getOrCreateEmpty(changesInTransactionContext.getUpdateCountByResourceId(), resourceDescription, AtomicInteger.class).incrementAndGet();
+        convergenceTracker.resourceUpdateCounted(resource);
+    }
+
+    private boolean isToCompute(ChangesEventContext changesEvent) {
+        ResourcesReadSet readSet = readSetByHandler.get(changesEvent.getChangesEventHandler());
+        if (readSet == null || readSet.isTouchedBy(changedSinceLastCompute)) {
+            return true;
+        }
+        logger.debug("Skipping {} since nothing it read changed", changesEvent.getChangesHandlerName());
+        return false;
+    }
+
+    private void notifyChangesApplied(ChangesInTransactionContext changesInTransactionContext, ChangeKind changeKind, int count, long sectionStartInNs) {
+        long durationInNs = System.nanoTime() - sectionStartInNs;
+        forEachLifecycleHook(h -> h.changesApplied(changesInTransactionContext, changeKind, count, durationInNs));
+    }
+
+    /**
+     * Compute the actions to execute of all the {@link ChangesEventHandler} in parallel. They must only read the resources since they are running at the same time.
+     *
+     * @param computeActionsPool
+     *            the pool to use or null to compute them one after the other (default)
+     */
+    public void setComputeActionsPool(ForkJoinPool computeActionsPool) {
+        this.computeActionsPool = computeActionsPool;
+    }
+
+    /**
+     * Execute all the {@link ActionHandler} of an iteration at the same time, each with their own {@link ChangesContext}. Their changes are then applied in order and those that write on the same
+     * resources, links or tags than the ones applied before them are executed again one after the other.
+     *
+     * @param executeActionsPool
+     *            the pool to use or null to execute them one after the other (default)
+     */
+    public void setExecuteActionsPool(ForkJoinPool executeActionsPool) {
+        this.executeActionsPool = executeActionsPool;
+    }
+
     public void setInfiniteLoopTimeoutInMs(long infiniteLoopTimeoutInMs) {
         this.infiniteLoopTimeoutInMs = infiniteLoopTimeoutInMs;
     }
 
+    /**
+     * The amount of times the exact same changes can be applied in different iterations before failing with {@link InfiniteUpdateLoop}.
+     *
+     * @param maxIdenticalIterations
+     *            the maximum (default: 3)
+     */
+    public void setMaxIdenticalIterations(int maxIdenticalIterations) {
+        this.maxIdenticalIterations = maxIdenticalIterations;
+    }
+
+    /**
+     * The amount of times a resource can be added, updated or deleted in a transaction before failing with {@link InfiniteUpdateLoop}.
+     *
+     * @param maxUpdatesPerResource
+     *            the maximum or 0 for unlimited (default: 0)
+     */
+    public void setMaxUpdatesPerResource(int maxUpdatesPerResource) {
+        this.maxUpdatesPerResource = maxUpdatesPerResource;
+    }
+
 }
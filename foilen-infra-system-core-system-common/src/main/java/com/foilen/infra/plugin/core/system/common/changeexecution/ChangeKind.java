@@ -0,0 +1,26 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+/**
+ * The kinds of changes that are applied, in the order they are applied.
+ */
+public enum ChangeKind {
+
+    RESOURCE_REFRESH, //
+    RESOURCE_DELETE, //
+    LINK_DELETE, //
+    TAG_DELETE, //
+    RESOURCE_ADD, //
+    LINK_ADD, //
+    TAG_ADD, //
+    RESOURCE_UPDATE, //
+
+}
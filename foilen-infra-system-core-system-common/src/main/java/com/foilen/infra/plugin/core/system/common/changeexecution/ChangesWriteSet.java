@@ -0,0 +1,115 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.v1.core.context.ChangesContext;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.service.IPResourceService;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.tuple.Tuple2;
+import com.foilen.smalltools.tuple.Tuple3;
+
+/**
+ * All the resources, links and tags that a {@link ChangesContext} will write. Used to know if two sets of changes can be applied without one changing what the other one expected.
+ */
+public class ChangesWriteSet {
+
+    // The ids and primary keys of the resources that are added, updated or deleted
+    private Set<Object> resources = new HashSet<>();
+    // The links and tags that are added or deleted
+    private Set<Object> linksAndTags = new HashSet<>();
+    // The primary keys of the resources that have links or tags added or deleted
+    private Set<Object> linkedResources = new HashSet<>();
+
+    // When some resources cannot be identified, it conflicts with everything
+    private boolean unknown;
+
+    public ChangesWriteSet() {
+    }
+
+    public ChangesWriteSet(IPResourceService ipResourceService, ChangesContext changes) {
+
+        for (IPResource resource : changes.getResourcesToAdd()) {
+            resources.add(getPk(ipResourceService, resource));
+        }
+        for (Tuple2<String, IPResource> update : changes.getResourcesToUpdate()) {
+            resources.add(update.getA());
+            resources.add(getPk(ipResourceService, update.getB()));
+            ipResourceService.resourceFind(update.getA()).ifPresent(previous -> resources.add(getPk(ipResourceService, previous)));
+        }
+        for (String id : changes.getResourcesToDelete()) {
+            resources.add(id);
+            ipResourceService.resourceFind(id).ifPresent(previous -> resources.add(getPk(ipResourceService, previous)));
+        }
+
+        for (Tuple3<IPResource, String, IPResource> link : changes.getLinksToAdd()) {
+            addLink(ipResourceService, link);
+        }
+        for (Tuple3<IPResource, String, IPResource> link : changes.getLinksToDelete()) {
+            addLink(ipResourceService, link);
+        }
+        for (Tuple2<IPResource, String> tag : changes.getTagsToAdd()) {
+            addTag(ipResourceService, tag);
+        }
+        for (Tuple2<IPResource, String> tag : changes.getTagsToDelete()) {
+            addTag(ipResourceService, tag);
+        }
+
+        resources.remove(null);
+        linkedResources.remove(null);
+    }
+
+    public void addAll(ChangesWriteSet other) {
+        resources.addAll(other.resources);
+        linksAndTags.addAll(other.linksAndTags);
+        linkedResources.addAll(other.linkedResources);
+        unknown |= other.unknown;
+    }
+
+    private void addLink(IPResourceService ipResourceService, Tuple3<IPResource, String, IPResource> link) {
+        ResourcePrimaryKey fromPk = getPk(ipResourceService, link.getA());
+        ResourcePrimaryKey toPk = getPk(ipResourceService, link.getC());
+        linkedResources.add(fromPk);
+        linkedResources.add(toPk);
+        linksAndTags.add(Arrays.asList(fromPk, link.getB(), toPk));
+    }
+
+    private void addTag(IPResourceService ipResourceService, Tuple2<IPResource, String> tag) {
+        ResourcePrimaryKey pk = getPk(ipResourceService, tag.getA());
+        linkedResources.add(pk);
+        linksAndTags.add(Arrays.asList(pk, tag.getB()));
+    }
+
+    public boolean conflictsWith(ChangesWriteSet other) {
+        if (unknown || other.unknown) {
+            return true;
+        }
+        return !Collections.disjoint(resources, other.resources) //
+                || !Collections.disjoint(linksAndTags, other.linksAndTags) //
+                || !Collections.disjoint(resources, other.linkedResources) //
+                || !Collections.disjoint(linkedResources, other.resources);
+    }
+
+    private ResourcePrimaryKey getPk(IPResourceService ipResourceService, IPResource resource) {
+        IPResourceDefinition resourceDefinition = ipResourceService.getResourceDefinition(resource);
+        if (resourceDefinition == null) {
+            unknown = true;
+            return null;
+        }
+        return ResourcePrimaryKey.from(resourceDefinition, resource);
+    }
+
+}
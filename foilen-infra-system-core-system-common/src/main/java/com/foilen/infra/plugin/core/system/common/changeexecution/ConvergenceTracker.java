@@ -0,0 +1,191 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.core.system.common.resource.ResourceStructuralEquality;
+import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
+import com.foilen.infra.plugin.v1.core.exception.InfiniteUpdateLoop;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.service.IPResourceService;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+/**
+ * Detects the transactions that will never converge without waiting for the timeout. Each iteration gets a fingerprint of the changes it applied (not depending on their order) and it fails when the
+ * same changes are applied again and again (e.g. A -> B -> A -> B). It can also fail when a resource is changed more than a maximum amount of times.
+ */
+public class ConvergenceTracker extends AbstractBasics {
+
+    private static final String EXPLICIT_CHANGES = "explicit changes";
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private IPResourceService ipResourceService;
+
+    private int maxIdenticalIterations = 3;
+    private int maxUpdatesPerResource = 0;
+
+    // Current iteration
+    private long iterationFingerprint;
+    private int iterationChangesCount;
+    private String lastActionHandler = EXPLICIT_CHANGES;
+    private String lastResource;
+
+    // All the iterations
+    private Map<Long, Integer> countByIterationFingerprint = new HashMap<>();
+    private Map<String, Integer> updateCountByInternalId = new HashMap<>();
+
+    public ConvergenceTracker(IPResourceService ipResourceService) {
+        this.ipResourceService = ipResourceService;
+    }
+
+    private void add(ChangeKind changeKind, long... hashes) {
+        long hash = changeKind.ordinal();
+        for (long next : hashes) {
+            hash = mix(hash * 31 + next);
+        }
+        iterationFingerprint += hash;
+        ++iterationChangesCount;
+    }
+
+    /**
+     * Check that the changes applied in the iteration that completed were not already applied too many times.
+     *
+     * @param iteration
+     *            the iteration number
+     */
+    public void completeIteration(int iteration) {
+
+        if (iterationChangesCount == 0) {
+            return;
+        }
+
+        int count = countByIterationFingerprint.merge(iterationFingerprint, 1, Integer::sum);
+        if (count > maxIdenticalIterations) {
+            throw new InfiniteUpdateLoop("The same changes were applied " + count + " times (last time in iteration " + iteration + "). They are oscillating. Last applied by " + lastActionHandler
+                    + " on " + lastResource);
+        }
+
+        iterationFingerprint = 0;
+        iterationChangesCount = 0;
+    }
+
+    public String getLastActionHandler() {
+        return lastActionHandler;
+    }
+
+    public String getLastResource() {
+        return lastResource;
+    }
+
+    public int getMaxIdenticalIterations() {
+        return maxIdenticalIterations;
+    }
+
+    public int getMaxUpdatesPerResource() {
+        return maxUpdatesPerResource;
+    }
+
+    private long getPkHash(IPResource resource) {
+        IPResourceDefinition resourceDefinition = ipResourceService.getResourceDefinition(resource);
+        if (resourceDefinition == null) {
+            return Objects.hash(resource.getClass().getName(), resource.getResourceName());
+        }
+        return ResourcePrimaryKey.from(resourceDefinition, resource).hashCode();
+    }
+
+    public void linkChanged(ChangeKind changeKind, IPResource fromResource, String linkType, IPResource toResource) {
+        lastResource = fromResource.getClass().getSimpleName() + " / " + fromResource.getResourceName() + " -> " + linkType + " -> " + toResource.getClass().getSimpleName() + " / "
+                + toResource.getResourceName();
+        add(changeKind, getPkHash(fromResource), Objects.hashCode(linkType), getPkHash(toResource));
+    }
+
+    /**
+     * Keep the resource's change in the fingerprint of the current iteration.
+     *
+     * @param changeKind
+     *            the kind of change
+     * @param resource
+     *            the resource (the new version when added or updated)
+     */
+    public void resourceChanged(ChangeKind changeKind, IPResource resource) {
+        lastResource = resource.getClass().getSimpleName() + " / " + resource.getResourceName();
+        if (changeKind == ChangeKind.RESOURCE_DELETE) {
+            add(changeKind, getPkHash(resource));
+        } else {
+            add(changeKind, getPkHash(resource), ResourceStructuralEquality.resourceHashCode(resource));
+        }
+    }
+
+    /**
+     * Count one more change on the resource and check that it did not change too many times.
+     *
+     * @param resource
+     *            the resource that was added, updated or deleted (with its internal id)
+     */
+    public void resourceUpdateCounted(IPResource resource) {
+        if (maxUpdatesPerResource <= 0 || resource.getInternalId() == null) {
+            return;
+        }
+        int updateCount = updateCountByInternalId.merge(resource.getInternalId(), 1, Integer::sum);
+        if (updateCount > maxUpdatesPerResource) {
+            throw new InfiniteUpdateLoop("The resource " + resource.getClass().getSimpleName() + " / " + resource.getResourceName() + " (" + resource.getInternalId() + ") was changed "
+                    + updateCount + " times. Last changed by " + lastActionHandler);
+        }
+    }
+
+    /**
+     * Tell which action handler provided the next changes to apply.
+     *
+     * @param actionHandler
+     *            the action handler or null for the explicit changes
+     */
+    public void setLastActionHandler(ActionHandler actionHandler) {
+        this.lastActionHandler = actionHandler == null ? EXPLICIT_CHANGES : actionHandler.getClass().getName();
+    }
+
+    /**
+     * The amount of times the same changes can be applied in different iterations before failing.
+     *
+     * @param maxIdenticalIterations
+     *            the maximum
+     */
+    public void setMaxIdenticalIterations(int maxIdenticalIterations) {
+        this.maxIdenticalIterations = maxIdenticalIterations;
+    }
+
+    /**
+     * The amount of times a resource can be added, updated or deleted in a transaction before failing.
+     *
+     * @param maxUpdatesPerResource
+     *            the maximum or 0 for unlimited (default)
+     */
+    public void setMaxUpdatesPerResource(int maxUpdatesPerResource) {
+        this.maxUpdatesPerResource = maxUpdatesPerResource;
+    }
+
+    public void tagChanged(ChangeKind changeKind, IPResource resource, String tagName) {
+        lastResource = resource.getClass().getSimpleName() + " / " + resource.getResourceName() + " #" + tagName;
+        add(changeKind, getPkHash(resource), Objects.hashCode(tagName));
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.List;
+
+import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesEventHandler;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesInTransactionContext;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * A {@link ChangesEventHandler} that is not called again in the next iteration when the last changes did not touch anything it read through the {@link CommonServicesContext} nor any resource of
+ * the watched classes.
+ */
+public interface IncrementalChangesEventHandler extends ChangesEventHandler {
+
+    /**
+     * The classes of the resources that are looked at in the last changes of the {@link ChangesInTransactionContext}. A change on any resource of these classes (or their subclasses) will call the
+     * handler again.
+     *
+     * @return the classes
+     */
+    List<Class<? extends IPResource>> getWatchedResourceClasses();
+
+}
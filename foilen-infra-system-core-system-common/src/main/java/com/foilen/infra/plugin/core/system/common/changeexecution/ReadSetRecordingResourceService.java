@@ -0,0 +1,164 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import com.foilen.infra.plugin.core.system.common.service.AbstractIPResourceServiceDelegate;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
+import com.foilen.infra.plugin.v1.core.service.IPResourceService;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.tuple.Tuple2;
+import com.foilen.smalltools.tuple.Tuple3;
+
+/**
+ * Keeps in a {@link ResourcesReadSet} everything that is read.
+ */
+public class ReadSetRecordingResourceService extends AbstractIPResourceServiceDelegate {
+
+    private ResourcesReadSet readSet;
+
+    public ReadSetRecordingResourceService(IPResourceService delegate, ResourcesReadSet readSet) {
+        super(delegate);
+        this.readSet = readSet;
+    }
+
+    public ResourcesReadSet getReadSet() {
+        return readSet;
+    }
+
+    @Override
+    public boolean linkExistsByFromResourceAndLinkTypeAndToResource(IPResource fromResource, String linkType, IPResource toResource) {
+        readSet.addLinkedResourceId(fromResource.getInternalId());
+        readSet.addLinkedResourceId(toResource.getInternalId());
+        return super.linkExistsByFromResourceAndLinkTypeAndToResource(fromResource, linkType, toResource);
+    }
+
+    @Override
+    public List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(IPResource fromResource) {
+        readSet.addLinkedResourceId(fromResource.getInternalId());
+        List<Tuple2<String, ? extends IPResource>> links = super.linkFindAllByFromResource(fromResource);
+        links.forEach(it -> readSet.addResourceId(it.getB().getInternalId()));
+        return links;
+    }
+
+    @Override
+    public List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(String fromResourceId) {
+        readSet.addLinkedResourceId(fromResourceId);
+        List<Tuple2<String, ? extends IPResource>> links = super.linkFindAllByFromResource(fromResourceId);
+        links.forEach(it -> readSet.addResourceId(it.getB().getInternalId()));
+        return links;
+    }
+
+    @Override
+    public List<? extends IPResource> linkFindAllByFromResourceAndLinkType(IPResource fromResource, String linkType) {
+        readSet.addLinkedResourceId(fromResource.getInternalId());
+        return record(super.linkFindAllByFromResourceAndLinkType(fromResource, linkType));
+    }
+
+    @Override
+    public <R extends IPResource> List<R> linkFindAllByFromResourceAndLinkTypeAndToResourceClass(IPResource fromResource, String linkType, Class<R> toResourceType) {
+        readSet.addLinkedResourceId(fromResource.getInternalId());
+        return record(super.linkFindAllByFromResourceAndLinkTypeAndToResourceClass(fromResource, linkType, toResourceType));
+    }
+
+    @Override
+    public <R extends IPResource> List<R> linkFindAllByFromResourceClassAndLinkTypeAndToResource(Class<R> fromResourceClass, String linkType, IPResource toResource) {
+        readSet.addLinkedResourceId(toResource.getInternalId());
+        return record(super.linkFindAllByFromResourceClassAndLinkTypeAndToResource(fromResourceClass, linkType, toResource));
+    }
+
+    @Override
+    public List<? extends IPResource> linkFindAllByLinkTypeAndToResource(String linkType, IPResource toResource) {
+        readSet.addLinkedResourceId(toResource.getInternalId());
+        return record(super.linkFindAllByLinkTypeAndToResource(linkType, toResource));
+    }
+
+    @Override
+    public List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(IPResource toResource) {
+        readSet.addLinkedResourceId(toResource.getInternalId());
+        List<Tuple2<? extends IPResource, String>> links = super.linkFindAllByToResource(toResource);
+        links.forEach(it -> readSet.addResourceId(it.getA().getInternalId()));
+        return links;
+    }
+
+    @Override
+    public List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(String toResourceId) {
+        readSet.addLinkedResourceId(toResourceId);
+        List<Tuple2<? extends IPResource, String>> links = super.linkFindAllByToResource(toResourceId);
+        links.forEach(it -> readSet.addResourceId(it.getA().getInternalId()));
+        return links;
+    }
+
+    @Override
+    public List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(IPResource resource) {
+        readSet.addLinkedResourceId(resource.getInternalId());
+        return recordLinks(super.linkFindAllRelatedByResource(resource));
+    }
+
+    @Override
+    public List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(String internalResourceId) {
+        readSet.addLinkedResourceId(internalResourceId);
+        return recordLinks(super.linkFindAllRelatedByResource(internalResourceId));
+    }
+
+    private <R extends IPResource> List<R> record(List<R> resources) {
+        readSet.addResources(resources);
+        return resources;
+    }
+
+    private List<Tuple3<IPResource, String, IPResource>> recordLinks(List<Tuple3<IPResource, String, IPResource>> links) {
+        links.forEach(it -> {
+            readSet.addResourceId(it.getA().getInternalId());
+            readSet.addResourceId(it.getC().getInternalId());
+        });
+        return links;
+    }
+
+    private void recordQuery(IPResourceQuery<?> query) {
+        for (IPResourceDefinition resourceDefinition : query.getResourceDefinitions()) {
+            readSet.addResourceClass(resourceDefinition.getResourceClass());
+        }
+    }
+
+    @Override
+    public <T extends IPResource> Optional<T> resourceFind(IPResourceQuery<T> query) {
+        recordQuery(query);
+        return super.resourceFind(query);
+    }
+
+    @Override
+    public Optional<IPResource> resourceFind(String internalResourceId) {
+        readSet.addResourceId(internalResourceId);
+        return super.resourceFind(internalResourceId);
+    }
+
+    @Override
+    public <R extends IPResource> List<R> resourceFindAll(IPResourceQuery<R> query) {
+        recordQuery(query);
+        return super.resourceFindAll(query);
+    }
+
+    @Override
+    public <R extends IPResource> Optional<R> resourceFindByPk(R resource) {
+        readSet.addResourceClass(resource.getClass());
+        return super.resourceFindByPk(resource);
+    }
+
+    @Override
+    public Set<String> tagFindAllByResource(IPResource resource) {
+        readSet.addTaggedResourceId(resource.getInternalId());
+        return super.tagFindAllByResource(resource);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
+import com.foilen.infra.plugin.v1.core.service.IPResourceService;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+/**
+ * Finds the stored resources by their primary key for a whole apply pass. The resources that already have an internal id are all retrieved with one query per resource type and the others are
+ * retrieved one by one. Every result (found or not) is kept until the end of the pass.
+ */
+public class ResourcePrimaryKeyResolver extends AbstractBasics {
+
+    private IPResourceService ipResourceService;
+
+    private Map<ResourcePrimaryKey, Optional<IPResource>> resourceByPk = new HashMap<>();
+
+    public ResourcePrimaryKeyResolver(IPResourceService ipResourceService) {
+        this.ipResourceService = ipResourceService;
+    }
+
+    public void prefetch(Collection<IPResource> resources) {
+
+        // Get the ids to retrieve per type
+        Map<IPResourceDefinition, Map<String, ResourcePrimaryKey>> pkByIdByResourceDefinition = new LinkedHashMap<>();
+        for (IPResource resource : resources) {
+            if (resource.getInternalId() == null) {
+                continue;
+            }
+            IPResourceDefinition resourceDefinition = ipResourceService.getResourceDefinition(resource);
+            if (resourceDefinition == null) {
+                continue;
+            }
+            ResourcePrimaryKey pk = ResourcePrimaryKey.from(resourceDefinition, resource);
+            if (resourceByPk.containsKey(pk)) {
+                continue;
+            }
+            pkByIdByResourceDefinition.computeIfAbsent(resourceDefinition, it -> new HashMap<>()).put(resource.getInternalId(), pk);
+        }
+
+        // Retrieve them
+        pkByIdByResourceDefinition.forEach((resourceDefinition, pkById) -> {
+            IPResourceQuery<? extends IPResource> query = ipResourceService.createResourceQuery(resourceDefinition.getResourceClass());
+            pkById.keySet().forEach(id -> query.addIdEquals(id));
+            int found = 0;
+            for (IPResource storedResource : ipResourceService.resourceFindAll(query)) {
+                // Keep it only if the PK is still the one expected
+                ResourcePrimaryKey pk = pkById.get(storedResource.getInternalId());
+                if (pk != null && pk.equals(ResourcePrimaryKey.from(resourceDefinition, storedResource))) {
+                    resourceByPk.put(pk, Optional.of(storedResource));
+                    ++found;
+                }
+            }
+            logger.debug("[RESOLVE] {} : {} ids requested in one query ; {} found", resourceDefinition.getResourceType(), pkById.size(), found);
+        });
+
+    }
+
+    public Optional<IPResource> resolve(IPResource resource) {
+
+        IPResourceDefinition resourceDefinition = ipResourceService.getResourceDefinition(resource);
+        if (resourceDefinition == null) {
+            return ipResourceService.resourceFindByPk(resource);
+        }
+
+        return resourceByPk.computeIfAbsent(ResourcePrimaryKey.from(resourceDefinition, resource), pk -> ipResourceService.resourceFindByPk(resource));
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * The resources, links and tags that were changed by an apply pass. Compared with a {@link ResourcesReadSet} to know if what was read is still the same.
+ */
+public class ResourcesChangedSet {
+
+    // Resources that were added, updated, deleted or refreshed
+    protected Set<String> resourceIds = new HashSet<>();
+    protected Set<Class<?>> resourceClasses = new HashSet<>();
+
+    // Resources that had links added or deleted
+    protected Set<String> linkedResourceIds = new HashSet<>();
+    protected Set<Class<?>> linkedResourceClasses = new HashSet<>();
+
+    // Resources that had tags added or deleted
+    protected Set<String> taggedResourceIds = new HashSet<>();
+    protected Set<Class<?>> taggedResourceClasses = new HashSet<>();
+
+    public void clear() {
+        resourceIds.clear();
+        resourceClasses.clear();
+        linkedResourceIds.clear();
+        linkedResourceClasses.clear();
+        taggedResourceIds.clear();
+        taggedResourceClasses.clear();
+    }
+
+    public boolean isEmpty() {
+        return resourceClasses.isEmpty() && linkedResourceClasses.isEmpty() && taggedResourceClasses.isEmpty();
+    }
+
+    public void linkChanged(IPResource fromResource, IPResource toResource) {
+        linkedResourceIds.add(fromResource.getInternalId());
+        linkedResourceClasses.add(fromResource.getClass());
+        linkedResourceIds.add(toResource.getInternalId());
+        linkedResourceClasses.add(toResource.getClass());
+    }
+
+    public void resourceChanged(IPResource resource) {
+        resourceIds.add(resource.getInternalId());
+        resourceClasses.add(resource.getClass());
+    }
+
+    public void tagChanged(IPResource resource) {
+        taggedResourceIds.add(resource.getInternalId());
+        taggedResourceClasses.add(resource.getClass());
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * The resources, links and tags that were read by a handler. A search by type reads all the resources of that type.
+ */
+public class ResourcesReadSet {
+
+    private Set<String> resourceIds = new HashSet<>();
+    private Set<Class<?>> resourceClasses = new HashSet<>();
+    private Set<String> linkedResourceIds = new HashSet<>();
+    private Set<String> taggedResourceIds = new HashSet<>();
+
+    // The classes of the resources that are watched in the changes even if not read
+    private Set<Class<?>> watchedResourceClasses = new HashSet<>();
+
+    private static boolean isAnyAssignable(Set<Class<?>> parentClasses, Set<Class<?>> classes) {
+        for (Class<?> parentClass : parentClasses) {
+            for (Class<?> clazz : classes) {
+                if (parentClass.isAssignableFrom(clazz)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized void addLinkedResourceId(String internalResourceId) {
+        if (internalResourceId != null) {
+            linkedResourceIds.add(internalResourceId);
+        }
+    }
+
+    public synchronized void addResourceClass(Class<?> resourceClass) {
+        resourceClasses.add(resourceClass);
+    }
+
+    public synchronized void addResourceId(String internalResourceId) {
+        if (internalResourceId != null) {
+            resourceIds.add(internalResourceId);
+        }
+    }
+
+    public synchronized void addResources(Collection<? extends IPResource> resources) {
+        for (IPResource resource : resources) {
+            addResourceId(resource.getInternalId());
+        }
+    }
+
+    public synchronized void addTaggedResourceId(String internalResourceId) {
+        if (internalResourceId != null) {
+            taggedResourceIds.add(internalResourceId);
+        }
+    }
+
+    public synchronized void addWatchedResourceClasses(Collection<Class<? extends IPResource>> resourceClasses) {
+        watchedResourceClasses.addAll(resourceClasses);
+    }
+
+    /**
+     * Tells if any of the changes modified something that was read.
+     *
+     * @param changedSet
+     *            the changes
+     * @return true if the handler might not give the same result
+     */
+    public synchronized boolean isTouchedBy(ResourcesChangedSet changedSet) {
+
+        if (changedSet.isEmpty()) {
+            return false;
+        }
+
+        // Resources
+        if (!Collections.disjoint(resourceIds, changedSet.resourceIds) //
+                || !Collections.disjoint(resourceClasses, changedSet.resourceClasses) //
+                || isAnyAssignable(watchedResourceClasses, changedSet.resourceClasses)) {
+            return true;
+        }
+
+        // Links
+        if (!Collections.disjoint(linkedResourceIds, changedSet.linkedResourceIds) //
+                || !Collections.disjoint(linkedResourceIds, changedSet.resourceIds) //
+                || isAnyAssignable(watchedResourceClasses, changedSet.linkedResourceClasses)) {
+            return true;
+        }
+
+        // Tags
+        return !Collections.disjoint(taggedResourceIds, changedSet.taggedResourceIds) //
+                || !Collections.disjoint(taggedResourceIds, changedSet.resourceIds) //
+                || !Collections.disjoint(resourceClasses, changedSet.taggedResourceClasses) //
+                || isAnyAssignable(watchedResourceClasses, changedSet.taggedResourceClasses);
+    }
+
+}
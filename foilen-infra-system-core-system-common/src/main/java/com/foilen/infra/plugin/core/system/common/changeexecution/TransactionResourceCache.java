@@ -0,0 +1,130 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.foilen.infra.plugin.core.system.common.resource.ResourceDeepCopy;
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.core.system.common.service.AbstractIPResourceServiceDelegate;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.service.IPResourceService;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * Keeps the resources retrieved by id and by primary key (found or not) for the duration of a transaction. Every write must call {@link #invalidate(IPResource)} to remove what changed.
+ */
+public class TransactionResourceCache extends AbstractIPResourceServiceDelegate {
+
+    private Map<String, Optional<IPResource>> resourceById = new ConcurrentHashMap<>();
+    private Map<ResourcePrimaryKey, Optional<IPResource>> resourceByPk = new ConcurrentHashMap<>();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    public TransactionResourceCache(IPResourceService delegate) {
+        super(delegate);
+    }
+
+    public void clear() {
+        resourceById.clear();
+        resourceByPk.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R extends IPResource> Optional<R> copy(Optional<IPResource> resourceOptional) {
+        if (resourceOptional.isEmpty()) {
+            return Optional.empty();
+        }
+        IPResource resource = resourceOptional.get();
+        IPResource copy = ResourceDeepCopy.copy(resource);
+        copy.setInternalId(resource.getInternalId());
+        return Optional.of((R) copy);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private ResourcePrimaryKey getPk(IPResource resource) {
+        IPResourceDefinition resourceDefinition = delegate.getResourceDefinition(resource);
+        if (resourceDefinition == null) {
+            return null;
+        }
+        return ResourcePrimaryKey.from(resourceDefinition, resource);
+    }
+
+    /**
+     * Remove the resource with that id and the resource with the same primary key.
+     *
+     * @param resource
+     *            the resource that was added, updated or deleted
+     */
+    public void invalidate(IPResource resource) {
+        if (resource.getInternalId() != null) {
+            resourceById.remove(resource.getInternalId());
+        }
+        ResourcePrimaryKey pk = getPk(resource);
+        if (pk != null) {
+            resourceByPk.remove(pk);
+        }
+    }
+
+    @Override
+    public Optional<IPResource> resourceFind(String internalResourceId) {
+        Optional<IPResource> resourceOptional = resourceById.get(internalResourceId);
+        if (resourceOptional == null) {
+            misses.incrementAndGet();
+            resourceOptional = delegate.resourceFind(internalResourceId);
+            resourceById.put(internalResourceId, resourceOptional);
+            if (resourceOptional.isPresent()) {
+                ResourcePrimaryKey pk = getPk(resourceOptional.get());
+                if (pk != null) {
+                    resourceByPk.put(pk, resourceOptional);
+                }
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        return copy(resourceOptional);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <R extends IPResource> Optional<R> resourceFindByPk(R resource) {
+        ResourcePrimaryKey pk = getPk(resource);
+        if (pk == null) {
+            return delegate.resourceFindByPk(resource);
+        }
+
+        Optional<IPResource> resourceOptional = resourceByPk.get(pk);
+        if (resourceOptional == null) {
+            misses.incrementAndGet();
+            resourceOptional = (Optional<IPResource>) delegate.resourceFindByPk(resource);
+            resourceByPk.put(pk, resourceOptional);
+            if (resourceOptional.isPresent()) {
+                resourceById.put(resourceOptional.get().getInternalId(), resourceOptional);
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        return copy(resourceOptional);
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution.hook;
+
+import com.foilen.infra.plugin.core.system.common.changeexecution.ChangeExecutionLifecycleHook;
+import com.foilen.infra.plugin.core.system.common.changeexecution.ChangeKind;
+import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesInTransactionContext;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * Records the timings of the change executions in a {@link ChangeExecutionMetricsRegistry}. Register it with the default change execution hooks of the system.
+ */
+public class ChangeExecutionMetricsHook implements ChangeExecutionLifecycleHook {
+
+    public static final String METRIC_ACTION_DURATION = "changes.action.duration";
+    public static final String METRIC_APPLY_COUNT = "changes.apply.count";
+    public static final String METRIC_APPLY_DURATION = "changes.apply.duration";
+    public static final String METRIC_ITERATION_ACTIONS = "changes.iteration.actions";
+    public static final String METRIC_ITERATION_DURATION = "changes.iteration.duration";
+    public static final String METRIC_TRANSACTION_DURATION = "changes.transaction.duration";
+    public static final String METRIC_TRANSACTION_ITERATIONS = "changes.transaction.iterations";
+
+    public static final String TAG_CHANGE_KIND = "kind";
+    public static final String TAG_HANDLER = "handler";
+    public static final String TAG_OUTCOME = "outcome";
+
+    private ChangeExecutionMetricsRegistry registry;
+
+    public ChangeExecutionMetricsHook(ChangeExecutionMetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void actionExecuted(ChangesInTransactionContext changesInTransactionContext, ActionHandler actionHandler, long durationInNs) {
+        registry.recordDuration(METRIC_ACTION_DURATION, durationInNs, TAG_HANDLER, actionHandler.getClass().getName());
+    }
+
+    @Override
+    public void changesApplied(ChangesInTransactionContext changesInTransactionContext, ChangeKind changeKind, int count, long durationInNs) {
+        if (count == 0) {
+            return;
+        }
+        registry.recordDuration(METRIC_APPLY_DURATION, durationInNs, TAG_CHANGE_KIND, changeKind.name());
+        registry.recordValue(METRIC_APPLY_COUNT, count, TAG_CHANGE_KIND, changeKind.name());
+    }
+
+    @Override
+    public void failureInfinite(ChangesInTransactionContext changesInTransactionContext) {
+    }
+
+    @Override
+    public void fillApplyChangesContext(ChangesInTransactionContext changesInTransactionContext) {
+    }
+
+    public ChangeExecutionMetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public void iterationCompleted(ChangesInTransactionContext changesInTransactionContext, int iteration, int actionsCount, long durationInNs) {
+        registry.recordDuration(METRIC_ITERATION_DURATION, durationInNs);
+        registry.recordValue(METRIC_ITERATION_ACTIONS, actionsCount);
+    }
+
+    @Override
+    public void linkAdded(ChangesInTransactionContext changesInTransactionContext, IPResource fromResource, String linkType, IPResource toResource) {
+    }
+
+    @Override
+    public void linkDeleted(ChangesInTransactionContext changesInTransactionContext, IPResource fromResource, String linkType, IPResource toResource) {
+    }
+
+    @Override
+    public void resourceAdded(ChangesInTransactionContext changesInTransactionContext, IPResource resource) {
+    }
+
+    @Override
+    public void resourceDeleted(ChangesInTransactionContext changesInTransactionContext, IPResource resource) {
+    }
+
+    @Override
+    public void resourceUpdated(ChangesInTransactionContext changesInTransactionContext, IPResource previousResource, IPResource updatedResource) {
+    }
+
+    @Override
+    public void success(ChangesInTransactionContext changesInTransactionContext) {
+    }
+
+    @Override
+    public void tagAdded(ChangesInTransactionContext changesInTransactionContext, IPResource resource, String tagName) {
+    }
+
+    @Override
+    public void tagDeleted(ChangesInTransactionContext changesInTransactionContext, IPResource resource, String tagName) {
+    }
+
+    @Override
+    public void transactionCompleted(ChangesInTransactionContext changesInTransactionContext, boolean success, int iterations, long durationInNs) {
+        String outcome = success ? "success" : "failure";
+        registry.recordDuration(METRIC_TRANSACTION_DURATION, durationInNs, TAG_OUTCOME, outcome);
+        registry.recordValue(METRIC_TRANSACTION_ITERATIONS, iterations, TAG_OUTCOME, outcome);
+    }
+
+}
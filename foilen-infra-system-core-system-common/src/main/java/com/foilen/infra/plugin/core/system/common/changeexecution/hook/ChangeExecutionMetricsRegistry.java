@@ -0,0 +1,41 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution.hook;
+
+/**
+ * Where the {@link ChangeExecutionMetricsHook} sends its measures. Implement it to forward them to your metrics library (e.g. a Micrometer Timer and DistributionSummary per name and tags).
+ */
+public interface ChangeExecutionMetricsRegistry {
+
+    /**
+     * Record a duration.
+     *
+     * @param name
+     *            the name of the metric
+     * @param durationInNs
+     *            the duration in nanoseconds
+     * @param tags
+     *            the tags as key and value pairs
+     */
+    void recordDuration(String name, long durationInNs, String... tags);
+
+    /**
+     * Record an amount.
+     *
+     * @param name
+     *            the name of the metric
+     * @param value
+     *            the amount
+     * @param tags
+     *            the tags as key and value pairs
+     */
+    void recordValue(String name, long value, String... tags);
+
+}
@@ -0,0 +1,98 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution.hook;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Joiner;
+
+/**
+ * Keeps the count, total and maximum of every metric (per name and tags) in memory.
+ */
+public class ChangeExecutionMetricsRegistryInMemoryImpl implements ChangeExecutionMetricsRegistry {
+
+    public static class Summary {
+
+        private LongAdder count = new LongAdder();
+        private LongAdder total = new LongAdder();
+        private LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public long getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : getTotal() / count;
+        }
+
+        public long getTotal() {
+            return total.sum();
+        }
+
+        private void record(long value) {
+            count.increment();
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        @Override
+        public String toString() {
+            return "count: " + getCount() + " ; mean: " + getMean() + " ; max: " + getMax();
+        }
+
+    }
+
+    private Map<String, Summary> summaryByKey = new ConcurrentHashMap<>();
+
+    private String getKey(String name, String... tags) {
+        if (tags.length == 0) {
+            return name;
+        }
+        return name + " " + Joiner.on(',').join(tags);
+    }
+
+    /**
+     * Get the summary of a metric.
+     *
+     * @param name
+     *            the name of the metric
+     * @param tags
+     *            the tags as key and value pairs
+     * @return the summary or null if never recorded
+     */
+    public Summary getSummary(String name, String... tags) {
+        return summaryByKey.get(getKey(name, tags));
+    }
+
+    public SortedMap<String, Summary> getSummaryByKey() {
+        return new TreeMap<>(summaryByKey);
+    }
+
+    @Override
+    public void recordDuration(String name, long durationInNs, String... tags) {
+        summaryByKey.computeIfAbsent(getKey(name, tags), k -> new Summary()).record(durationInNs);
+    }
+
+    @Override
+    public void recordValue(String name, long value, String... tags) {
+        summaryByKey.computeIfAbsent(getKey(name, tags), k -> new Summary()).record(value);
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.resource;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.foilen.smalltools.tools.JsonTools;
+
+/**
+ * Copies resources property by property. The properties are the public getters with a setter (the same ones that are serialized in JSON). Simple values and collections of simple values are copied
+ * directly and the resources with any other value are copied with a JSON round trip.
+ */
+public class ResourceDeepCopy {
+
+    private static class NotCopiableException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    private static final Map<Class<?>, ResourceDeepCopy> deepCopyByResourceClass = new ConcurrentHashMap<>();
+
+    private static final NotCopiableException NOT_COPIABLE = new NotCopiableException();
+
+    /**
+     * Get a deep copy of the resource. Gives the same values as {@link JsonTools#clone(Object)}.
+     *
+     * @param resource
+     *            the resource
+     * @param <R>
+     *            the type of resource
+     * @return the copy
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> R copy(R resource) {
+        if (resource == null) {
+            return null;
+        }
+        return (R) get(resource.getClass()).copyProperties(resource);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Object copyValue(Object value) throws NotCopiableException {
+        if (isImmutable(value)) {
+            return value;
+        }
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+
+        if (value instanceof Collection) {
+            Collection copy = newCollection((Collection<?>) value);
+            for (Object item : (Collection<?>) value) {
+                copy.add(copySimple(item));
+            }
+            return copy;
+        }
+
+        if (value instanceof Map) {
+            Map copy = newMap((Map<?, ?>) value);
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(copySimple(entry.getKey()), copySimple(entry.getValue()));
+            }
+            return copy;
+        }
+
+        throw NOT_COPIABLE;
+    }
+
+    private static Object copySimple(Object value) throws NotCopiableException {
+        if (isImmutable(value)) {
+            return value;
+        }
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+        throw NOT_COPIABLE;
+    }
+
+    public static ResourceDeepCopy get(Class<?> resourceClass) {
+        return deepCopyByResourceClass.computeIfAbsent(resourceClass, ResourceDeepCopy::new);
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null //
+                || value instanceof String //
+                || value instanceof Boolean //
+                || value instanceof Character //
+                || value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte //
+                || value instanceof Double || value instanceof Float //
+                || value instanceof BigDecimal || value instanceof BigInteger //
+                || value instanceof Enum;
+    }
+
+    private static boolean isJsonIgnored(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            if ("JsonIgnore".equals(annotation.annotationType().getSimpleName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isKnownType(Class<?> type) {
+        return type.isPrimitive() //
+                || String.class == type //
+                || Boolean.class == type //
+                || Character.class == type //
+                || Number.class.isAssignableFrom(type) //
+                || type.isEnum() //
+                || Date.class.isAssignableFrom(type) //
+                || Collection.class.isAssignableFrom(type) //
+                || Map.class.isAssignableFrom(type);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Collection newCollection(Collection<?> collection) throws NotCopiableException {
+        Class<?> type = collection.getClass();
+        if (type == ArrayList.class) {
+            return new ArrayList<>(collection.size());
+        }
+        if (type == LinkedList.class) {
+            return new LinkedList<>();
+        }
+        if (type == HashSet.class) {
+            return new HashSet<>();
+        }
+        if (type == LinkedHashSet.class) {
+            return new LinkedHashSet<>();
+        }
+        if (type == TreeSet.class) {
+            return new TreeSet<>(((SortedSet) collection).comparator());
+        }
+        throw NOT_COPIABLE;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Map newMap(Map<?, ?> map) throws NotCopiableException {
+        Class<?> type = map.getClass();
+        if (type == HashMap.class) {
+            return new HashMap<>();
+        }
+        if (type == LinkedHashMap.class) {
+            return new LinkedHashMap<>();
+        }
+        if (type == TreeMap.class) {
+            return new TreeMap<>(((SortedMap) map).comparator());
+        }
+        throw NOT_COPIABLE;
+    }
+
+    private Constructor<?> constructor;
+    private Method[] getters;
+    private Method[] setters;
+
+    private ResourceDeepCopy(Class<?> resourceClass) {
+
+        // Constructor
+        try {
+            constructor = resourceClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (Exception e) {
+            constructor = null;
+            return;
+        }
+
+        // Properties
+        List<Method> getters = new ArrayList<>();
+        List<Method> setters = new ArrayList<>();
+        for (Method method : resourceClass.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0 || method.getReturnType() == void.class || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            String name = method.getName();
+            String propertyName;
+            if (name.startsWith("get") && name.length() > 3) {
+                propertyName = name.substring(3);
+            } else if (name.startsWith("is") && name.length() > 2 && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+                propertyName = name.substring(2);
+            } else {
+                continue;
+            }
+            if (isJsonIgnored(method)) {
+                continue;
+            }
+
+            // Without a setter, the collections are filled like JSON does
+            Method setter;
+            try {
+                setter = resourceClass.getMethod("set" + propertyName, method.getReturnType());
+                if (isJsonIgnored(setter)) {
+                    continue;
+                }
+            } catch (NoSuchMethodException e) {
+                if (!Collection.class.isAssignableFrom(method.getReturnType()) && !Map.class.isAssignableFrom(method.getReturnType())) {
+                    continue;
+                }
+                setter = null;
+            }
+
+            // Only copy what is known ; use JSON for the rest
+            if (!isKnownType(method.getReturnType())) {
+                constructor = null;
+                return;
+            }
+
+            getters.add(method);
+            setters.add(setter);
+        }
+        this.getters = getters.toArray(new Method[getters.size()]);
+        this.setters = setters.toArray(new Method[setters.size()]);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Object copyProperties(Object resource) {
+        if (constructor == null) {
+            return JsonTools.clone(resource);
+        }
+        try {
+            Object copy = constructor.newInstance();
+            for (int i = 0; i < getters.length; ++i) {
+                Object value = copyValue(getters[i].invoke(resource));
+                if (setters[i] != null) {
+                    setters[i].invoke(copy, value);
+                } else if (value != null) {
+                    Object copyValue = getters[i].invoke(copy);
+                    if (copyValue instanceof Collection) {
+                        ((Collection) copyValue).clear();
+                        ((Collection) copyValue).addAll((Collection) value);
+                    } else if (copyValue instanceof Map) {
+                        ((Map) copyValue).clear();
+                        ((Map) copyValue).putAll((Map) value);
+                    }
+                }
+            }
+            return copy;
+        } catch (Exception e) {
+            return JsonTools.clone(resource);
+        }
+    }
+
+    /**
+     * Tells if this type of resource is copied without JSON (when it only contains known values).
+     *
+     * @return true if it is copied property by property
+     */
+    public boolean isDirect() {
+        return constructor != null;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.resource;
+
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.exception.SmallToolsException;
+import com.foilen.smalltools.tools.JsonTools;
+
+/**
+ * The type and the values of the primary key of a resource. Usable as a map key to find a resource by its primary key.
+ */
+public class ResourcePrimaryKey {
+
+    private static final Map<IPResourceDefinition, Method[]> pkGettersByResourceDefinition = new ConcurrentHashMap<>();
+
+    public static ResourcePrimaryKey from(IPResourceDefinition resourceDefinition, IPResource resource) {
+        Method[] pkGetters = pkGettersByResourceDefinition.computeIfAbsent(resourceDefinition, it -> new TreeSet<>(it.getPrimaryKeyProperties()).stream() //
+                .map(pkName -> it.getPropertyGetterMethod(pkName)) //
+                .toArray(Method[]::new));
+
+        Object[] values = new Object[pkGetters.length];
+        for (int i = 0; i < pkGetters.length; ++i) {
+            try {
+                values[i] = pkGetters[i].invoke(resource);
+            } catch (Exception e) {
+                throw new SmallToolsException("Could not get the primary key value of " + resource, e);
+            }
+        }
+        return new ResourcePrimaryKey(resource.getClass(), values);
+    }
+
+    private static Object canonical(Object value) {
+        // Like Set.equals(), the order of the items of a set does not matter
+        if (value instanceof Set) {
+            return ((Collection<?>) value).stream() //
+                    .map(it -> JsonTools.compactPrint(it)) //
+                    .sorted() //
+                    .collect(Collectors.toList());
+        }
+        return value;
+    }
+
+    private final Class<?> resourceClass;
+    private final Object[] values;
+    private final int hashCode;
+
+    private ResourcePrimaryKey(Class<?> resourceClass, Object[] values) {
+        this.resourceClass = resourceClass;
+        this.values = values;
+        this.hashCode = 31 * resourceClass.hashCode() + Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        ResourcePrimaryKey other = (ResourcePrimaryKey) obj;
+        return hashCode == other.hashCode //
+                && resourceClass.equals(other.resourceClass) //
+                && Arrays.equals(values, other.values);
+    }
+
+    public Class<?> getResourceClass() {
+        return resourceClass;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Get a hash of the values that is the same on every node and after a restart (unlike {@link #hashCode()}). Uses the same representation as {@link #equals(Object)}: the items of the sets are
+     * sorted, the lists keep their order and an empty collection is not the same as null. The type is not part of it.
+     *
+     * @return the SHA-256 in hexadecimal
+     */
+    public String toHash() {
+        List<Object> canonicalValues = new ArrayList<>();
+        for (Object value : values) {
+            canonicalValues.add(canonical(value));
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest(JsonTools.compactPrint(canonicalValues).getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new SmallToolsException("SHA-256 is not available", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return resourceClass.getSimpleName() + " " + Arrays.toString(values);
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.resource;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tools.StringTools;
+
+/**
+ * Compares and hashes resources property by property. Simple values and collections of simple values are compared with equals() and the other values are compared with their JSON.
+ *
+ * <p>
+ * The properties are the public getters of the resource class: the "getX()" ones and the "isX()" ones that return a boolean, minus the ones annotated with an annotation named "JsonIgnore". These
+ * are the properties that Jackson serializes by default. They do not come from the IPResourceDefinition since it only exposes the getters of its primary key and searchable properties.
+ * </p>
+ */
+public class ResourceStructuralEquality {
+
+    private static final Map<Class<?>, ResourceStructuralEquality> equalityByResourceClass = new ConcurrentHashMap<>();
+
+    public static ResourceStructuralEquality get(Class<?> resourceClass) {
+        return equalityByResourceClass.computeIfAbsent(resourceClass, ResourceStructuralEquality::new);
+    }
+
+    /**
+     * Tells if both resources have the same values. It is not the same as comparing their JSON without the nulls: the sets are equal whatever their order and numbers of different types (e.g. an
+     * Integer and a Long) are different.
+     *
+     * @param a
+     *            the first resource
+     * @param b
+     *            the second resource
+     * @return true if they have the same type and values
+     */
+    public static boolean resourceEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (!a.getClass().equals(b.getClass())) {
+            return false;
+        }
+        return get(a.getClass()).propertiesEquals(a, b);
+    }
+
+    /**
+     * Get a hash that is the same for all the resources that are {@link #resourceEquals(Object, Object)}.
+     *
+     * @param resource
+     *            the resource
+     * @return the hash
+     */
+    public static int resourceHashCode(Object resource) {
+        if (resource == null) {
+            return 0;
+        }
+        return get(resource.getClass()).propertiesHashCode(resource);
+    }
+
+    private static boolean isSimple(Object value) {
+        return value == null //
+                || value instanceof String //
+                || value instanceof Boolean //
+                || value instanceof Character //
+                || value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte //
+                || value instanceof Double || value instanceof Float //
+                || value instanceof BigDecimal || value instanceof BigInteger //
+                || value instanceof Enum //
+                || value instanceof Date;
+    }
+
+    private static boolean isSimpleOrCollectionOfSimple(Object value) {
+        if (isSimple(value)) {
+            return true;
+        }
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                if (!isSimple(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Map) {
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!isSimple(entry.getKey()) || !isSimple(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private Method[] getters;
+
+    private ResourceStructuralEquality(Class<?> resourceClass) {
+        List<Method> getters = new ArrayList<>();
+        for (Method method : resourceClass.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0 || method.getReturnType() == void.class || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            String name = method.getName();
+            boolean isGetter = (name.startsWith("get") && name.length() > 3) //
+                    || (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class);
+            if (!isGetter || isJsonIgnored(method)) {
+                continue;
+            }
+            getters.add(method);
+        }
+        getters.sort(Comparator.comparing(Method::getName));
+        this.getters = getters.toArray(new Method[getters.size()]);
+    }
+
+    private boolean isJsonIgnored(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            if ("JsonIgnore".equals(annotation.annotationType().getSimpleName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean propertiesEquals(Object a, Object b) {
+        try {
+            for (Method getter : getters) {
+                Object aValue = getter.invoke(a);
+                Object bValue = getter.invoke(b);
+                if (aValue == bValue) {
+                    continue;
+                }
+                if (isSimpleOrCollectionOfSimple(aValue) && isSimpleOrCollectionOfSimple(bValue)) {
+                    if (!Objects.equals(aValue, bValue)) {
+                        return false;
+                    }
+                } else if (!StringTools.safeEquals(JsonTools.compactPrintWithoutNulls(aValue), JsonTools.compactPrintWithoutNulls(bValue))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            return StringTools.safeEquals(JsonTools.compactPrintWithoutNulls(a), JsonTools.compactPrintWithoutNulls(b));
+        }
+    }
+
+    private int propertiesHashCode(Object resource) {
+        try {
+            int hashCode = resource.getClass().hashCode();
+            for (Method getter : getters) {
+                Object value = getter.invoke(resource);
+                hashCode *= 31;
+                if (isSimpleOrCollectionOfSimple(value)) {
+                    hashCode += Objects.hashCode(value);
+                } else {
+                    hashCode += JsonTools.compactPrintWithoutNulls(value).hashCode();
+                }
+            }
+            return hashCode;
+        } catch (Exception e) {
+            return JsonTools.compactPrintWithoutNulls(resource).hashCode();
+        }
+    }
+
+}
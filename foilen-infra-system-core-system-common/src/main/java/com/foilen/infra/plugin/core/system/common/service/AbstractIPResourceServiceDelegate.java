@@ -0,0 +1,154 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
+import com.foilen.infra.plugin.v1.core.service.IPResourceService;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tuple.Tuple2;
+import com.foilen.smalltools.tuple.Tuple3;
+
+/**
+ * Sends all the calls to another {@link IPResourceService}. Extend it to change only some of the methods.
+ */
+public abstract class AbstractIPResourceServiceDelegate extends AbstractBasics implements IPResourceService {
+
+    protected IPResourceService delegate;
+
+    public AbstractIPResourceServiceDelegate(IPResourceService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <T extends IPResource> IPResourceQuery<T> createResourceQuery(Class<T> resourceClass) {
+        return delegate.createResourceQuery(resourceClass);
+    }
+
+    @Override
+    public <T extends IPResource> IPResourceQuery<T> createResourceQuery(String resourceType) {
+        return delegate.createResourceQuery(resourceType);
+    }
+
+    public IPResourceService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public IPResourceDefinition getResourceDefinition(Class<? extends IPResource> resourceClass) {
+        return delegate.getResourceDefinition(resourceClass);
+    }
+
+    @Override
+    public IPResourceDefinition getResourceDefinition(IPResource resource) {
+        return delegate.getResourceDefinition(resource);
+    }
+
+    @Override
+    public IPResourceDefinition getResourceDefinition(String resourceType) {
+        return delegate.getResourceDefinition(resourceType);
+    }
+
+    @Override
+    public List<IPResourceDefinition> getResourceDefinitions() {
+        return delegate.getResourceDefinitions();
+    }
+
+    @Override
+    public boolean linkExistsByFromResourceAndLinkTypeAndToResource(IPResource fromResource, String linkType, IPResource toResource) {
+        return delegate.linkExistsByFromResourceAndLinkTypeAndToResource(fromResource, linkType, toResource);
+    }
+
+    @Override
+    public List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(IPResource fromResource) {
+        return delegate.linkFindAllByFromResource(fromResource);
+    }
+
+    @Override
+    public List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(String fromResourceId) {
+        return delegate.linkFindAllByFromResource(fromResourceId);
+    }
+
+    @Override
+    public List<? extends IPResource> linkFindAllByFromResourceAndLinkType(IPResource fromResource, String linkType) {
+        return delegate.linkFindAllByFromResourceAndLinkType(fromResource, linkType);
+    }
+
+    @Override
+    public <R extends IPResource> List<R> linkFindAllByFromResourceAndLinkTypeAndToResourceClass(IPResource fromResource, String linkType, Class<R> toResourceType) {
+        return delegate.linkFindAllByFromResourceAndLinkTypeAndToResourceClass(fromResource, linkType, toResourceType);
+    }
+
+    @Override
+    public <R extends IPResource> List<R> linkFindAllByFromResourceClassAndLinkTypeAndToResource(Class<R> fromResourceClass, String linkType, IPResource toResource) {
+        return delegate.linkFindAllByFromResourceClassAndLinkTypeAndToResource(fromResourceClass, linkType, toResource);
+    }
+
+    @Override
+    public List<? extends IPResource> linkFindAllByLinkTypeAndToResource(String linkType, IPResource toResource) {
+        return delegate.linkFindAllByLinkTypeAndToResource(linkType, toResource);
+    }
+
+    @Override
+    public List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(IPResource toResource) {
+        return delegate.linkFindAllByToResource(toResource);
+    }
+
+    @Override
+    public List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(String toResourceId) {
+        return delegate.linkFindAllByToResource(toResourceId);
+    }
+
+    @Override
+    public List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(IPResource resource) {
+        return delegate.linkFindAllRelatedByResource(resource);
+    }
+
+    @Override
+    public List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(String internalResourceId) {
+        return delegate.linkFindAllRelatedByResource(internalResourceId);
+    }
+
+    @Override
+    public <R extends IPResource, T extends IPResource> boolean resourceEqualsPk(R a, T b) {
+        return delegate.resourceEqualsPk(a, b);
+    }
+
+    @Override
+    public <T extends IPResource> Optional<T> resourceFind(IPResourceQuery<T> query) {
+        return delegate.resourceFind(query);
+    }
+
+    @Override
+    public Optional<IPResource> resourceFind(String internalResourceId) {
+        return delegate.resourceFind(internalResourceId);
+    }
+
+    @Override
+    public <R extends IPResource> List<R> resourceFindAll(IPResourceQuery<R> query) {
+        return delegate.resourceFindAll(query);
+    }
+
+    @Override
+    public <R extends IPResource> Optional<R> resourceFindByPk(R resource) {
+        return delegate.resourceFindByPk(resource);
+    }
+
+    @Override
+    public Set<String> tagFindAllByResource(IPResource resource) {
+        return delegate.tagFindAllByResource(resource);
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.foilen.infra.plugin.core.system.common.changeexecution.ChangesWriteSet;
+import com.foilen.infra.plugin.v1.core.context.ChangesContext;
+import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
+import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.exception.SmallToolsException;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+/**
+ * Executes the submitted changes in the background, merging those that are submitted within the same window into a single transaction. When the queue is full, the submitters wait. If a merged
+ * transaction fails, each submission is executed again alone to give them their own result.
+ */
+public class ChangeExecutionQueue extends AbstractBasics implements AutoCloseable {
+
+    private static class Submission {
+
+        private ChangesContext changes;
+        private List<String> initialInternalIdsOfResourcesToAdd = new ArrayList<>();
+        private CompletableFuture<Void> result = new CompletableFuture<>();
+
+        public Submission(ChangesContext changes) {
+            this.changes = changes;
+            changes.getResourcesToAdd().forEach(it -> initialInternalIdsOfResourcesToAdd.add(it.getInternalId()));
+        }
+
+        public void resetInternalIdsOfResourcesToAdd() {
+            List<IPResource> resourcesToAdd = changes.getResourcesToAdd();
+            for (int i = 0; i < resourcesToAdd.size() && i < initialInternalIdsOfResourcesToAdd.size(); ++i) {
+                resourcesToAdd.get(i).setInternalId(initialInternalIdsOfResourcesToAdd.get(i));
+            }
+        }
+
+    }
+
+    @Autowired
+    private CommonServicesContext commonServicesContext;
+    @Autowired
+    private InternalServicesContext internalServicesContext;
+
+    private BlockingQueue<Submission> queue;
+    private long mergeWindowInMs = 50;
+    private int maxMergedSubmissions = 100;
+
+    private Thread workerThread;
+
+    public ChangeExecutionQueue() {
+        this(1000);
+    }
+
+    public ChangeExecutionQueue(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Stop the worker. Called by Spring when the context is closed.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Submit the changes and wait for their execution.
+     *
+     * @param changes
+     *            the changes to execute
+     */
+    public void execute(ChangesContext changes) {
+        try {
+            submit(changes).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SmallToolsException("Interrupted while waiting for the changes to execute", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SmallToolsException("Problem while executing the changes", e.getCause());
+        }
+    }
+
+    private void executeAlone(Submission submission) {
+        try {
+            internalServicesContext.getInternalChangeService().changesExecute(submission.changes);
+            submission.result.complete(null);
+        } catch (RuntimeException e) {
+            submission.result.completeExceptionally(e);
+        }
+    }
+
+    private void executeBatch(List<Submission> batch) {
+
+        if (batch.size() == 1) {
+            executeAlone(batch.get(0));
+            return;
+        }
+
+        // Merge
+        ChangesContext mergedChanges = new ChangesContext(commonServicesContext.getResourceService());
+        for (Submission submission : batch) {
+            ChangesContext changes = submission.changes;
+            mergedChanges.getResourcesToRefresh().addAll(changes.getResourcesToRefresh());
+            mergedChanges.getResourcesToDelete().addAll(changes.getResourcesToDelete());
+            mergedChanges.getLinksToDelete().addAll(changes.getLinksToDelete());
+            mergedChanges.getTagsToDelete().addAll(changes.getTagsToDelete());
+            mergedChanges.getResourcesToAdd().addAll(changes.getResourcesToAdd());
+            mergedChanges.getLinksToAdd().addAll(changes.getLinksToAdd());
+            mergedChanges.getTagsToAdd().addAll(changes.getTagsToAdd());
+            mergedChanges.getResourcesToUpdate().addAll(changes.getResourcesToUpdate());
+        }
+
+        // Execute all together
+        try {
+            logger.info("Executing {} submissions in one transaction", batch.size());
+            internalServicesContext.getInternalChangeService().changesExecute(mergedChanges);
+            for (Submission submission : batch) {
+                submission.changes.clear();
+                submission.result.complete(null);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("The transaction with {} submissions failed. Executing them one by one", batch.size(), e);
+            for (Submission submission : batch) {
+                submission.resetInternalIdsOfResourcesToAdd();
+                executeAlone(submission);
+            }
+        }
+    }
+
+    public int getMaxMergedSubmissions() {
+        return maxMergedSubmissions;
+    }
+
+    public long getMergeWindowInMs() {
+        return mergeWindowInMs;
+    }
+
+    private void processQueue() {
+
+        Submission pending = null;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Submission> batch = new ArrayList<>();
+                try {
+
+                    // Wait for the first one
+                    Submission first = pending == null ? queue.take() : pending;
+                    pending = null;
+                    batch.add(first);
+
+                    // Get the others that are coming in the window and that do not conflict
+                    ChangesWriteSet batchWriteSet = new ChangesWriteSet(commonServicesContext.getResourceService(), first.changes);
+                    long maxTime = System.currentTimeMillis() + mergeWindowInMs;
+                    while (batch.size() < maxMergedSubmissions) {
+                        Submission next = queue.poll(Math.max(0, maxTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        ChangesWriteSet nextWriteSet = new ChangesWriteSet(commonServicesContext.getResourceService(), next.changes);
+                        if (nextWriteSet.conflictsWith(batchWriteSet)) {
+                            pending = next;
+                            break;
+                        }
+                        batchWriteSet.addAll(nextWriteSet);
+                        batch.add(next);
+                    }
+
+                    executeBatch(batch);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    SmallToolsException stopped = new SmallToolsException("The queue was stopped before executing the changes", e);
+                    batch.forEach(it -> it.result.completeExceptionally(stopped));
+                } catch (Throwable e) {
+                    // Keep the worker running since the next submissions would wait forever
+                    logger.error("Problem while processing the queue", e);
+                    batch.forEach(it -> it.result.completeExceptionally(e));
+                }
+            }
+        } finally {
+            if (pending != null) {
+                pending.result.completeExceptionally(new SmallToolsException("The queue was stopped before executing the changes"));
+            }
+        }
+
+        logger.info("Stopped");
+    }
+
+    public void setCommonServicesContext(CommonServicesContext commonServicesContext) {
+        this.commonServicesContext = commonServicesContext;
+    }
+
+    public void setInternalServicesContext(InternalServicesContext internalServicesContext) {
+        this.internalServicesContext = internalServicesContext;
+    }
+
+    public void setMaxMergedSubmissions(int maxMergedSubmissions) {
+        this.maxMergedSubmissions = maxMergedSubmissions;
+    }
+
+    /**
+     * How long to wait for other submissions to merge with the first one.
+     *
+     * @param mergeWindowInMs
+     *            the time in ms. 0 to only merge those already waiting
+     */
+    public void setMergeWindowInMs(long mergeWindowInMs) {
+        this.mergeWindowInMs = mergeWindowInMs;
+    }
+
+    private synchronized void startIfNeeded() {
+        if (workerThread == null) {
+            workerThread = new Thread(this::processQueue, "ChangeExecutionQueue");
+            workerThread.setDaemon(true);
+            workerThread.start();
+        }
+    }
+
+    /**
+     * Stop the worker. The submissions that are not executed yet fail.
+     */
+    public synchronized void stop() {
+        if (workerThread != null) {
+            workerThread.interrupt();
+            workerThread = null;
+        }
+
+        List<Submission> notExecuted = new ArrayList<>();
+        queue.drainTo(notExecuted);
+        SmallToolsException stopped = new SmallToolsException("The queue was stopped before executing the changes");
+        notExecuted.forEach(it -> it.result.completeExceptionally(stopped));
+    }
+
+    /**
+     * Submit the changes to be executed in the background. Waits if the queue is full.
+     *
+     * @param changes
+     *            the changes to execute
+     * @return the result that completes when the changes are executed
+     */
+    public CompletableFuture<Void> submit(ChangesContext changes) {
+        startIfNeeded();
+        Submission submission = new Submission(changes);
+        try {
+            queue.put(submission);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SmallToolsException("Interrupted while waiting for a place in the queue", e);
+        }
+        startIfNeeded(); // In case it was stopped while waiting for a place
+        return submission.result;
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.service;
+
+import java.util.List;
+import java.util.Set;
+
+import com.foilen.infra.plugin.v1.core.service.IPResourceService;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * Follows the links over many hops in a single call instead of calling {@link IPResourceService#linkFindAllByFromResource(IPResource)} for each hop.
+ */
+public interface ResourceGraphService {
+
+    enum LinkDirection {
+        /**
+         * From the "from" resource of the links to their "to" resource.
+         */
+        OUTGOING,
+        /**
+         * From the "to" resource of the links to their "from" resource.
+         */
+        INCOMING
+    }
+
+    /**
+     * Get the resources that can be reached by following the links.
+     *
+     * @param <R>
+     *            the type of the resources to return
+     * @param startResource
+     *            the resource to start from (by its internal id or its primary key)
+     * @param linkTypes
+     *            the link types to follow or null for all of them
+     * @param direction
+     *            the direction to follow the links in
+     * @param maxDepth
+     *            the maximum amount of links to follow (1 gives the direct links)
+     * @param targetResourceClass
+     *            the type of the resources to return. The resources of the other types are still traversed
+     * @return the distinct resources (without the starting one) ordered by the depth they were first found at. The order within a depth is not defined
+     */
+    <R extends IPResource> List<R> linkFindAllReachable(IPResource startResource, Set<String> linkTypes, LinkDirection direction, int maxDepth, Class<R> targetResourceClass);
+
+}
@@ -0,0 +1,41 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.service;
+
+import java.util.stream.Stream;
+
+import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * Go through the resources without loading all of them in memory like {@link com.foilen.infra.plugin.v1.core.service.IPResourceService#resourceFindAll()} does. The streams must be closed (e.g. with
+ * a try-with-resources) to release the database cursor.
+ */
+public interface ResourceStreamingService {
+
+    /**
+     * Stream all the resources.
+     *
+     * @return the resources
+     */
+    Stream<? extends IPResource> resourceStreamAll();
+
+    /**
+     * Stream the resources matching the query.
+     *
+     * @param <T>
+     *            the type of resources
+     * @param query
+     *            the query
+     * @return the resources
+     */
+    <T extends IPResource> Stream<T> resourceStreamAll(IPResourceQuery<T> query);
+
+}
@@ -30,6 +30,8 @@ public class TimerServiceInExecutorImpl extends AbstractBasics implements TimerS
     private CommonServicesContext commonServicesContext;
     @Autowired
     private InternalServicesContext internalServicesContext;
+    @Autowired(required = false)
+    private ChangeExecutionQueue changeExecutionQueue;
 
     private ExecutorService waitingExecutorService;
     private ExecutorService executingExecutorService;
@@ -47,6 +49,10 @@ public class TimerServiceInExecutorImpl extends AbstractBasics implements TimerS
         timerAdd(new TimerEventContext(eventHandler, "executeLater", Calendar.SECOND, 5, true, true));
     }
 
+    public void setChangeExecutionQueue(ChangeExecutionQueue changeExecutionQueue) {
+        this.changeExecutionQueue = changeExecutionQueue;
+    }
+
     public void setCommonServicesContext(CommonServicesContext commonServicesContext) {
         this.commonServicesContext = commonServicesContext;
     }
@@ -57,7 +63,7 @@ public class TimerServiceInExecutorImpl extends AbstractBasics implements TimerS
 
     @Override
     public void timerAdd(TimerEventContext timer) {
-        waitingExecutorService.submit(new TimerWaitingRunnable(commonServicesContext, internalServicesContext, executingExecutorService, timer));
+        waitingExecutorService.submit(new TimerWaitingRunnable(commonServicesContext, internalServicesContext, changeExecutionQueue, executingExecutorService, timer));
     }
 
 }
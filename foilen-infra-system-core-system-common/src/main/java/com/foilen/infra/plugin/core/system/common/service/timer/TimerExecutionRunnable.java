@@ -9,6 +9,7 @@
  */
 package com.foilen.infra.plugin.core.system.common.service.timer;
 
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.TimerEventContext;
@@ -18,12 +19,15 @@ public class TimerExecutionRunnable implements Runnable {
 
     private CommonServicesContext commonServicesContext;
     private InternalServicesContext internalServicesContext;
+    private ChangeExecutionQueue changeExecutionQueue;
 
     private TimerEventContext timer;
 
-    public TimerExecutionRunnable(CommonServicesContext commonServicesContext, InternalServicesContext internalServicesContext, TimerEventContext timer) {
+    public TimerExecutionRunnable(CommonServicesContext commonServicesContext, InternalServicesContext internalServicesContext, ChangeExecutionQueue changeExecutionQueue,
+            TimerEventContext timer) {
         this.commonServicesContext = commonServicesContext;
         this.internalServicesContext = internalServicesContext;
+        this.changeExecutionQueue = changeExecutionQueue;
         this.timer = timer;
     }
 
@@ -31,6 +35,10 @@ public class TimerExecutionRunnable implements Runnable {
     public void run() {
         ChangesContext changes = new ChangesContext(commonServicesContext.getResourceService());
         timer.getTimerEventHandler().timerHandler(commonServicesContext, changes, timer);
-        internalServicesContext.getInternalChangeService().changesExecute(changes);
+        if (changeExecutionQueue == null) {
+            internalServicesContext.getInternalChangeService().changesExecute(changes);
+        } else {
+            changeExecutionQueue.execute(changes);
+        }
     }
 }
\ No newline at end of file
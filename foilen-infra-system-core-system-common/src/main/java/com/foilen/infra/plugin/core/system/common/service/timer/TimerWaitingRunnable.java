@@ -12,6 +12,7 @@ package com.foilen.infra.plugin.core.system.common.service.timer;
 import java.util.Date;
 import java.util.concurrent.ExecutorService;
 
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.TimerEventContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
@@ -23,13 +24,16 @@ public class TimerWaitingRunnable extends AbstractBasics implements Runnable {
 
     private CommonServicesContext commonServicesContext;
     private InternalServicesContext internalServicesContext;
+    private ChangeExecutionQueue changeExecutionQueue;
 
     private ExecutorService executingExecutorService;
     private TimerEventContext timer;
 
-    public TimerWaitingRunnable(CommonServicesContext commonServicesContext, InternalServicesContext internalServicesContext, ExecutorService executingExecutorService, TimerEventContext timer) {
+    public TimerWaitingRunnable(CommonServicesContext commonServicesContext, InternalServicesContext internalServicesContext, ChangeExecutionQueue changeExecutionQueue,
+            ExecutorService executingExecutorService, TimerEventContext timer) {
         this.commonServicesContext = commonServicesContext;
         this.internalServicesContext = internalServicesContext;
+        this.changeExecutionQueue = changeExecutionQueue;
         this.executingExecutorService = executingExecutorService;
         this.timer = timer;
     }
@@ -46,7 +50,7 @@ public class TimerWaitingRunnable extends AbstractBasics implements Runnable {
 
         boolean ranOnce = false;
         if (timer.isStartWhenFirstCreated()) {
-            executingExecutorService.submit(new TimerExecutionRunnable(commonServicesContext, internalServicesContext, timer));
+            executingExecutorService.submit(new TimerExecutionRunnable(commonServicesContext, internalServicesContext, changeExecutionQueue, timer));
             ranOnce = true;
         }
 
@@ -65,7 +69,7 @@ public class TimerWaitingRunnable extends AbstractBasics implements Runnable {
                 ThreadTools.sleep(waitFor);
 
                 // Execute
-                executingExecutorService.submit(new TimerExecutionRunnable(commonServicesContext, internalServicesContext, timer));
+                executingExecutorService.submit(new TimerExecutionRunnable(commonServicesContext, internalServicesContext, changeExecutionQueue, timer));
                 ranOnce = true;
             }
 
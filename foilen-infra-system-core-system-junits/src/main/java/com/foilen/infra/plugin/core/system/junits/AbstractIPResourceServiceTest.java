@@ -19,13 +19,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.foilen.infra.plugin.core.system.common.changeexecution.IncrementalChangesEventHandler;
+import com.foilen.infra.plugin.core.system.common.service.ResourceGraphService;
+import com.foilen.infra.plugin.core.system.common.service.ResourceGraphService.LinkDirection;
+import com.foilen.infra.plugin.core.system.junits.plugin.JunitsIncrementalChangesHandler;
 import com.foilen.infra.plugin.core.system.junits.resource.UnregisteredResource;
 import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
@@ -33,8 +40,10 @@ import com.foilen.infra.plugin.v1.core.context.TimerEventContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
 import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
 import com.foilen.infra.plugin.v1.core.eventhandler.TimerEventHandler;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesInTransactionContext;
 import com.foilen.infra.plugin.v1.core.exception.IllegalUpdateException;
 import com.foilen.infra.plugin.v1.core.exception.InfiniteUpdateLoop;
+import com.foilen.infra.plugin.v1.core.exception.ResourceNotFoundException;
 import com.foilen.infra.plugin.v1.core.exception.ResourcePrimaryKeyCollisionException;
 import com.foilen.infra.plugin.v1.core.plugin.IPPluginDefinitionProvider;
 import com.foilen.infra.plugin.v1.core.plugin.IPPluginDefinitionV1;
@@ -78,6 +87,29 @@ public abstract class AbstractIPResourceServiceTest extends AbstractBasics {
         void apply(IPResourceQuery<R> resourceQuery);
     }
 
+    private static class CountingIncrementalChangesEventHandler implements IncrementalChangesEventHandler {
+
+        private AtomicInteger count = new AtomicInteger();
+        private Consumer<IPResourceService> read;
+
+        public CountingIncrementalChangesEventHandler(Consumer<IPResourceService> read) {
+            this.read = read;
+        }
+
+        @Override
+        public List<ActionHandler> computeActionsToExecute(CommonServicesContext services, ChangesInTransactionContext changesInTransactionContext) {
+            count.incrementAndGet();
+            read.accept(services.getResourceService());
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Class<? extends IPResource>> getWatchedResourceClasses() {
+            return Collections.emptyList();
+        }
+
+    }
+
     private static class CounterTimerEventHandler implements TimerEventHandler {
 
         private AtomicInteger count;
@@ -264,6 +296,7 @@ public abstract class AbstractIPResourceServiceTest extends AbstractBasics {
     public void beforeEach() {
 
         JunitDynamicChangesHandler.setDynamicChangesEventHandlers(Collections.emptyList());
+        JunitsIncrementalChangesHandler.setIncrementalChangesEventHandler(null);
 
         List<? extends IPResource> all = getInternalServicesContext().getInternalIPResourceService().resourceFindAll();
         AssertTools.assertJsonComparison(Collections.emptyList(), all);
@@ -273,6 +306,39 @@ public abstract class AbstractIPResourceServiceTest extends AbstractBasics {
         JunitsHelper.createFakeData(getCommonServicesContext(), getInternalServicesContext());
     }
 
+    /**
+     * Execute a transaction where another handler applies some changes once and tell how many times the incremental handler was called.
+     *
+     * @param read
+     *            what the incremental handler reads
+     * @param changeOnce
+     *            the changes applied in the first iteration
+     * @return the amount of times the incremental handler was called
+     */
+    private int countIncrementalHandlerCalls(Consumer<IPResourceService> read, ActionHandler changeOnce) {
+
+        CountingIncrementalChangesEventHandler incrementalHandler = new CountingIncrementalChangesEventHandler(read);
+
+        AtomicBoolean changed = new AtomicBoolean();
+        JunitDynamicChangesHandler.setDynamicChangesEventHandlers(Collections.singletonList((services, changesInTransactionContext) -> {
+            if (changed.getAndSet(true)) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(changeOnce);
+        }));
+        JunitsIncrementalChangesHandler.setIncrementalChangesEventHandler(incrementalHandler);
+        try {
+            ChangesContext changes = new ChangesContext(getCommonServicesContext().getResourceService());
+            changes.getResourcesToRefresh().add(getCommonServicesContext().getResourceService().resourceFindByPk(new JunitResource("incremental_other")).get().getInternalId());
+            getInternalServicesContext().getInternalChangeService().changesExecute(changes);
+        } finally {
+            JunitsIncrementalChangesHandler.setIncrementalChangesEventHandler(null);
+            JunitDynamicChangesHandler.setDynamicChangesEventHandlers(Collections.emptyList());
+        }
+
+        return incrementalHandler.count.get();
+    }
+
     protected abstract CommonServicesContext getCommonServicesContext();
 
     protected abstract InternalServicesContext getInternalServicesContext();
@@ -306,6 +372,54 @@ public abstract class AbstractIPResourceServiceTest extends AbstractBasics {
 
     }
 
+    @Test
+    public void testChanges_incrementalHandler() {
+
+        // Create
+        ChangesContext changes = new ChangesContext(getCommonServicesContext().getResourceService());
+        IPResourceService resourceService = getCommonServicesContext().getResourceService();
+        changes.resourceAdd(new JunitResource("incremental_read"));
+        changes.resourceAdd(new JunitResource("incremental_other"));
+        getInternalServicesContext().getInternalChangeService().changesExecute(changes);
+        JunitResource readResource = resourceService.resourceFindByPk(new JunitResource("incremental_read")).get();
+        JunitResource otherResource = resourceService.resourceFindByPk(new JunitResource("incremental_other")).get();
+
+        // Resource read: skipped when something else changed
+        Assert.assertEquals(1, countIncrementalHandlerCalls( //
+                rs -> rs.resourceFind(readResource.getInternalId()), //
+                (services, actionChanges) -> actionChanges.tagAdd(otherResource, "incremental_1")));
+
+        // Resource read: called again when it changed
+        Assert.assertTrue(countIncrementalHandlerCalls( //
+                rs -> rs.resourceFind(readResource.getInternalId()), //
+                (services, actionChanges) -> {
+                    JunitResource updatedResource = new JunitResource("incremental_read");
+                    updatedResource.setLongNumber(100L);
+                    actionChanges.resourceUpdate(readResource.getInternalId(), updatedResource);
+                }) >= 2);
+
+        // Query read: skipped when something else changed
+        Assert.assertEquals(1, countIncrementalHandlerCalls( //
+                rs -> rs.resourceFindAll(rs.createResourceQuery(Ex1Resource.class)), //
+                (services, actionChanges) -> actionChanges.tagAdd(otherResource, "incremental_2")));
+
+        // Query read: called again when a resource of that type is added
+        Assert.assertTrue(countIncrementalHandlerCalls( //
+                rs -> rs.resourceFindAll(rs.createResourceQuery(Ex1Resource.class)), //
+                (services, actionChanges) -> actionChanges.resourceAdd(new Ex1Resource("incremental", 1000))) >= 2);
+
+        // Link read: skipped when something else changed
+        Assert.assertEquals(1, countIncrementalHandlerCalls( //
+                rs -> rs.linkFindAllByFromResource(readResource), //
+                (services, actionChanges) -> actionChanges.tagAdd(otherResource, "incremental_3")));
+
+        // Link read: called again when a link changed
+        Assert.assertTrue(countIncrementalHandlerCalls( //
+                rs -> rs.linkFindAllByFromResource(readResource), //
+                (services, actionChanges) -> actionChanges.linkAdd(readResource, "INCREMENTAL", otherResource)) >= 2);
+
+    }
+
     @Test
     public void testChanges_lastUpdate() {
 
@@ -557,6 +671,64 @@ public abstract class AbstractIPResourceServiceTest extends AbstractBasics {
 
     }
 
+    @Test
+    public void testChanges_linksAndTagsOnResourcesChangedInSameChanges() {
+
+        // Create
+        ChangesContext changes = new ChangesContext(getCommonServicesContext().getResourceService());
+        InternalChangeService internalChangeService = getInternalServicesContext().getInternalChangeService();
+        IPResourceService resourceService = getCommonServicesContext().getResourceService();
+        JunitResource keep = new JunitResource("sameChanges_keep");
+        JunitResource rename = new JunitResource("sameChanges_rename");
+        JunitResource delete = new JunitResource("sameChanges_delete");
+        changes.resourceAdd(keep);
+        changes.resourceAdd(rename);
+        changes.resourceAdd(delete);
+        changes.linkAdd(keep, "USES", delete);
+        changes.tagAdd(delete, "tag1");
+        internalChangeService.changesExecute(changes);
+
+        keep = resourceService.resourceFindByPk(keep).get();
+        rename = resourceService.resourceFindByPk(rename).get();
+        delete = resourceService.resourceFindByPk(delete).get();
+
+        // Add, rename and delete with links and tags on them
+        JunitResource added = new JunitResource("sameChanges_added");
+        changes.resourceDelete(delete.getInternalId());
+        changes.linkDelete(keep, "USES", delete);
+        changes.tagDelete(delete, "tag1");
+        changes.resourceAdd(added);
+        changes.linkAdd(keep, "USES", added);
+        changes.linkAdd(added, "USES", rename);
+        changes.tagAdd(added, "added");
+        changes.tagAdd(rename, "renamed");
+        changes.resourceUpdate(rename.getInternalId(), new JunitResource("sameChanges_renamed"));
+        internalChangeService.changesExecute(changes);
+
+        // Check
+        Assert.assertFalse(resourceService.resourceFindByPk(new JunitResource("sameChanges_delete")).isPresent());
+        Assert.assertFalse(resourceService.resourceFindByPk(new JunitResource("sameChanges_rename")).isPresent());
+        added = resourceService.resourceFindByPk(added).get();
+        JunitResource renamed = resourceService.resourceFindByPk(new JunitResource("sameChanges_renamed")).get();
+        Assert.assertEquals(rename.getInternalId(), renamed.getInternalId());
+        Assert.assertEquals(Arrays.asList("sameChanges_added"), resourceService.linkFindAllByFromResourceAndLinkType(keep, "USES").stream().map(it -> ((JunitResource) it).getText()).collect(Collectors.toList()));
+        Assert.assertEquals(Arrays.asList("sameChanges_renamed"), resourceService.linkFindAllByFromResourceAndLinkType(added, "USES").stream().map(it -> ((JunitResource) it).getText()).collect(Collectors.toList()));
+        assertSet(resourceService.tagFindAllByResource(added), "added");
+        assertSet(resourceService.tagFindAllByResource(renamed), "renamed");
+
+        // Link to a resource deleted in the same changes (fail and rollback)
+        changes.resourceDelete(added.getInternalId());
+        changes.linkAdd(keep, "USES", added);
+        try {
+            internalChangeService.changesExecute(changes);
+            Assert.fail("Expecting ResourceNotFoundException");
+        } catch (ResourceNotFoundException e) {
+        }
+        changes.clear();
+        Assert.assertEquals(Arrays.asList("sameChanges_added"), resourceService.linkFindAllByFromResourceAndLinkType(keep, "USES").stream().map(it -> ((JunitResource) it).getText()).collect(Collectors.toList()));
+
+    }
+
     @Test
     public void testChanges_reduntantLinksAndTags() {
 
@@ -839,6 +1011,35 @@ public abstract class AbstractIPResourceServiceTest extends AbstractBasics {
 
     }
 
+    @Test
+    public void testLinkFindAllReachable() {
+
+        // a1 -a-> a2 -a-> a3 -b-> a4 and a3 -a-> a1
+        ChangesContext changes = new ChangesContext(getCommonServicesContext().getResourceService());
+        JunitResource a1 = new JunitResource("reachable_1");
+        JunitResource a2 = new JunitResource("reachable_2");
+        JunitResource a3 = new JunitResource("reachable_3");
+        JunitResource a4 = new JunitResource("reachable_4");
+        changes.resourceAdd(a1);
+        changes.resourceAdd(a2);
+        changes.resourceAdd(a3);
+        changes.resourceAdd(a4);
+        changes.linkAdd(a1, "a", a2);
+        changes.linkAdd(a2, "a", a3);
+        changes.linkAdd(a3, "b", a4);
+        changes.linkAdd(a3, "a", a1);
+        getInternalServicesContext().getInternalChangeService().changesExecute(changes);
+
+        ResourceGraphService resourceGraphService = (ResourceGraphService) getCommonServicesContext().getResourceService();
+        Function<List<JunitResource>, List<String>> toNames = resources -> resources.stream().map(JunitResource::getResourceName).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("reachable_2", "reachable_3"),
+                toNames.apply(resourceGraphService.linkFindAllReachable(a1, Collections.singleton("a"), LinkDirection.OUTGOING, 5, JunitResource.class)));
+        Assert.assertEquals(Arrays.asList("reachable_2"), toNames.apply(resourceGraphService.linkFindAllReachable(a1, Collections.singleton("a"), LinkDirection.OUTGOING, 1, JunitResource.class)));
+        Assert.assertEquals(Arrays.asList("reachable_2", "reachable_3", "reachable_4"), toNames.apply(resourceGraphService.linkFindAllReachable(a1, null, LinkDirection.OUTGOING, 5, JunitResource.class)));
+        Assert.assertEquals(Arrays.asList("reachable_2", "reachable_1"), toNames.apply(resourceGraphService.linkFindAllReachable(a3, Collections.singleton("a"), LinkDirection.INCOMING, 2, JunitResource.class)));
+        Assert.assertEquals(Collections.emptyList(), resourceGraphService.linkFindAllReachable(a4, null, LinkDirection.OUTGOING, 5, JunitResource.class));
+    }
+
     @Test
     public void testMultiLevelResources() {
 
@@ -17,11 +17,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.foilen.infra.plugin.core.system.common.service.ResourceStreamingService;
 import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
@@ -29,6 +31,7 @@ import com.foilen.infra.plugin.v1.core.exception.IllegalUpdateException;
 import com.foilen.infra.plugin.v1.core.exception.ResourceNotFoundException;
 import com.foilen.infra.plugin.v1.core.service.IPResourceService;
 import com.foilen.infra.plugin.v1.core.service.internal.InternalChangeService;
+import com.foilen.infra.plugin.v1.core.service.internal.InternalIPResourceService;
 import com.foilen.infra.plugin.v1.model.resource.IPResource;
 import com.foilen.infra.resource.example.JunitResource;
 import com.foilen.infra.resource.example.JunitResourceEnum;
@@ -53,30 +56,32 @@ public class JunitsHelper {
 
     public static void assertState(CommonServicesContext commonServicesContext, InternalServicesContext internalServicesContext, String resourceName, Class<?> resourceContext, boolean withContent) {
         ResourcesState resourcesState = new ResourcesState();
-        resourcesState.setResources(internalServicesContext.getInternalIPResourceService().resourceFindAll().stream() //
-                .map(resource -> {
-                    ResourceState resourceState = new ResourceState(getResourceDetails(resource));
-
-                    // With content
-                    if (withContent) {
-                        // Remove some values
-                        IPResource cloned = JsonTools.clone(resource);
-                        cloned.setInternalId(null);
-                        resourceState.setContent(cloned);
-                    }
-
-                    // Links
-                    List<ResourcesStateLink> links = commonServicesContext.getResourceService().linkFindAllByFromResource(resource).stream() //
-                            .map(link -> new ResourcesStateLink(link.getA(), getResourceDetails(link.getB()))) //
-                            .collect(Collectors.toList());
-                    resourceState.setLinks(links);
-
-                    // Tags
-                    resourceState.setTags(commonServicesContext.getResourceService().tagFindAllByResource(resource).stream().sorted().collect(Collectors.toList()));
-
-                    return resourceState;
-                }) //
-                .collect(Collectors.toList()));
+        try (Stream<? extends IPResource> resources = resourceStreamAll(internalServicesContext)) {
+            resourcesState.setResources(resources //
+                    .map(resource -> {
+                        ResourceState resourceState = new ResourceState(getResourceDetails(resource));
+
+                        // With content
+                        if (withContent) {
+                            // Remove some values
+                            IPResource cloned = JsonTools.clone(resource);
+                            cloned.setInternalId(null);
+                            resourceState.setContent(cloned);
+                        }
+
+                        // Links
+                        List<ResourcesStateLink> links = commonServicesContext.getResourceService().linkFindAllByFromResource(resource).stream() //
+                                .map(link -> new ResourcesStateLink(link.getA(), getResourceDetails(link.getB()))) //
+                                .collect(Collectors.toList());
+                        resourceState.setLinks(links);
+
+                        // Tags
+                        resourceState.setTags(commonServicesContext.getResourceService().tagFindAllByResource(resource).stream().sorted().collect(Collectors.toList()));
+
+                        return resourceState;
+                    }) //
+                    .collect(Collectors.toList()));
+        }
 
         resourcesState.sort();
 
@@ -397,4 +402,12 @@ public class JunitsHelper {
         return resource.getClass().getSimpleName() + " | " + resource.getResourceName() + " | " + resource.getResourceDescription();
     }
 
+    private static Stream<? extends IPResource> resourceStreamAll(InternalServicesContext internalServicesContext) {
+        InternalIPResourceService internalIPResourceService = internalServicesContext.getInternalIPResourceService();
+        if (internalIPResourceService instanceof ResourceStreamingService) {
+            return ((ResourceStreamingService) internalIPResourceService).resourceStreamAll();
+        }
+        return internalIPResourceService.resourceFindAll().stream();
+    }
+
 }
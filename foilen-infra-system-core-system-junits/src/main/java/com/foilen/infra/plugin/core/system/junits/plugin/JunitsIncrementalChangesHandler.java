@@ -0,0 +1,50 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.junits.plugin;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.foilen.infra.plugin.core.system.common.changeexecution.IncrementalChangesEventHandler;
+import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
+import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesInTransactionContext;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * An {@link IncrementalChangesEventHandler} that the tests can set. Does nothing when none is set.
+ */
+public class JunitsIncrementalChangesHandler implements IncrementalChangesEventHandler {
+
+    private static volatile IncrementalChangesEventHandler incrementalChangesEventHandler;
+
+    public static void setIncrementalChangesEventHandler(IncrementalChangesEventHandler incrementalChangesEventHandler) {
+        JunitsIncrementalChangesHandler.incrementalChangesEventHandler = incrementalChangesEventHandler;
+    }
+
+    @Override
+    public List<ActionHandler> computeActionsToExecute(CommonServicesContext services, ChangesInTransactionContext changesInTransactionContext) {
+        IncrementalChangesEventHandler handler = incrementalChangesEventHandler;
+        if (handler == null) {
+            return Collections.emptyList();
+        }
+        return handler.computeActionsToExecute(services, changesInTransactionContext);
+    }
+
+    @Override
+    public List<Class<? extends IPResource>> getWatchedResourceClasses() {
+        IncrementalChangesEventHandler handler = incrementalChangesEventHandler;
+        if (handler == null) {
+            return Collections.emptyList();
+        }
+        return handler.getWatchedResourceClasses();
+    }
+
+}
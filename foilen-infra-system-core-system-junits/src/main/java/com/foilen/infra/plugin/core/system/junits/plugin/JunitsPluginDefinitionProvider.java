@@ -0,0 +1,33 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.junits.plugin;
+
+import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
+import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
+import com.foilen.infra.plugin.v1.core.plugin.IPPluginDefinitionProvider;
+import com.foilen.infra.plugin.v1.core.plugin.IPPluginDefinitionV1;
+
+/**
+ * The handlers used by {@link com.foilen.infra.plugin.core.system.junits.AbstractIPResourceServiceTest}.
+ */
+public class JunitsPluginDefinitionProvider implements IPPluginDefinitionProvider {
+
+    @Override
+    public IPPluginDefinitionV1 getIPPluginDefinition() {
+        IPPluginDefinitionV1 pluginDefinition = new IPPluginDefinitionV1("Foilen", "Junits", "The handlers used by the tests of the system", "1.0.0");
+        pluginDefinition.addChangesHandler(new JunitsIncrementalChangesHandler());
+        return pluginDefinition;
+    }
+
+    @Override
+    public void initialize(CommonServicesContext commonServicesContext, InternalServicesContext internalServicesContext) {
+    }
+
+}
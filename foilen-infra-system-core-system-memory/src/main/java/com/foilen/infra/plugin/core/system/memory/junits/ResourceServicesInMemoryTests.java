@@ -9,6 +9,7 @@
  */
 package com.foilen.infra.plugin.core.system.memory.junits;
 
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.core.system.common.service.IPPluginServiceImpl;
 import com.foilen.infra.plugin.core.system.common.service.MessagingServiceLoggerImpl;
 import com.foilen.infra.plugin.core.system.common.service.TimerServiceInExecutorImpl;
@@ -35,6 +36,11 @@ public class ResourceServicesInMemoryTests {
         resourceServicesInMemoryImpl.setCommonServicesContext(commonServicesContext);
         resourceServicesInMemoryImpl.setInternalServicesContext(internalServicesContext);
 
+        ChangeExecutionQueue changeExecutionQueue = new ChangeExecutionQueue();
+        changeExecutionQueue.setCommonServicesContext(commonServicesContext);
+        changeExecutionQueue.setInternalServicesContext(internalServicesContext);
+
+        timerService.setChangeExecutionQueue(changeExecutionQueue);
         timerService.setCommonServicesContext(commonServicesContext);
         timerService.setInternalServicesContext(internalServicesContext);
 
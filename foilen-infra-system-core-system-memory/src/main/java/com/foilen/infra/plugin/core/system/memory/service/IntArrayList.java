@@ -0,0 +1,119 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints. The "sorted" methods keep the values in ascending order and without duplicates to find them with a binary search.
+ */
+public class IntArrayList {
+
+    private int[] values;
+    private int size;
+
+    public IntArrayList() {
+        this(4);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        values = new int[initialCapacity];
+    }
+
+    public void add(int value) {
+        ensureCapacityForOneMore();
+        values[size++] = value;
+    }
+
+    /**
+     * Add the value at its place in a sorted list.
+     *
+     * @param value
+     *            the value
+     * @return true if added ; false if it was already there
+     */
+    public boolean addSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        ensureCapacityForOneMore();
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        ++size;
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) != -1;
+    }
+
+    public boolean containsSorted(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    private void ensureCapacityForOneMore() {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, size * 2));
+        }
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < size; ++i) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int removeLast() {
+        return values[--size];
+    }
+
+    /**
+     * Remove the value from a sorted list.
+     *
+     * @param value
+     *            the value
+     * @return true if it was there
+     */
+    public boolean removeSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        --size;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+}
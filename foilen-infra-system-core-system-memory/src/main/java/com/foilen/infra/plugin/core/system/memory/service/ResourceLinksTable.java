@@ -0,0 +1,305 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.util.Arrays;
+
+/**
+ * The links between resources using the indexes of a {@link StringDictionary}. Each link is a slot in 3 int arrays (in the order they were added), found by an open addressing table and by the lists
+ * of slots of each resource. The deleted slots are reused once there are enough of them by compacting the arrays.
+ */
+public class ResourceLinksTable {
+
+    public interface LinkConsumer {
+        void accept(int from, int type, int to);
+    }
+
+    private static final int DELETED = -1;
+
+    private static final IntArrayList EMPTY = new IntArrayList(0);
+
+    private static int hash(int from, int type, int to) {
+        int h = (from * 31 + type) * 31 + to;
+        return h ^ (h >>> 16);
+    }
+
+    // The slots
+    private int[] froms = new int[16];
+    private int[] types = new int[16];
+    private int[] tos = new int[16];
+    private int size;
+    private int deletedCount;
+
+    // The slot + 1 or 0 when empty
+    private int[] table = new int[32];
+
+    // The slots by resource index (sorted since the slots are given in ascending order)
+    private IntArrayList[] slotsByFrom = new IntArrayList[16];
+    private IntArrayList[] slotsByTo = new IntArrayList[16];
+
+    /**
+     * Add the link if it is not there.
+     *
+     * @param from
+     *            the from resource index
+     * @param type
+     *            the link type index
+     * @param to
+     *            the to resource index
+     * @return true if added
+     */
+    public boolean add(int from, int type, int to) {
+        if (find(from, type, to) != -1) {
+            return false;
+        }
+
+        int slot = size++;
+        if (slot == froms.length) {
+            int capacity = froms.length * 2;
+            froms = Arrays.copyOf(froms, capacity);
+            types = Arrays.copyOf(types, capacity);
+            tos = Arrays.copyOf(tos, capacity);
+        }
+        froms[slot] = from;
+        types[slot] = type;
+        tos[slot] = to;
+
+        insertInTable(slot);
+        if ((size - deletedCount) * 2 > table.length) {
+            rebuildTable(table.length * 2);
+        }
+
+        slotsByFrom = addSlot(slotsByFrom, from, slot);
+        slotsByTo = addSlot(slotsByTo, to, slot);
+        return true;
+    }
+
+    private IntArrayList[] addSlot(IntArrayList[] slotsByResource, int resource, int slot) {
+        if (resource >= slotsByResource.length) {
+            slotsByResource = Arrays.copyOf(slotsByResource, Math.max(resource + 1, slotsByResource.length * 2));
+        }
+        IntArrayList slots = slotsByResource[resource];
+        if (slots == null) {
+            slots = new IntArrayList(2);
+            slotsByResource[resource] = slots;
+        }
+        slots.add(slot);
+        return slotsByResource;
+    }
+
+    private void compact() {
+        int liveSize = 0;
+        for (int slot = 0; slot < size; ++slot) {
+            if (types[slot] != DELETED) {
+                froms[liveSize] = froms[slot];
+                types[liveSize] = types[slot];
+                tos[liveSize] = tos[slot];
+                ++liveSize;
+            }
+        }
+        size = liveSize;
+        deletedCount = 0;
+
+        // Rebuild the indexes with the new slots
+        rebuildTable(table.length);
+        Arrays.fill(slotsByFrom, null);
+        Arrays.fill(slotsByTo, null);
+        for (int slot = 0; slot < size; ++slot) {
+            slotsByFrom = addSlot(slotsByFrom, froms[slot], slot);
+            slotsByTo = addSlot(slotsByTo, tos[slot], slot);
+        }
+    }
+
+    /**
+     * Delete the link if it is there.
+     *
+     * @param from
+     *            the from resource index
+     * @param type
+     *            the link type index
+     * @param to
+     *            the to resource index
+     * @return true if deleted
+     */
+    public boolean delete(int from, int type, int to) {
+        int position = findPosition(from, type, to);
+        if (position == -1) {
+            return false;
+        }
+        int slot = table[position] - 1;
+        removeFromTable(position);
+
+        removeSlot(slotsByFrom, from, slot);
+        removeSlot(slotsByTo, to, slot);
+        types[slot] = DELETED;
+        ++deletedCount;
+
+        if (deletedCount > 1024 && deletedCount * 2 > size) {
+            compact();
+        }
+        return true;
+    }
+
+    public boolean exists(int from, int type, int to) {
+        return find(from, type, to) != -1;
+    }
+
+    private int find(int from, int type, int to) {
+        int position = findPosition(from, type, to);
+        return position == -1 ? -1 : table[position] - 1;
+    }
+
+    private int findPosition(int from, int type, int to) {
+        int mask = table.length - 1;
+        int position = hash(from, type, to) & mask;
+        while (table[position] != 0) {
+            int slot = table[position] - 1;
+            if (froms[slot] == from && types[slot] == type && tos[slot] == to) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Go through all the links in the order they were added.
+     *
+     * @param consumer
+     *            the consumer
+     */
+    public void forEach(LinkConsumer consumer) {
+        for (int slot = 0; slot < size; ++slot) {
+            if (types[slot] != DELETED) {
+                consumer.accept(froms[slot], types[slot], tos[slot]);
+            }
+        }
+    }
+
+    public int getFrom(int slot) {
+        return froms[slot];
+    }
+
+    public int getTo(int slot) {
+        return tos[slot];
+    }
+
+    public int getType(int slot) {
+        return types[slot];
+    }
+
+    private void insertInTable(int slot) {
+        int mask = table.length - 1;
+        int position = hash(froms[slot], types[slot], tos[slot]) & mask;
+        while (table[position] != 0) {
+            position = (position + 1) & mask;
+        }
+        table[position] = slot + 1;
+    }
+
+    private void rebuildTable(int capacity) {
+        table = new int[capacity];
+        for (int slot = 0; slot < size; ++slot) {
+            if (types[slot] != DELETED) {
+                insertInTable(slot);
+            }
+        }
+    }
+
+    private void removeFromTable(int position) {
+        // Shift back the next entries that would not be found anymore
+        int mask = table.length - 1;
+        int empty = position;
+        int current = position;
+        while (true) {
+            current = (current + 1) & mask;
+            if (table[current] == 0) {
+                break;
+            }
+            int slot = table[current] - 1;
+            int ideal = hash(froms[slot], types[slot], tos[slot]) & mask;
+            boolean staysAfterEmpty = empty <= current ? (empty < ideal && ideal <= current) : (empty < ideal || ideal <= current);
+            if (!staysAfterEmpty) {
+                table[empty] = table[current];
+                empty = current;
+            }
+        }
+        table[empty] = 0;
+    }
+
+    private void removeSlot(IntArrayList[] slotsByResource, int resource, int slot) {
+        IntArrayList slots = slotsByResource[resource];
+        slots.removeSorted(slot);
+        if (slots.isEmpty()) {
+            slotsByResource[resource] = null;
+        }
+    }
+
+    public int size() {
+        return size - deletedCount;
+    }
+
+    /**
+     * Get the slots of the links from that resource in the order they were added.
+     *
+     * @param from
+     *            the from resource index
+     * @return the slots
+     */
+    public IntArrayList slotsByFrom(int from) {
+        return slots(slotsByFrom, from);
+    }
+
+    /**
+     * Get the slots of the links from or to that resource in the order they were added.
+     *
+     * @param resource
+     *            the resource index
+     * @return the slots
+     */
+    public int[] slotsByResource(int resource) {
+        IntArrayList fromSlots = slotsByFrom(resource);
+        IntArrayList toSlots = slotsByTo(resource);
+        int[] slots = new int[fromSlots.size() + toSlots.size()];
+        int count = 0;
+        for (int i = 0; i < fromSlots.size(); ++i) {
+            slots[count++] = fromSlots.get(i);
+        }
+        for (int i = 0; i < toSlots.size(); ++i) {
+            int slot = toSlots.get(i);
+            // A link to itself is already there
+            if (froms[slot] != resource) {
+                slots[count++] = slot;
+            }
+        }
+        slots = Arrays.copyOf(slots, count);
+        Arrays.sort(slots);
+        return slots;
+    }
+
+    /**
+     * Get the slots of the links to that resource in the order they were added.
+     *
+     * @param to
+     *            the to resource index
+     * @return the slots
+     */
+    public IntArrayList slotsByTo(int to) {
+        return slots(slotsByTo, to);
+    }
+
+    private IntArrayList slots(IntArrayList[] slotsByResource, int resource) {
+        if (resource < 0 || resource >= slotsByResource.length || slotsByResource[resource] == null) {
+            return EMPTY;
+        }
+        return slotsByResource[resource];
+    }
+
+}
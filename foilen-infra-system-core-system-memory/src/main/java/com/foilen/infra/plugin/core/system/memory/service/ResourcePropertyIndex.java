@@ -0,0 +1,209 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.exception.SmallToolsException;
+
+/**
+ * The ids of the resources of one type by the value of one of their properties. The values of a {@link Set} property are each in their own bucket and the other values can also be searched by
+ * range.
+ *
+ * The found ids are candidates that might contain more resources than what matches. They must still be checked.
+ */
+public class ResourcePropertyIndex {
+
+    private Method getterMethod;
+    private boolean multiValues;
+
+    // Single value: the value ; Multi values: each item
+    private Map<Object, Set<String>> idsByValue = new HashMap<>();
+
+    // Multi values: the resources with a null or empty set
+    private Set<String> emptyIds = new HashSet<>();
+
+    // Single value: the non-null values that can be compared the same way the query does
+    private NavigableMap<Object, Set<String>> idsBySortedValue = new TreeMap<>();
+    private boolean sortable = true;
+
+    public ResourcePropertyIndex(Method getterMethod, boolean multiValues) {
+        this.getterMethod = getterMethod;
+        this.multiValues = multiValues;
+    }
+
+    private static boolean isSortable(Object value) {
+        // Float and Double are not sorted the same way by compareTo() (-0.0 and NaN)
+        return value instanceof Integer || value instanceof Long || value instanceof Date || value instanceof Enum;
+    }
+
+    public void add(String id, IPResource resource) {
+        Object value = getValue(resource);
+        if (multiValues) {
+            Collection<?> values = (Collection<?>) value;
+            if (values == null || values.isEmpty()) {
+                emptyIds.add(id);
+            } else {
+                values.forEach(it -> idsByValue.computeIfAbsent(it, k -> new HashSet<>()).add(id));
+            }
+            return;
+        }
+
+        idsByValue.computeIfAbsent(value, k -> new HashSet<>()).add(id);
+        if (value != null && sortable) {
+            if (isSortable(value) && (idsBySortedValue.isEmpty() || idsBySortedValue.firstKey().getClass() == value.getClass())) {
+                idsBySortedValue.computeIfAbsent(value, k -> new HashSet<>()).add(id);
+            } else {
+                sortable = false;
+                idsBySortedValue.clear();
+            }
+        }
+    }
+
+    /**
+     * Find the resources that have all the values in their {@link Set} property.
+     *
+     * @param values
+     *            the values
+     * @return the candidates or null if this index cannot help
+     */
+    public Set<String> findContains(Object values) {
+        if (!multiValues) {
+            return Collections.emptySet();
+        }
+        if (!(values instanceof Collection) || ((Collection<?>) values).isEmpty()) {
+            return null;
+        }
+        return intersect((Collection<?>) values);
+    }
+
+    /**
+     * Find the resources that have that value.
+     *
+     * @param value
+     *            the value
+     * @return the candidates or null if this index cannot help
+     */
+    public Set<String> findEquals(Object value) {
+        if (multiValues) {
+            if (value == null) {
+                return emptyIds;
+            }
+            if (!(value instanceof Collection)) {
+                return Collections.emptySet();
+            }
+            Collection<?> values = (Collection<?>) value;
+            if (values.isEmpty()) {
+                return emptyIds;
+            }
+            return intersect(values);
+        }
+
+        Set<String> ids = idsByValue.getOrDefault(value, Collections.emptySet());
+        if (value instanceof Collection && ((Collection<?>) value).isEmpty()) {
+            // An empty collection also matches a null value
+            ids = new HashSet<>(ids);
+            ids.addAll(idsByValue.getOrDefault(null, Collections.emptySet()));
+        }
+        return ids;
+    }
+
+    /**
+     * Find the resources that have a value in the range.
+     *
+     * @param value
+     *            the value to compare to
+     * @param greater
+     *            true to find the greater values ; false to find the lesser values
+     * @param inclusive
+     *            true to also find the values that are equal
+     * @return the candidates or null if this index cannot help
+     */
+    public Set<String> findRange(Object value, boolean greater, boolean inclusive) {
+        if (multiValues || !sortable || value == null) {
+            return null;
+        }
+        if (idsBySortedValue.isEmpty()) {
+            // Only null values
+            return Collections.emptySet();
+        }
+        if (idsBySortedValue.firstKey().getClass() != value.getClass()) {
+            return null;
+        }
+
+        NavigableMap<Object, Set<String>> range = greater ? idsBySortedValue.tailMap(value, inclusive) : idsBySortedValue.headMap(value, inclusive);
+        Set<String> ids = new HashSet<>();
+        range.values().forEach(ids::addAll);
+        return ids;
+    }
+
+    private Object getValue(IPResource resource) {
+        try {
+            return getterMethod.invoke(resource);
+        } catch (Exception e) {
+            throw new SmallToolsException("Could not get the property " + getterMethod.getName(), e);
+        }
+    }
+
+    private Set<String> intersect(Collection<?> values) {
+        Set<String> ids = null;
+        for (Object value : values) {
+            Set<String> valueIds = idsByValue.getOrDefault(value, Collections.emptySet());
+            if (ids == null) {
+                ids = new HashSet<>(valueIds);
+            } else {
+                ids.retainAll(valueIds);
+            }
+            if (ids.isEmpty()) {
+                break;
+            }
+        }
+        return ids;
+    }
+
+    public void remove(String id, IPResource resource) {
+        Object value = getValue(resource);
+        if (multiValues) {
+            Collection<?> values = (Collection<?>) value;
+            if (values == null || values.isEmpty()) {
+                emptyIds.remove(id);
+            } else {
+                values.forEach(it -> removeId(idsByValue, it, id));
+            }
+            return;
+        }
+
+        removeId(idsByValue, value, id);
+        if (value != null && sortable) {
+            removeId(idsBySortedValue, value, id);
+        }
+    }
+
+    private void removeId(Map<Object, Set<String>> idsByValue, Object value, String id) {
+        Set<String> ids = idsByValue.get(value);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByValue.remove(value);
+            }
+        }
+    }
+
+}
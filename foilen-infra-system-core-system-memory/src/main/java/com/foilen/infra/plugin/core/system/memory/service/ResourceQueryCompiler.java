@@ -0,0 +1,274 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+/**
+ * Compiles an {@link IPResourceQuery} into a {@link Predicate} that does not use reflection. The property accessors and the like patterns are cached.
+ */
+public class ResourceQueryCompiler extends AbstractBasics {
+
+    private enum RangeOperator {
+        GREATER, GREATER_EQUALS, LESSER, LESSER_EQUALS;
+
+        public boolean test(double current, double expected) {
+            switch (this) {
+            case GREATER:
+                return current > expected;
+            case GREATER_EQUALS:
+                return current >= expected;
+            case LESSER:
+                return current < expected;
+            default:
+                return current <= expected;
+            }
+        }
+
+        public boolean test(long current, long expected) {
+            switch (this) {
+            case GREATER:
+                return current > expected;
+            case GREATER_EQUALS:
+                return current >= expected;
+            case LESSER:
+                return current < expected;
+            default:
+                return current <= expected;
+            }
+        }
+
+    }
+
+    private static final int MAX_CACHED_PATTERNS = 1000;
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    @SuppressWarnings("rawtypes")
+    private static Predicate<Object> compileContains(Object propertyValue) {
+        if (!(propertyValue instanceof Collection)) {
+            return currentValue -> false;
+        }
+        Collection<?> propertyValueCollection = (Collection<?>) propertyValue;
+        return currentValue -> currentValue instanceof Set && ((Set) currentValue).containsAll(propertyValueCollection);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Predicate<Object> compileEquals(Object propertyValue) {
+        if (propertyValue == null) {
+            return currentValue -> currentValue == null;
+        }
+
+        if (propertyValue instanceof Collection) {
+            Collection<?> propertyValueCollection = (Collection<?>) propertyValue;
+            return currentValue -> {
+                if (currentValue instanceof Set) {
+                    Set currentValueSet = (Set) currentValue;
+                    return currentValueSet.size() == propertyValueCollection.size() && propertyValueCollection.containsAll(currentValueSet);
+                }
+                if (currentValue == null) {
+                    return propertyValueCollection.isEmpty();
+                }
+                return propertyValue.equals(currentValue);
+            };
+        }
+
+        return currentValue -> !(currentValue instanceof Set) && propertyValue.equals(currentValue);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Predicate<Object> compileRange(Object propertyValue, RangeOperator operator) {
+        if (propertyValue instanceof Integer) {
+            int expected = (int) propertyValue;
+            return currentValue -> currentValue instanceof Integer && operator.test((int) currentValue, expected);
+        }
+        if (propertyValue instanceof Long) {
+            long expected = (long) propertyValue;
+            return currentValue -> currentValue instanceof Long && operator.test((long) currentValue, expected);
+        }
+        if (propertyValue instanceof Float) {
+            float expected = (float) propertyValue;
+            return currentValue -> currentValue instanceof Float && operator.test((float) currentValue, expected);
+        }
+        if (propertyValue instanceof Double) {
+            double expected = (double) propertyValue;
+            return currentValue -> currentValue instanceof Double && operator.test((double) currentValue, expected);
+        }
+        if (propertyValue instanceof Date) {
+            long expected = ((Date) propertyValue).getTime();
+            return currentValue -> currentValue instanceof Date && operator.test(((Date) currentValue).getTime(), expected);
+        }
+        if (propertyValue instanceof Enum) {
+            int expected = ((Enum) propertyValue).ordinal();
+            return currentValue -> currentValue instanceof Enum && operator.test(((Enum) currentValue).ordinal(), expected);
+        }
+        return currentValue -> false;
+    }
+
+    private Map<Method, Function<Object, Object>> accessorByGetterMethod = new ConcurrentHashMap<>();
+    private Map<String, Pattern> patternByLikeQuery = new ConcurrentHashMap<>();
+
+    /**
+     * Compile the query. The tags are not part of the predicate.
+     *
+     * @param query
+     *            the query
+     * @param resourceDefinitionByResourceClass
+     *            the definitions of all the resources
+     * @return the predicate
+     */
+    public Predicate<IPResource> compile(IPResourceQuery<?> query, Map<Class<? extends IPResource>, IPResourceDefinition> resourceDefinitionByResourceClass) {
+
+        // One chain per type since the getters are not the same
+        Map<Class<?>, Predicate<IPResource>> predicateByResourceClass = new HashMap<>();
+        for (IPResourceDefinition resourceDefinition : query.getResourceDefinitions()) {
+            IPResourceDefinition currentResourceDefinition = resourceDefinitionByResourceClass.get(resourceDefinition.getResourceClass());
+            predicateByResourceClass.put(resourceDefinition.getResourceClass(), compile(query, currentResourceDefinition));
+        }
+
+        return resource -> {
+            Predicate<IPResource> predicate = predicateByResourceClass.get(resource.getClass());
+            return predicate != null && predicate.test(resource);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<IPResource> compile(IPResourceQuery<?> query, IPResourceDefinition resourceDefinition) {
+
+        List<Predicate<IPResource>> predicates = new ArrayList<>();
+
+        // Right ids
+        if (query.getIdsIn() != null) {
+            Set<String> idsIn = query.getIdsIn();
+            predicates.add(resource -> idsIn.contains(resource.getInternalId()));
+        }
+
+        // Right editor
+        if (query.getEditorsIn() != null) {
+            Set<String> editorsIn = query.getEditorsIn();
+            predicates.add(resource -> editorsIn.contains(resource.getResourceEditorName()));
+        }
+
+        // Properties
+        for (Entry<String, Object> entry : query.getPropertyEquals().entrySet()) {
+            predicates.add(compileProperty(resourceDefinition, entry.getKey(), compileEquals(entry.getValue())));
+        }
+        for (Entry<String, Object> entry : query.getPropertyContains().entrySet()) {
+            predicates.add(compileProperty(resourceDefinition, entry.getKey(), compileContains(entry.getValue())));
+        }
+        for (Entry<String, String> entry : query.getPropertyLike().entrySet()) {
+            Pattern pattern = getLikePattern(entry.getValue());
+            predicates.add(compileProperty(resourceDefinition, entry.getKey(), currentValue -> currentValue instanceof String && pattern.matcher((String) currentValue).matches()));
+        }
+        for (Entry<String, Object> entry : query.getPropertyGreater().entrySet()) {
+            predicates.add(compileProperty(resourceDefinition, entry.getKey(), compileRange(entry.getValue(), RangeOperator.GREATER)));
+        }
+        for (Entry<String, Object> entry : query.getPropertyGreaterEquals().entrySet()) {
+            predicates.add(compileProperty(resourceDefinition, entry.getKey(), compileRange(entry.getValue(), RangeOperator.GREATER_EQUALS)));
+        }
+        for (Entry<String, Object> entry : query.getPropertyLesser().entrySet()) {
+            predicates.add(compileProperty(resourceDefinition, entry.getKey(), compileRange(entry.getValue(), RangeOperator.LESSER)));
+        }
+        for (Entry<String, Object> entry : query.getPropertyLesserAndEquals().entrySet()) {
+            predicates.add(compileProperty(resourceDefinition, entry.getKey(), compileRange(entry.getValue(), RangeOperator.LESSER_EQUALS)));
+        }
+
+        Predicate<IPResource>[] predicatesArray = predicates.toArray(new Predicate[predicates.size()]);
+        return resource -> {
+            for (Predicate<IPResource> predicate : predicatesArray) {
+                if (!predicate.test(resource)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private Predicate<IPResource> compileProperty(IPResourceDefinition resourceDefinition, String propertyName, Predicate<Object> valuePredicate) {
+        Method getterMethod = resourceDefinition == null ? null : resourceDefinition.getPropertyGetterMethod(propertyName);
+        if (getterMethod == null) {
+            return resource -> false;
+        }
+        Function<Object, Object> accessor = getAccessor(getterMethod);
+        return resource -> {
+            try {
+                return valuePredicate.test(accessor.apply(resource));
+            } catch (Exception e) {
+                return false;
+            }
+        };
+    }
+
+    private Function<Object, Object> getAccessor(Method getterMethod) {
+        return accessorByGetterMethod.computeIfAbsent(getterMethod, method -> {
+            try {
+                MethodHandle methodHandle = MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+                return object -> {
+                    try {
+                        return methodHandle.invokeExact(object);
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new RuntimeException(e);
+                    }
+                };
+            } catch (IllegalAccessException e) {
+                logger.debug("Cannot use a method handle for {}. Will use reflection", method, e);
+                return object -> {
+                    try {
+                        return method.invoke(object);
+                    } catch (Exception e2) {
+                        throw new RuntimeException(e2);
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Get the compiled pattern of a like query where "%" means anything.
+     *
+     * @param likeQuery
+     *            the like query
+     * @return the pattern
+     */
+    public Pattern getLikePattern(String likeQuery) {
+        Pattern pattern = patternByLikeQuery.get(likeQuery);
+        if (pattern == null) {
+            if (patternByLikeQuery.size() >= MAX_CACHED_PATTERNS) {
+                patternByLikeQuery.clear();
+            }
+            pattern = Pattern.compile(likeQuery.replaceAll("%", ".*"));
+            patternByLikeQuery.put(likeQuery, pattern);
+        }
+        return pattern;
+    }
+
+}
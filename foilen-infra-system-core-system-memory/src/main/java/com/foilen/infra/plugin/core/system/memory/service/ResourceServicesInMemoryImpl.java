@@ -10,24 +10,36 @@
 package com.foilen.infra.plugin.core.system.memory.service;
 
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.foilen.infra.plugin.core.system.common.changeexecution.ChangeExecutionLogic;
+import com.foilen.infra.plugin.core.system.common.resource.ResourceDeepCopy;
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.core.system.common.service.ResourceGraphService;
+import com.foilen.infra.plugin.core.system.common.service.ResourceStreamingService;
+import com.foilen.infra.plugin.core.system.memory.service.ResourcesInMemoryChange.Kind;
 import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
@@ -42,13 +54,17 @@ import com.foilen.smalltools.exception.SmallToolsException;
 import com.foilen.smalltools.reflection.ReflectionTools;
 import com.foilen.smalltools.tools.AbstractBasics;
 import com.foilen.smalltools.tools.AssertTools;
-import com.foilen.smalltools.tools.JsonTools;
-import com.foilen.smalltools.tools.StringTools;
 import com.foilen.smalltools.tuple.Tuple2;
 import com.foilen.smalltools.tuple.Tuple3;
 
+/**
+ * Keeps everything in memory. Can be used by multiple threads: the readers use the last committed version without locking and a single writer at a time applies its transaction on a second copy
+ * that becomes the committed version at the end.
+ */
 @Component
-public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPResourceService, InternalIPResourceService, InternalChangeService {
+public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPResourceService, InternalIPResourceService, InternalChangeService, ResourceGraphService, ResourceStreamingService, AutoCloseable {
+
+    private static final long READERS_WARNING_DELAY_IN_MS = 10000;
 
     // Services
     @Autowired
@@ -58,21 +74,53 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
 
     // In memory data
     private AtomicLong nextInternalId = new AtomicLong(1);
-    private List<IPResource> resources = new ArrayList<>();
-    private List<Tuple3<String, String, String>> links = new ArrayList<>();
-    private List<Tuple2<String, String>> tags = new ArrayList<>();
+    private AtomicLong nextSequence = new AtomicLong(1);
+    private Map<Class<? extends IPResource>, List<Class<?>>> allClassesByResourceClass = new ConcurrentHashMap<>();
+    private Map<Class<? extends IPResource>, IPResourceDefinition> resourceDefinitionByResourceClass = new ConcurrentHashMap<>();
+    private Map<String, IPResourceDefinition> resourceDefinitionByResourceType = new ConcurrentHashMap<>();
+    private ResourceQueryCompiler resourceQueryCompiler = new ResourceQueryCompiler();
+
+    // Secondary indexes on the searchable properties (opt-in)
+    private volatile boolean propertyIndexesEnabled = false;
 
-    private Map<Class<? extends IPResource>, List<Class<?>>> allClassesByResourceClass = new HashMap<>();
-    private Map<Class<? extends IPResource>, IPResourceDefinition> resourceDefinitionByResourceClass = new HashMap<>();
-    private Map<String, IPResourceDefinition> resourceDefinitionByResourceType = new HashMap<>();
+    // The committed version that is read and the one that the writer changes
+    private volatile ResourcesInMemoryStore readStore = new ResourcesInMemoryStore(resourceDefinitionByResourceClass);
+    private ResourcesInMemoryStore writeStore = new ResourcesInMemoryStore(resourceDefinitionByResourceClass);
+
+    // The current transaction: the changes to replay on the other store and the actions to revert them (most recent first)
+    private ReentrantLock writerLock = new ReentrantLock();
+    private volatile Thread writerThread;
+    private List<Consumer<ResourcesInMemoryStore>> redoLog;
+    private Deque<Consumer<ResourcesInMemoryStore>> undoLog;
+
+    // Optional: keep the committed changes on disk
+    private ResourcesInMemoryPersistence persistence;
 
     private long infiniteLoopTimeoutInMs = 15000;
+    private int maxIdenticalIterations = 3;
+    private int maxUpdatesPerResource = 0;
+    private ForkJoinPool computeActionsPool;
+    private ForkJoinPool executeActionsPool;
 
     private List<ChangeExecutionHook> defaultChangeExecutionHooks = new ArrayList<>();
 
     public ResourceServicesInMemoryImpl() {
     }
 
+    /**
+     * Apply a change on the written store and keep it to replay it at the commit.
+     *
+     * @param change
+     *            the change
+     * @param undo
+     *            what reverts the change
+     */
+    private void apply(Consumer<ResourcesInMemoryStore> change, Consumer<ResourcesInMemoryStore> undo) {
+        change.accept(writeStore);
+        redoLog.add(change);
+        undoLog.push(undo);
+    }
+
     @Override
     public void changesExecute(ChangesContext changes) {
 
@@ -85,31 +133,85 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
 
         ChangeExecutionLogic changeExecutionLogic = new ChangeExecutionLogic(commonServicesContext, internalServicesContext);
         changeExecutionLogic.setInfiniteLoopTimeoutInMs(infiniteLoopTimeoutInMs);
+        changeExecutionLogic.setMaxIdenticalIterations(maxIdenticalIterations);
+        changeExecutionLogic.setMaxUpdatesPerResource(maxUpdatesPerResource);
+        changeExecutionLogic.setComputeActionsPool(computeActionsPool);
+        changeExecutionLogic.setExecuteActionsPool(executeActionsPool);
         defaultChangeExecutionHooks.forEach(hook -> changeExecutionLogic.addHook(hook));
         extraChangeExecutionHooks.forEach(hook -> changeExecutionLogic.addHook(hook));
 
-        // Create a transaction
-        List<IPResource> beforeTxResources = resources.stream().map(it -> it.deepClone()).collect(Collectors.toList());
-        List<Tuple3<String, String, String>> beforeTxLinks = links.stream().map(it -> new Tuple3<>(it.getA(), it.getB(), it.getC())).collect(Collectors.toList());
-        List<Tuple2<String, String>> beforeTxTags = tags.stream().map(it -> new Tuple2<>(it.getA(), it.getB())).collect(Collectors.toList());
+        // Nested transaction: only revert what it did and let the outer one commit
+        if (isInTransaction()) {
+            int mark = undoLog.size();
+            try {
+                changeExecutionLogic.execute(changes);
+            } catch (RuntimeException e) {
+                rollback(mark);
+                throw e;
+            }
+            return;
+        }
 
-        try {
+        writeTransaction(() -> {
             changeExecutionLogic.execute(changes);
-        } catch (RuntimeException e) {
-            // Rollback the transaction
-            resources = beforeTxResources;
-            links = beforeTxLinks;
-            tags = beforeTxTags;
-            throw e;
-        }
+            return null;
+        });
     }
 
     private <R extends IPResource> R clone(R resource) {
-        R clonedResource = JsonTools.clone(resource);
+        R clonedResource = ResourceDeepCopy.copy(resource);
         clonedResource.setInternalId(resource.getInternalId());
         return clonedResource;
     }
 
+    /**
+     * Persist the changes, make the written store the committed one, wait for the readers of the previous one to be done and replay the changes on it so it can be written next.
+     *
+     * <p>
+     * The readers only copy what they need out of the store, so they are quickly done. A reader that never finishes blocks the commit (and the next writers) since its store cannot be changed while it
+     * is read. A warning is logged every {@link #READERS_WARNING_DELAY_IN_MS} while waiting.
+     * </p>
+     */
+    /**
+     * Shut down the thread pools of the concurrent compute and execution of the actions. Called by Spring when the context is closed.
+     */
+    @Override
+    public void close() {
+        setComputeActionsParallelism(1);
+        setExecuteActionsParallelism(1);
+    }
+
+    private void commit() {
+        if (redoLog.isEmpty()) {
+            return;
+        }
+
+        if (persistence != null) {
+            persistence.append(redoLog.stream() //
+                    .filter(it -> it instanceof ResourcesInMemoryChange) //
+                    .map(it -> (ResourcesInMemoryChange) it) //
+                    .collect(Collectors.toList()), nextInternalId.get(), nextSequence.get());
+        }
+
+        ResourcesInMemoryStore previousReadStore = readStore;
+        readStore = writeStore;
+        long waitStartInMs = System.currentTimeMillis();
+        while (!previousReadStore.awaitNoReaders(READERS_WARNING_DELAY_IN_MS)) {
+            logger.warn("The commit is waiting for the readers of the previous version since {} ms", System.currentTimeMillis() - waitStartInMs);
+        }
+
+        redoLog.forEach(it -> it.accept(previousReadStore));
+        writeStore = previousReadStore;
+
+        if (persistence != null && persistence.isSnapshotDue()) {
+            try {
+                persistence.snapshot(writeStore, nextInternalId.get(), nextSequence.get());
+            } catch (RuntimeException e) {
+                logger.error("Could not take a snapshot. Will retry at the next commit", e);
+            }
+        }
+    }
+
     @Override
     public <T extends IPResource> IPResourceQuery<T> createResourceQuery(Class<T> resourceClass) {
         List<IPResourceDefinition> resourceDefinitions = allClassesByResourceClass.entrySet().stream() //
@@ -139,11 +241,19 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
         return commonServicesContext;
     }
 
+    public int getComputeActionsParallelism() {
+        return computeActionsPool == null ? 1 : computeActionsPool.getParallelism();
+    }
+
     @Override
     public List<ChangeExecutionHook> getDefaultChangeExecutionHooks() {
         return defaultChangeExecutionHooks;
     }
 
+    public int getExecuteActionsParallelism() {
+        return executeActionsPool == null ? 1 : executeActionsPool.getParallelism();
+    }
+
     public long getInfiniteLoopTimeoutInMs() {
         return infiniteLoopTimeoutInMs;
     }
@@ -152,8 +262,24 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
         return internalServicesContext;
     }
 
+    public int getMaxIdenticalIterations() {
+        return maxIdenticalIterations;
+    }
+
+    public int getMaxUpdatesPerResource() {
+        return maxUpdatesPerResource;
+    }
+
     public List<Tuple3<String, String, String>> getLinks() {
-        return links;
+        return read(ResourcesInMemoryStore::getLinks);
+    }
+
+    public ResourcesInMemoryPersistence getPersistence() {
+        return persistence;
+    }
+
+    private ResourcePrimaryKey getPk(IPResource resource) {
+        return ResourcePrimaryKey.from(resourceDefinitionByResourceClass.get(resource.getClass()), resource);
     }
 
     @Override
@@ -177,188 +303,259 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
     }
 
     public List<IPResource> getResources() {
-        return resources;
+        return read(ResourcesInMemoryStore::getResources);
     }
 
     public List<Tuple2<String, String>> getTags() {
-        return tags;
+        return read(ResourcesInMemoryStore::getTags);
+    }
+
+    /**
+     * Tells if the current thread is the writer or one of the threads working for it.
+     *
+     * @return true if in the current transaction
+     */
+    private boolean isInTransaction() {
+        if (writerThread == Thread.currentThread()) {
+            return true;
+        }
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return writerThread != null && pool != null && (pool == computeActionsPool || pool == executeActionsPool);
+    }
+
+    public boolean isPropertyIndexesEnabled() {
+        return propertyIndexesEnabled;
     }
 
     @Override
     public void linkAdd(String fromResourceId, String linkType, String toResourceId) {
-        links.add(new Tuple3<>(fromResourceId, linkType, toResourceId));
+        writeTransaction(() -> {
+            if (!writeStore.linkExists(fromResourceId, linkType, toResourceId)) {
+                apply(ResourcesInMemoryChange.linkAdd(fromResourceId, linkType, toResourceId), ResourcesInMemoryChange.linkDelete(fromResourceId, linkType, toResourceId));
+            }
+            return null;
+        });
     }
 
     @Override
     public boolean linkDelete(String fromResourceId, String linkType, String toResourceId) {
-        return links.removeIf(link -> //
-        link.getA() == fromResourceId //
-                && link.getB().equals(linkType) //
-                && link.getC() == toResourceId);
+        return writeTransaction(() -> {
+            if (!writeStore.linkExists(fromResourceId, linkType, toResourceId)) {
+                return false;
+            }
+            apply(ResourcesInMemoryChange.linkDelete(fromResourceId, linkType, toResourceId), ResourcesInMemoryChange.linkAdd(fromResourceId, linkType, toResourceId));
+            return true;
+        });
     }
 
     @Override
     public boolean linkExists(String fromResourceId, String linkType, String toResourceId) {
-        return links.stream().anyMatch(link -> //
-        link.getA() == fromResourceId //
-                && link.getB().equals(linkType) //
-                && link.getC() == toResourceId);
+        return read(store -> store.linkExists(fromResourceId, linkType, toResourceId));
     }
 
     @Override
     public boolean linkExistsByFromResourceAndLinkTypeAndToResource(IPResource fromResource, String linkType, IPResource toResource) {
-        String fromInternalId = resourceFindIdByPk(fromResource);
-        if (fromInternalId == null) {
-            return false;
-        }
-        String toInternalId = resourceFindIdByPk(toResource);
-        if (toInternalId == null) {
-            return false;
-        }
-        return links.stream().filter( //
-                it -> {
-                    return fromInternalId.equals(it.getA()) && //
-                    linkType.equals(it.getB()) && //
-                    toInternalId.equals(it.getC());
-                }) //
-                .findAny().isPresent();
+        return read(store -> {
+            String fromInternalId = resourceFindIdByPk(store, fromResource);
+            if (fromInternalId == null) {
+                return false;
+            }
+            String toInternalId = resourceFindIdByPk(store, toResource);
+            if (toInternalId == null) {
+                return false;
+            }
+            return store.linkExists(fromInternalId, linkType, toInternalId);
+        });
     }
 
     @Override
     public List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(IPResource fromResource) {
-        String fromInternalId = resourceFindIdByPk(fromResource);
-        if (fromInternalId == null) {
-            return Collections.emptyList();
-        }
-        return links.stream().filter( //
-                it -> fromInternalId.equals(it.getA())) //
-                .map(it -> new Tuple2<>(it.getB(), resourceFind(it.getC()).get())) //
+        return read(store -> {
+            String fromInternalId = resourceFindIdByPk(store, fromResource);
+            if (fromInternalId == null) {
+                return Collections.emptyList();
+            }
+            return linkFindAllByFromResource(store, fromInternalId);
+        });
+    }
+
+    private List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(ResourcesInMemoryStore store, String fromResourceId) {
+        return store.getLinksByFromId(fromResourceId).stream() //
+                .map(it -> new Tuple2<>(it.getB(), clone(store.getResource(it.getC())))) //
                 .collect(Collectors.toList());
     }
 
     @Override
     public List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(String fromResourceId) {
-        return links.stream().filter( //
-                it -> it.getA().equals(fromResourceId)) //
-                .map(it -> new Tuple2<>(it.getB(), resourceFind(it.getC()).get())) //
-                .collect(Collectors.toList());
+        return read(store -> linkFindAllByFromResource(store, fromResourceId));
     }
 
     @Override
     public List<? extends IPResource> linkFindAllByFromResourceAndLinkType(IPResource fromResource, String linkType) {
-        String fromInternalId = resourceFindIdByPk(fromResource);
-        if (fromInternalId == null) {
-            return Collections.emptyList();
-        }
-        return links.stream().filter( //
-                it -> fromInternalId.equals(it.getA()) && //
-                        linkType.equals(it.getB())) //
-                .map(it -> resourceFind(it.getC()).get()) //
-                .collect(Collectors.toList());
+        return read(store -> {
+            String fromInternalId = resourceFindIdByPk(store, fromResource);
+            if (fromInternalId == null) {
+                return Collections.emptyList();
+            }
+            return store.getLinksByFromIdAndLinkType(fromInternalId, linkType).stream() //
+                    .map(it -> clone(store.getResource(it.getC()))) //
+                    .collect(Collectors.toList());
+        });
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public <R extends IPResource> List<R> linkFindAllByFromResourceAndLinkTypeAndToResourceClass(IPResource fromResource, String linkType, Class<R> toResourceType) {
-        String fromInternalId = resourceFindIdByPk(fromResource);
-        if (fromInternalId == null) {
-            return Collections.emptyList();
-        }
-
-        return links.stream().filter( //
-                it -> {
-                    IPResource toResource = resourceFind(it.getC()).get();
-                    return fromInternalId.equals(it.getA()) && //
-                    linkType.equals(it.getB()) && //
-                    toResourceType.isInstance(toResource);
-                }) //
-                .map(it -> (R) resourceFind(it.getC()).get()) //
-                .collect(Collectors.toList());
+        return read(store -> {
+            String fromInternalId = resourceFindIdByPk(store, fromResource);
+            if (fromInternalId == null) {
+                return Collections.emptyList();
+            }
+
+            return store.getLinksByFromIdAndLinkType(fromInternalId, linkType).stream() //
+                    .map(it -> store.getResource(it.getC())) //
+                    .filter(it -> toResourceType.isInstance(it)) //
+                    .map(it -> (R) clone(it)) //
+                    .collect(Collectors.toList());
+        });
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public <R extends IPResource> List<R> linkFindAllByFromResourceClassAndLinkTypeAndToResource(Class<R> fromResourceClass, String linkType, IPResource toResource) {
-        String toInternalId = resourceFindIdByPk(toResource);
-        if (toInternalId == null) {
-            return Collections.emptyList();
-        }
-        return links.stream().filter( //
-                it -> {
-                    IPResource fromResource = resourceFind(it.getA()).get();
-                    return fromResourceClass.isInstance(fromResource) && //
-                    linkType.equals(it.getB()) && //
-                    toInternalId.equals(it.getC()); //
-                }) //
-                .map(it -> (R) resourceFind(it.getA()).get()) //
-                .collect(Collectors.toList());
+        return read(store -> {
+            String toInternalId = resourceFindIdByPk(store, toResource);
+            if (toInternalId == null) {
+                return Collections.emptyList();
+            }
+            return store.getLinksByToId(toInternalId).stream() //
+                    .filter(it -> linkType.equals(it.getB())) //
+                    .map(it -> store.getResource(it.getA())) //
+                    .filter(it -> fromResourceClass.isInstance(it)) //
+                    .map(it -> (R) clone(it)) //
+                    .collect(Collectors.toList());
+        });
     }
 
     @Override
     public List<? extends IPResource> linkFindAllByLinkTypeAndToResource(String linkType, IPResource toResource) {
-        String toInternalId = resourceFindIdByPk(toResource);
-        if (toInternalId == null) {
-            return Collections.emptyList();
-        }
-        return links.stream().filter( //
-                it -> {
-                    return linkType.equals(it.getB()) && //
-                    toInternalId.equals(it.getC()); //
-                }) //
-                .map(it -> resourceFind(it.getA()).get()) //
-                .collect(Collectors.toList());
+        return read(store -> {
+            String toInternalId = resourceFindIdByPk(store, toResource);
+            if (toInternalId == null) {
+                return Collections.emptyList();
+            }
+            return store.getLinksByToId(toInternalId).stream() //
+                    .filter(it -> linkType.equals(it.getB())) //
+                    .map(it -> clone(store.getResource(it.getA()))) //
+                    .collect(Collectors.toList());
+        });
     }
 
     @Override
     public List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(IPResource toResource) {
-        String toInternalId = resourceFindIdByPk(toResource);
-        if (toInternalId == null) {
-            return Collections.emptyList();
-        }
-        return links.stream().filter( //
-                it -> toInternalId.equals(it.getC())) //
-                .map(it -> new Tuple2<>(resourceFind(it.getA()).get(), it.getB())) //
+        return read(store -> {
+            String toInternalId = resourceFindIdByPk(store, toResource);
+            if (toInternalId == null) {
+                return Collections.emptyList();
+            }
+            return linkFindAllByToResource(store, toInternalId);
+        });
+    }
+
+    private List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(ResourcesInMemoryStore store, String toResourceId) {
+        return store.getLinksByToId(toResourceId).stream() //
+                .map(it -> new Tuple2<>(clone(store.getResource(it.getA())), it.getB())) //
                 .collect(Collectors.toList());
     }
 
     @Override
     public List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(String toResourceId) {
-        return links.stream().filter( //
-                it -> it.getC().equals(toResourceId)) //
-                .map(it -> new Tuple2<>(resourceFind(it.getA()).get(), it.getB())) //
-                .collect(Collectors.toList());
+        return read(store -> linkFindAllByToResource(store, toResourceId));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <R extends IPResource> List<R> linkFindAllReachable(IPResource startResource, Set<String> linkTypes, LinkDirection direction, int maxDepth, Class<R> targetResourceClass) {
+        return read(store -> {
+            String startInternalId = resourceFindIdByPk(store, startResource);
+            if (startInternalId == null) {
+                return Collections.emptyList();
+            }
+
+            return store.getReachableResourceIds(startInternalId, linkTypes, direction == LinkDirection.OUTGOING, maxDepth).stream() //
+                    .map(it -> store.getResource(it)) //
+                    .filter(it -> targetResourceClass.isInstance(it)) //
+                    .map(it -> (R) clone(it)) //
+                    .collect(Collectors.toList());
+        });
     }
 
     @Override
     public List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(IPResource resource) {
-        String internalId = resourceFindIdByPk(resource);
-        if (internalId == null) {
-            return Collections.emptyList();
-        }
-        return links.stream().filter( //
-                it -> internalId.equals(it.getA()) || internalId.equals(it.getC())) //
-                .map(it -> new Tuple3<>(resourceFind(it.getA()).get(), it.getB(), resourceFind(it.getC()).get())) //
+        return read(store -> {
+            String internalId = resourceFindIdByPk(store, resource);
+            if (internalId == null) {
+                return Collections.emptyList();
+            }
+            return linkFindAllRelatedByResource(store, internalId);
+        });
+    }
+
+    private List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(ResourcesInMemoryStore store, String internalResourceId) {
+        return store.getLinksByResourceId(internalResourceId).stream() //
+                .map(it -> new Tuple3<>(clone(store.getResource(it.getA())), it.getB(), clone(store.getResource(it.getC())))) //
                 .collect(Collectors.toList());
     }
 
     @Override
     public List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(String internalResourceId) {
-        return links.stream().filter( //
-                it -> internalResourceId.equals(it.getA()) || internalResourceId.equals(it.getC())) //
-                .map(it -> new Tuple3<>(resourceFind(it.getA()).get(), it.getB(), resourceFind(it.getC()).get())) //
-                .collect(Collectors.toList());
+        return read(store -> linkFindAllRelatedByResource(store, internalResourceId));
     }
 
     protected boolean matchingLike(String likeQuery, String textToCheck) {
-        return Pattern.compile(likeQuery.replaceAll("%", ".*")).matcher(textToCheck).matches();
+        return resourceQueryCompiler.getLikePattern(likeQuery).matcher(textToCheck).matches();
+    }
+
+    /**
+     * Read a consistent version. The writer and the threads working for it see their uncommitted changes and the others see the last committed version.
+     *
+     * @param reader
+     *            what to read
+     * @param <T>
+     *            the type of result
+     * @return the result
+     */
+    private <T> T read(Function<ResourcesInMemoryStore, T> reader) {
+
+        if (isInTransaction()) {
+            return reader.apply(writeStore);
+        }
+
+        while (true) {
+            ResourcesInMemoryStore store = readStore;
+            store.readerEnter();
+            try {
+                // The writer might have swapped it before we registered
+                if (store == readStore) {
+                    return reader.apply(store);
+                }
+            } finally {
+                store.readerExit();
+            }
+        }
     }
 
     @Override
     public IPResource resourceAdd(IPResource resource) {
-        IPResource storedResource = JsonTools.clone(resource);
-        storedResource.setInternalId(String.valueOf(nextInternalId.getAndIncrement()));
-        resources.add(storedResource);
-        return storedResource.deepClone();
+        IPResource storedResource = ResourceDeepCopy.copy(resource);
+        String internalId = String.valueOf(nextInternalId.getAndIncrement());
+        storedResource.setInternalId(internalId);
+        writeTransaction(() -> {
+            long sequence = nextSequence.getAndIncrement();
+            apply(ResourcesInMemoryChange.resourceStore(storedResource, sequence), ResourcesInMemoryChange.resourceUnstore(internalId));
+            return null;
+        });
+        return clone(storedResource);
     }
 
     @Override
@@ -367,13 +564,32 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
         resourceDefinitionByResourceType.put(resourceDefinition.getResourceType(), resourceDefinition);
 
         allClassesByResourceClass.put(resourceDefinition.getResourceClass(), ReflectionTools.allTypes(resourceDefinition.getResourceClass()));
+
+        writeTransaction(() -> {
+            if (propertyIndexesEnabled) {
+                apply(store -> store.buildPropertyIndexes(resourceDefinition), store -> store.removePropertyIndexes(resourceDefinition.getResourceClass()));
+            }
+            return null;
+        });
     }
 
     @Override
     public boolean resourceDelete(String resourceId) {
-        links.removeIf(link -> StringTools.safeEquals(link.getA(), resourceId) || StringTools.safeEquals(link.getC(), resourceId));
-        tags.removeIf(tag -> StringTools.safeEquals(tag.getA(), resourceId));
-        return resources.removeIf(resource -> StringTools.safeEquals(resource.getInternalId(), resourceId));
+        return writeTransaction(() -> {
+            for (Tuple3<String, String, String> link : new ArrayList<>(writeStore.getLinksByResourceId(resourceId))) {
+                linkDelete(link.getA(), link.getB(), link.getC());
+            }
+            for (String tagName : new ArrayList<>(writeStore.getTagsByResourceId(resourceId))) {
+                tagDelete(resourceId, tagName);
+            }
+            IPResource removedResource = writeStore.getResource(resourceId);
+            if (removedResource == null) {
+                return false;
+            }
+            long sequence = writeStore.getSequence(resourceId);
+            apply(ResourcesInMemoryChange.resourceUnstore(resourceId), ResourcesInMemoryChange.resourceStore(removedResource, sequence));
+            return true;
+        });
     }
 
     @Override
@@ -436,417 +652,56 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
 
     @Override
     public Optional<IPResource> resourceFind(String internalResourceId) {
-        Optional<IPResource> resourceOptional = resources.stream() //
-                .filter(it -> StringTools.safeEquals(internalResourceId, it.getInternalId())) //
-                .map(it -> clone(it)) //
-                .findAny();
-
-        return resourceOptional;
+        return read(store -> {
+            IPResource resource = store.getResource(internalResourceId);
+            if (resource == null) {
+                return Optional.empty();
+            }
+            return Optional.of(clone(resource));
+        });
     }
 
     @Override
     public List<? extends IPResource> resourceFindAll() {
-        return Collections.unmodifiableList(resources);
+        return Collections.unmodifiableList(getResources());
     }
 
     @Override
     public <R extends IPResource> List<R> resourceFindAll(IPResourceQuery<R> query) {
-        return resourceFindAllNoCloning(query).stream() //
+        return read(store -> resourceFindAllNoCloning(store, query).stream() //
                 .map(it -> clone(it)) //
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    private <R extends IPResource> List<R> resourceFindAllNoCloning(IPResourceQuery<R> query) {
-        List<R> results = resources.stream() //
-                .filter(resource -> {
-
-                    List<IPResourceDefinition> resourceDefinitions = query.getResourceDefinitions();
-
-                    // Right type
-                    List<Class<? extends IPResource>> resourceClasses = resourceDefinitions.stream().map(IPResourceDefinition::getResourceClass).collect(Collectors.toList());
-                    if (!resourceClasses.contains(resource.getClass())) {
-                        return false;
-                    }
-
-                    // Right ids
-                    if (query.getIdsIn() != null && !query.getIdsIn().contains(resource.getInternalId())) {
-                        return false;
-                    }
-
-                    // Right editor
-                    if (query.getEditorsIn() != null && !query.getEditorsIn().contains(resource.getResourceEditorName())) {
-                        return false;
-                    }
-
-                    // Equals
-                    IPResourceDefinition currentResourceDefinition = resourceDefinitionByResourceClass.get(resource.getClass());
-                    for (Entry<String, Object> entry : query.getPropertyEquals().entrySet()) {
-                        String propertyName = entry.getKey();
-                        Object propertyValue = entry.getValue();
-
-                        try {
-                            Object currentValue = currentResourceDefinition.getPropertyGetterMethod(propertyName).invoke(resource);
-                            if (propertyValue == null) {
-                                if (currentValue == null) {
-                                    // Good value
-                                    continue;
-                                } else {
-                                    // Wrong value
-                                    return false;
-                                }
-                            }
-                            if (currentValue instanceof Set) {
-                                Set currentValueSet = (Set) currentValue;
-                                if (propertyValue instanceof Collection) {
-                                    Collection<?> propertyValueCollection = (Collection<?>) propertyValue;
-                                    if (currentValueSet.size() != propertyValueCollection.size()) {
-                                        return false;
-                                    }
-                                    for (Object it : currentValueSet) {
-                                        if (!propertyValueCollection.contains(it)) {
-                                            return false;
-                                        }
-                                    }
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            } else {
-                                if (currentValue == null && propertyValue instanceof Collection) {
-                                    Collection<?> propertyValueCollection = (Collection<?>) propertyValue;
-                                    if (!propertyValueCollection.isEmpty()) {
-                                        return false;
-                                    }
-                                } else {
-                                    if (!propertyValue.equals(currentValue)) {
-                                        // Wrong value
-                                        return false;
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            return false;
-                        }
-
-                    }
-
-                    // Contains
-                    for (Entry<String, Object> entry : query.getPropertyContains().entrySet()) {
-                        String propertyName = entry.getKey();
-                        Object propertyValue = entry.getValue();
-
-                        try {
-                            Object currentValue = currentResourceDefinition.getPropertyGetterMethod(propertyName).invoke(resource);
-                            if (currentValue instanceof Set) {
-                                Set currentValueSet = (Set) currentValue;
-                                if (propertyValue instanceof Collection) {
-                                    Collection<?> propertyValueCollection = (Collection<?>) propertyValue;
-                                    for (Object it : propertyValueCollection) {
-                                        if (!currentValueSet.contains(it)) {
-                                            return false;
-                                        }
-                                    }
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            } else {
-                                // Wrong value
-                                return false;
-                            }
-                        } catch (Exception e) {
-                            return false;
-                        }
-
-                    }
-
-                    // Like
-                    for (Entry<String, String> entry : query.getPropertyLike().entrySet()) {
-                        String propertyName = entry.getKey();
-                        String propertyValue = entry.getValue();
-
-                        try {
-                            Object currentValue = currentResourceDefinition.getPropertyGetterMethod(propertyName).invoke(resource);
-                            if (currentValue == null) {
-                                // Wrong value
-                                return false;
-                            }
-
-                            if (!matchingLike(propertyValue, (String) currentValue)) {
-                                // Wrong value
-                                return false;
-                            }
-                        } catch (Exception e) {
-                            return false;
-                        }
-
-                    }
-
-                    // Greater than
-                    for (Entry<String, Object> entry : query.getPropertyGreater().entrySet()) {
-                        String propertyName = entry.getKey();
-                        Object propertyValue = entry.getValue();
-
-                        try {
-                            Object currentValue = currentResourceDefinition.getPropertyGetterMethod(propertyName).invoke(resource);
-                            if (currentValue == null) {
-                                // Wrong value
-                                return false;
-                            }
-                            if (propertyValue instanceof Integer) {
-                                if (((int) currentValue) > ((int) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Long) {
-                                if (((long) currentValue) > ((long) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Float) {
-                                if (((float) currentValue) > ((float) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Double) {
-                                if (((double) currentValue) > ((double) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Date) {
-                                if (((Date) currentValue).getTime() > ((Date) propertyValue).getTime()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Enum) {
-                                if (((Enum) currentValue).ordinal() > ((Enum) propertyValue).ordinal()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            return false;
-                        } catch (Exception e) {
-                            return false;
-                        }
-
-                    }
-
-                    // Greater and equals
-                    for (Entry<String, Object> entry : query.getPropertyGreaterEquals().entrySet()) {
-                        String propertyName = entry.getKey();
-                        Object propertyValue = entry.getValue();
-
-                        try {
-                            Object currentValue = currentResourceDefinition.getPropertyGetterMethod(propertyName).invoke(resource);
-                            if (currentValue == null) {
-                                // Wrong value
-                                return false;
-                            }
-                            if (propertyValue instanceof Integer) {
-                                if (((int) currentValue) >= ((int) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Long) {
-                                if (((long) currentValue) >= ((long) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Float) {
-                                if (((float) currentValue) >= ((float) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Double) {
-                                if (((double) currentValue) >= ((double) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Date) {
-                                if (((Date) currentValue).getTime() >= ((Date) propertyValue).getTime()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Enum) {
-                                if (((Enum) currentValue).ordinal() >= ((Enum) propertyValue).ordinal()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            return false;
-                        } catch (Exception e) {
-                            return false;
-                        }
-
-                    }
-
-                    // Lesser than
-                    for (Entry<String, Object> entry : query.getPropertyLesser().entrySet()) {
-                        String propertyName = entry.getKey();
-                        Object propertyValue = entry.getValue();
-
-                        try {
-                            Object currentValue = currentResourceDefinition.getPropertyGetterMethod(propertyName).invoke(resource);
-                            if (currentValue == null) {
-                                // Wrong value
-                                return false;
-                            }
-                            if (propertyValue instanceof Integer) {
-                                if (((int) currentValue) < ((int) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Long) {
-                                if (((long) currentValue) < ((long) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Float) {
-                                if (((float) currentValue) < ((float) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Double) {
-                                if (((double) currentValue) < ((double) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Date) {
-                                if (((Date) currentValue).getTime() < ((Date) propertyValue).getTime()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Enum) {
-                                if (((Enum) currentValue).ordinal() < ((Enum) propertyValue).ordinal()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            return false;
-                        } catch (Exception e) {
-                            return false;
-                        }
-
-                    }
-
-                    // Lesser and equals
-                    for (Entry<String, Object> entry : query.getPropertyLesserAndEquals().entrySet()) {
-                        String propertyName = entry.getKey();
-                        Object propertyValue = entry.getValue();
-
-                        try {
-                            Object currentValue = currentResourceDefinition.getPropertyGetterMethod(propertyName).invoke(resource);
-                            if (currentValue == null) {
-                                // Wrong value
-                                return false;
-                            }
-                            if (propertyValue instanceof Integer) {
-                                if (((int) currentValue) <= ((int) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Long) {
-                                if (((long) currentValue) <= ((long) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Float) {
-                                if (((float) currentValue) <= ((float) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Double) {
-                                if (((double) currentValue) <= ((double) propertyValue)) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Date) {
-                                if (((Date) currentValue).getTime() <= ((Date) propertyValue).getTime()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            if (propertyValue instanceof Enum) {
-                                if (((Enum) currentValue).ordinal() <= ((Enum) propertyValue).ordinal()) {
-                                    continue;
-                                } else {
-                                    return false;
-                                }
-                            }
-                            return false;
-                        } catch (Exception e) {
-                            return false;
-                        }
-
-                    }
+    @SuppressWarnings("unchecked")
+    private <R extends IPResource> List<R> resourceFindAllNoCloning(ResourcesInMemoryStore store, IPResourceQuery<R> query) {
 
-                    // All the tags
-                    Set<String> tags = tagFindAllByResource(resource);
-                    for (String tag : query.getTagsAnd()) {
-                        if (!tags.contains(tag)) {
-                            // Missing tag
-                            return false;
-                        }
-                    }
-                    if (!query.getTagsOr().isEmpty()) {
-                        boolean gotOne = false;
-                        for (String tag : query.getTagsOr()) {
-                            if (tags.contains(tag)) {
-                                // Got one
-                                gotOne = true;
-                                break;
-                            }
-                        }
-                        if (!gotOne) {
-                            return false;
-                        }
-                    }
+        // Plan: start from the smallest set of candidates
+        Set<String> candidateIds = new HashSet<>();
+        for (IPResourceDefinition resourceDefinition : query.getResourceDefinitions()) {
+            candidateIds.addAll(store.getResourceIdsByClass(resourceDefinition.getResourceClass()));
+        }
+        if (query.getIdsIn() != null && query.getIdsIn().size() < candidateIds.size()) {
+            candidateIds = query.getIdsIn();
+        }
+        Set<String> tagsResourceIds = store.resourceIdsByTags(query.getTagsAnd(), query.getTagsOr());
+        if (tagsResourceIds != null && tagsResourceIds.size() < candidateIds.size()) {
+            candidateIds = tagsResourceIds;
+        }
+        Set<String> propertiesResourceIds = store.resourceIdsByPropertyIndexes(query);
+        if (propertiesResourceIds != null && propertiesResourceIds.size() < candidateIds.size()) {
+            candidateIds = propertiesResourceIds;
+        }
+        List<IPResource> candidates = candidateIds.stream() //
+                .filter(it -> tagsResourceIds == null || tagsResourceIds.contains(it)) //
+                .map(it -> store.getResource(it)) //
+                .filter(it -> it != null) //
+                .sorted((a, b) -> Long.compare(store.getSequence(a.getInternalId()), store.getSequence(b.getInternalId()))) //
+                .collect(Collectors.toList());
 
-                    return true;
-                }) //
+        Predicate<IPResource> predicate = resourceQueryCompiler.compile(query, resourceDefinitionByResourceClass);
+        List<R> results = candidates.stream() //
+                .filter(predicate) //
                 .map(it -> (R) it) //
                 .collect(Collectors.toList());
         return results;
@@ -855,42 +710,118 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
     @SuppressWarnings("unchecked")
     @Override
     public <R extends IPResource> Optional<R> resourceFindByPk(R resource) {
-        return resources.stream().filter(it -> resourceEqualsPk(it, resource)).map(it -> clone((R) it)).findAny();
+        if (!resourceDefinitionByResourceClass.containsKey(resource.getClass())) {
+            return Optional.empty();
+        }
+        ResourcePrimaryKey pk = getPk(resource);
+        return read(store -> {
+            String internalId = store.getResourceIdByPk(pk);
+            if (internalId == null) {
+                return Optional.empty();
+            }
+            return Optional.of(clone((R) store.getResource(internalId)));
+        });
     }
 
-    private String resourceFindIdByPk(IPResource resource) {
+    private String resourceFindIdByPk(ResourcesInMemoryStore store, IPResource resource) {
         // Id already there
         if (resource.getInternalId() != null) {
             return resource.getInternalId();
         }
 
         // Search by PK
-        Optional<IPResource> o = resourceFindByPk(resource);
-        if (o.isPresent()) {
-            return o.get().getInternalId();
+        if (!resourceDefinitionByResourceClass.containsKey(resource.getClass())) {
+            return null;
         }
+        return store.getResourceIdByPk(getPk(resource));
+    }
 
-        // Does not exist
-        return null;
+    /**
+     * Everything is already in memory and a reader cannot stay on a version for the whole life of the stream without blocking the commits, so it is the same as {@link #resourceFindAll()}.
+     */
+    @Override
+    public Stream<? extends IPResource> resourceStreamAll() {
+        return resourceFindAll().stream();
+    }
+
+    @Override
+    public <T extends IPResource> Stream<T> resourceStreamAll(IPResourceQuery<T> query) {
+        return resourceFindAll(query).stream();
     }
 
     @Override
     public void resourceUpdate(IPResource previousResource, IPResource updatedResource) {
-        AssertTools.assertTrue(resources.removeIf(resource -> resource.getInternalId() == previousResource.getInternalId()), "Cannot update a resource that does not exist");
-        IPResource storedResource = JsonTools.clone(updatedResource);
-        storedResource.setInternalId(previousResource.getInternalId());
-        resources.add(storedResource);
+        String internalId = previousResource.getInternalId();
+        IPResource storedResource = ResourceDeepCopy.copy(updatedResource);
+        storedResource.setInternalId(internalId);
+        writeTransaction(() -> {
+            IPResource previousStoredResource = writeStore.getResource(internalId);
+            AssertTools.assertNotNull(previousStoredResource, "Cannot update a resource that does not exist");
+            long previousSequence = writeStore.getSequence(internalId);
+            long sequence = nextSequence.getAndIncrement();
+            apply(ResourcesInMemoryChange.resourceUnstore(internalId), ResourcesInMemoryChange.resourceStore(previousStoredResource, previousSequence));
+            apply(ResourcesInMemoryChange.resourceStore(storedResource, sequence), ResourcesInMemoryChange.resourceUnstore(internalId));
+            return null;
+        });
+    }
+
+    /**
+     * Revert the changes of the current transaction down to a previous point.
+     *
+     * @param mark
+     *            the amount of changes to keep
+     */
+    private void rollback(int mark) {
+        if (undoLog.size() > mark) {
+            logger.info("Rolling back {} changes", undoLog.size() - mark);
+        }
+        while (undoLog.size() > mark) {
+            undoLog.pop().accept(writeStore);
+        }
+        redoLog.subList(mark, redoLog.size()).clear();
     }
 
     public void setCommonServicesContext(CommonServicesContext commonServicesContext) {
         this.commonServicesContext = commonServicesContext;
     }
 
+    /**
+     * Choose how many changes event handlers can compute their actions to execute at the same time.
+     *
+     * @param computeActionsParallelism
+     *            the maximum amount of threads. 1 to compute them one after the other (default)
+     */
+    public void setComputeActionsParallelism(int computeActionsParallelism) {
+        if (computeActionsPool != null) {
+            computeActionsPool.shutdown();
+            computeActionsPool = null;
+        }
+        if (computeActionsParallelism > 1) {
+            computeActionsPool = new ForkJoinPool(computeActionsParallelism);
+        }
+    }
+
     @Override
     public void setDefaultChangeExecutionHooks(List<ChangeExecutionHook> defaultChangeExecutionHooks) {
         this.defaultChangeExecutionHooks = defaultChangeExecutionHooks;
     }
 
+    /**
+     * Choose how many action handlers can execute at the same time. Those that write on the same resources, links or tags are executed again one after the other.
+     *
+     * @param executeActionsParallelism
+     *            the maximum amount of threads. 1 to execute them one after the other (default)
+     */
+    public void setExecuteActionsParallelism(int executeActionsParallelism) {
+        if (executeActionsPool != null) {
+            executeActionsPool.shutdown();
+            executeActionsPool = null;
+        }
+        if (executeActionsParallelism > 1) {
+            executeActionsPool = new ForkJoinPool(executeActionsParallelism);
+        }
+    }
+
     @Override
     public void setInfiniteLoopTimeoutInMs(long infiniteLoopTimeoutInMs) {
         this.infiniteLoopTimeoutInMs = infiniteLoopTimeoutInMs;
@@ -900,36 +831,136 @@ public class ResourceServicesInMemoryImpl extends AbstractBasics implements IPRe
         this.internalServicesContext = internalServicesContext;
     }
 
+    public void setMaxIdenticalIterations(int maxIdenticalIterations) {
+        this.maxIdenticalIterations = maxIdenticalIterations;
+    }
+
+    public void setMaxUpdatesPerResource(int maxUpdatesPerResource) {
+        this.maxUpdatesPerResource = maxUpdatesPerResource;
+    }
+
+    /**
+     * Keep the committed changes on disk. Loads what is already persisted, so it must be set once all the resource definitions are added and before adding any resource.
+     *
+     * @param persistence
+     *            the persistence
+     */
+    public void setPersistence(ResourcesInMemoryPersistence persistence) {
+        writerLock.lock();
+        try {
+            AssertTools.assertTrue(readStore.getResources().isEmpty(), "The persistence must be set before adding resources");
+            persistence.load(resourceDefinitionByResourceClass, change -> {
+                change.accept(readStore);
+                change.accept(writeStore);
+                if (change.getKind() == Kind.RESOURCE_STORE) {
+                    nextSequence.accumulateAndGet(change.getSequence() + 1, Math::max);
+                    try {
+                        nextInternalId.accumulateAndGet(Long.parseLong(change.getA()) + 1, Math::max);
+                    } catch (NumberFormatException e) {
+                        // Not generated here
+                    }
+                }
+            });
+
+            // The ids of the deleted resources are not given again
+            nextInternalId.accumulateAndGet(persistence.getNextInternalId(), Math::max);
+            nextSequence.accumulateAndGet(persistence.getNextSequence(), Math::max);
+            this.persistence = persistence;
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Choose to keep secondary indexes on the searchable properties of the resources. Uses more memory and makes the writes slower, but the queries on these properties do not check all the
+     * resources of the type.
+     *
+     * @param propertyIndexesEnabled
+     *            true to keep the indexes (default: false)
+     */
+    public void setPropertyIndexesEnabled(boolean propertyIndexesEnabled) {
+        writeTransaction(() -> {
+            boolean previousPropertyIndexesEnabled = this.propertyIndexesEnabled;
+            this.propertyIndexesEnabled = propertyIndexesEnabled;
+            apply(store -> store.rebuildPropertyIndexes(propertyIndexesEnabled ? resourceDefinitionByResourceClass.values() : Collections.emptyList()), //
+                    store -> store.rebuildPropertyIndexes(previousPropertyIndexesEnabled ? resourceDefinitionByResourceClass.values() : Collections.emptyList()));
+            return null;
+        });
+    }
+
     @Override
     public void tagAdd(String resourceId, String tagName) {
-        tags.add(new Tuple2<>(resourceId, tagName));
+        writeTransaction(() -> {
+            if (!writeStore.tagExists(resourceId, tagName)) {
+                apply(ResourcesInMemoryChange.tagAdd(resourceId, tagName), ResourcesInMemoryChange.tagDelete(resourceId, tagName));
+            }
+            return null;
+        });
     }
 
     @Override
     public boolean tagDelete(String resourceId, String tagName) {
-        return tags.removeIf(tag -> //
-        tag.getA() == resourceId //
-                && tag.getB().equals(tagName));
+        return writeTransaction(() -> {
+            if (!writeStore.tagExists(resourceId, tagName)) {
+                return false;
+            }
+            apply(ResourcesInMemoryChange.tagDelete(resourceId, tagName), ResourcesInMemoryChange.tagAdd(resourceId, tagName));
+            return true;
+        });
     }
 
     @Override
     public boolean tagExists(String resourceId, String tagName) {
-        return tags.stream().anyMatch(tag -> //
-        tag.getA() == resourceId //
-                && tag.getB().equals(tagName));
+        return read(store -> store.tagExists(resourceId, tagName));
     }
 
     @Override
     public Set<String> tagFindAllByResource(IPResource resource) {
-        String resourceId = resourceFindIdByPk(resource);
-        if (resourceId == null) {
-            return Collections.emptySet();
+        return read(store -> {
+            String resourceId = resourceFindIdByPk(store, resource);
+            if (resourceId == null) {
+                return Collections.emptySet();
+            }
+
+            return new HashSet<>(store.getTagsByResourceId(resourceId));
+        });
+    }
+
+    /**
+     * Run the work as the single writer. Everything it changes is committed at the end or reverted if it fails. When already in a transaction, it is part of it.
+     *
+     * @param work
+     *            the work to do
+     * @param <T>
+     *            the type of result
+     * @return the result of the work
+     */
+    private <T> T writeTransaction(Supplier<T> work) {
+
+        if (isInTransaction()) {
+            return work.get();
         }
 
-        return tags.stream() //
-                .filter(it -> resourceId.equals(it.getA())) //
-                .map(it -> it.getB()) //
-                .collect(Collectors.toSet());
+        writerLock.lock();
+        try {
+            writerThread = Thread.currentThread();
+            redoLog = new ArrayList<>();
+            undoLog = new ArrayDeque<>();
+
+            try {
+                T result = work.get();
+                commit();
+                return result;
+            } catch (RuntimeException e) {
+                rollback(0);
+                throw e;
+            }
+        } finally {
+            redoLog = null;
+            undoLog = null;
+            writerThread = null;
+            writerLock.unlock();
+        }
     }
 
 }
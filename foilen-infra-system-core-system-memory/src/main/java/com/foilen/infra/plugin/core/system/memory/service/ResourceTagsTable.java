@@ -0,0 +1,124 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.util.Arrays;
+
+/**
+ * The tags of the resources using the indexes of {@link StringDictionary}s: the tag indexes by resource index and the resource indexes by tag index. All the lists are sorted to find, add and remove
+ * with binary searches.
+ */
+public class ResourceTagsTable {
+
+    private static final IntArrayList EMPTY = new IntArrayList(0);
+
+    private static IntArrayList get(IntArrayList[] listByIndex, int index) {
+        if (index < 0 || index >= listByIndex.length || listByIndex[index] == null) {
+            return EMPTY;
+        }
+        return listByIndex[index];
+    }
+
+    private IntArrayList[] tagsByResource = new IntArrayList[16];
+    private IntArrayList[] resourcesByTag = new IntArrayList[16];
+
+    /**
+     * Add the tag if it is not there.
+     *
+     * @param resource
+     *            the resource index
+     * @param tag
+     *            the tag index
+     * @return true if added
+     */
+    public boolean add(int resource, int tag) {
+        if (exists(resource, tag)) {
+            return false;
+        }
+        tagsByResource = add(tagsByResource, resource, tag);
+        resourcesByTag = add(resourcesByTag, tag, resource);
+        return true;
+    }
+
+    private IntArrayList[] add(IntArrayList[] listByIndex, int index, int value) {
+        if (index >= listByIndex.length) {
+            listByIndex = Arrays.copyOf(listByIndex, Math.max(index + 1, listByIndex.length * 2));
+        }
+        IntArrayList list = listByIndex[index];
+        if (list == null) {
+            list = new IntArrayList(2);
+            listByIndex[index] = list;
+        }
+        list.addSorted(value);
+        return listByIndex;
+    }
+
+    /**
+     * Delete the tag if it is there.
+     *
+     * @param resource
+     *            the resource index
+     * @param tag
+     *            the tag index
+     * @return true if deleted
+     */
+    public boolean delete(int resource, int tag) {
+        if (!exists(resource, tag)) {
+            return false;
+        }
+        delete(tagsByResource, resource, tag);
+        delete(resourcesByTag, tag, resource);
+        return true;
+    }
+
+    private void delete(IntArrayList[] listByIndex, int index, int value) {
+        IntArrayList list = listByIndex[index];
+        list.removeSorted(value);
+        if (list.isEmpty()) {
+            listByIndex[index] = null;
+        }
+    }
+
+    public boolean exists(int resource, int tag) {
+        return tagsByResource(resource).containsSorted(tag);
+    }
+
+    /**
+     * Get the resources with that tag.
+     *
+     * @param tag
+     *            the tag index
+     * @return the resource indexes (sorted)
+     */
+    public IntArrayList resourcesByTag(int tag) {
+        return get(resourcesByTag, tag);
+    }
+
+    /**
+     * The amount of resource indexes that could have tags.
+     *
+     * @return the upper bound of the resource indexes
+     */
+    public int resourcesUpperBound() {
+        return tagsByResource.length;
+    }
+
+    /**
+     * Get the tags of the resource.
+     *
+     * @param resource
+     *            the resource index
+     * @return the tag indexes (sorted)
+     */
+    public IntArrayList tagsByResource(int resource) {
+        return get(tagsByResource, resource);
+    }
+
+}
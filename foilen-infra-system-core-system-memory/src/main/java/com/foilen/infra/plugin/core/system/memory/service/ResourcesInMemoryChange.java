@@ -0,0 +1,115 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.util.function.Consumer;
+
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * A change on the data of a {@link ResourcesInMemoryStore}. Unlike the other changes (like the property indexes), these are the ones that are persisted.
+ */
+public class ResourcesInMemoryChange implements Consumer<ResourcesInMemoryStore> {
+
+    public enum Kind {
+        RESOURCE_STORE, RESOURCE_UNSTORE, LINK_ADD, LINK_DELETE, TAG_ADD, TAG_DELETE
+    }
+
+    public static ResourcesInMemoryChange linkAdd(String fromResourceId, String linkType, String toResourceId) {
+        return new ResourcesInMemoryChange(Kind.LINK_ADD, null, 0, fromResourceId, linkType, toResourceId);
+    }
+
+    public static ResourcesInMemoryChange linkDelete(String fromResourceId, String linkType, String toResourceId) {
+        return new ResourcesInMemoryChange(Kind.LINK_DELETE, null, 0, fromResourceId, linkType, toResourceId);
+    }
+
+    public static ResourcesInMemoryChange resourceStore(IPResource resource, long sequence) {
+        return new ResourcesInMemoryChange(Kind.RESOURCE_STORE, resource, sequence, resource.getInternalId(), null, null);
+    }
+
+    public static ResourcesInMemoryChange resourceUnstore(String internalId) {
+        return new ResourcesInMemoryChange(Kind.RESOURCE_UNSTORE, null, 0, internalId, null, null);
+    }
+
+    public static ResourcesInMemoryChange tagAdd(String resourceId, String tagName) {
+        return new ResourcesInMemoryChange(Kind.TAG_ADD, null, 0, resourceId, tagName, null);
+    }
+
+    public static ResourcesInMemoryChange tagDelete(String resourceId, String tagName) {
+        return new ResourcesInMemoryChange(Kind.TAG_DELETE, null, 0, resourceId, tagName, null);
+    }
+
+    private Kind kind;
+    private IPResource resource;
+    private long sequence;
+
+    // Resource: the id ; Link: from, type, to ; Tag: the resource id and the tag name
+    private String a;
+    private String b;
+    private String c;
+
+    private ResourcesInMemoryChange(Kind kind, IPResource resource, long sequence, String a, String b, String c) {
+        this.kind = kind;
+        this.resource = resource;
+        this.sequence = sequence;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    @Override
+    public void accept(ResourcesInMemoryStore store) {
+        switch (kind) {
+        case RESOURCE_STORE:
+            store.storeResource(resource, sequence);
+            break;
+        case RESOURCE_UNSTORE:
+            store.unstoreResource(a);
+            break;
+        case LINK_ADD:
+            store.linkAdd(a, b, c);
+            break;
+        case LINK_DELETE:
+            store.linkDelete(a, b, c);
+            break;
+        case TAG_ADD:
+            store.tagAdd(a, b);
+            break;
+        case TAG_DELETE:
+            store.tagDelete(a, b);
+            break;
+        }
+    }
+
+    public String getA() {
+        return a;
+    }
+
+    public String getB() {
+        return b;
+    }
+
+    public String getC() {
+        return c;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public IPResource getResource() {
+        return resource;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+}
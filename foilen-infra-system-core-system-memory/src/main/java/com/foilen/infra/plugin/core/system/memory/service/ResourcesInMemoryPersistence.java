@@ -0,0 +1,454 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import com.foilen.infra.plugin.core.system.memory.service.ResourcesInMemoryChange.Kind;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.exception.SmallToolsException;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.JsonTools;
+import com.foilen.smalltools.tuple.Tuple2;
+import com.foilen.smalltools.tuple.Tuple3;
+
+/**
+ * Keeps the committed changes of {@link ResourceServicesInMemoryImpl} on disk. Each transaction is appended to a write-ahead log and, from time to time, a snapshot of everything is taken and a new
+ * log is started. On load, the latest snapshot is read (memory-mapped) and its log is replayed on top of it.
+ *
+ * The files in the directory:
+ * <ul>
+ * <li>snapshot.bin: the generation, the next internal id and sequence and all the resources, links and tags (replaced atomically)</li>
+ * <li>wal-&lt;generation&gt;.bin: the change sets since that snapshot, each with its length, CRC32 and the next internal id and sequence after it (an incomplete last one is ignored)</li>
+ * </ul>
+ */
+public class ResourcesInMemoryPersistence extends AbstractBasics {
+
+    private static final int SNAPSHOT_MAGIC = 0x46494d53;
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final int WAL_HEADER_SIZE = 4 + 8;
+
+    private static long crc(byte[] bytes, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+        return crc32.getValue();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private File directory;
+    private int snapshotAfterChangeSets = 10000;
+    private boolean syncOnCommit = true;
+
+    private Map<Class<? extends IPResource>, IPResourceDefinition> resourceDefinitionByResourceClass;
+    private Map<String, IPResourceDefinition> resourceDefinitionByResourceType;
+
+    private long generation;
+    private long nextInternalId;
+    private long nextSequence;
+    private FileChannel walChannel;
+    private int changeSetsInWal;
+
+    public ResourcesInMemoryPersistence(String directory) {
+        this.directory = new File(directory);
+    }
+
+    /**
+     * Append a committed change set to the write-ahead log.
+     *
+     * @param changes
+     *            the changes of the transaction
+     * @param nextInternalId
+     *            the next internal id to give after the transaction
+     * @param nextSequence
+     *            the next sequence to give after the transaction
+     */
+    public void append(List<ResourcesInMemoryChange> changes, long nextInternalId, long nextSequence) {
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeLong(0);
+            out.writeInt(changes.size());
+            for (ResourcesInMemoryChange change : changes) {
+                encode(out, change);
+            }
+            out.writeLong(nextInternalId);
+            out.writeLong(nextSequence);
+            out.flush();
+
+            byte[] changeSet = bytes.toByteArray();
+            int payloadLength = changeSet.length - WAL_HEADER_SIZE;
+            ByteBuffer buffer = ByteBuffer.wrap(changeSet);
+            buffer.putInt(payloadLength);
+            buffer.putLong(crc(changeSet, WAL_HEADER_SIZE, payloadLength));
+            buffer.rewind();
+
+            long position = walChannel.position();
+            try {
+                while (buffer.hasRemaining()) {
+                    walChannel.write(buffer);
+                }
+                if (syncOnCommit) {
+                    walChannel.force(false);
+                }
+            } catch (IOException e) {
+                // Do not leave a partial change set before the next ones
+                walChannel.truncate(position);
+                walChannel.position(position);
+                throw e;
+            }
+            ++changeSetsInWal;
+        } catch (IOException e) {
+            throw new SmallToolsException("Could not write to the write-ahead log", e);
+        }
+    }
+
+    /**
+     * Close the write-ahead log.
+     */
+    public void close() {
+        if (walChannel == null) {
+            return;
+        }
+        try {
+            walChannel.close();
+        } catch (IOException e) {
+            throw new SmallToolsException("Could not close the write-ahead log", e);
+        } finally {
+            walChannel = null;
+        }
+    }
+
+    private ResourcesInMemoryChange decode(ByteBuffer buffer) {
+        Kind kind = Kind.values()[buffer.get()];
+        switch (kind) {
+        case RESOURCE_STORE:
+            String internalId = readString(buffer);
+            long sequence = buffer.getLong();
+            String resourceType = readString(buffer);
+            String json = readString(buffer);
+            IPResourceDefinition resourceDefinition = resourceDefinitionByResourceType.get(resourceType);
+            if (resourceDefinition == null) {
+                throw new SmallToolsException("Resource type " + resourceType + " is unknown");
+            }
+            IPResource resource = JsonTools.readFromString(json, resourceDefinition.getResourceClass());
+            resource.setInternalId(internalId);
+            return ResourcesInMemoryChange.resourceStore(resource, sequence);
+        case RESOURCE_UNSTORE:
+            return ResourcesInMemoryChange.resourceUnstore(readString(buffer));
+        case LINK_ADD:
+            return ResourcesInMemoryChange.linkAdd(readString(buffer), readString(buffer), readString(buffer));
+        case LINK_DELETE:
+            return ResourcesInMemoryChange.linkDelete(readString(buffer), readString(buffer), readString(buffer));
+        case TAG_ADD:
+            return ResourcesInMemoryChange.tagAdd(readString(buffer), readString(buffer));
+        default:
+            return ResourcesInMemoryChange.tagDelete(readString(buffer), readString(buffer));
+        }
+    }
+
+    private void encode(DataOutputStream out, ResourcesInMemoryChange change) throws IOException {
+        out.writeByte(change.getKind().ordinal());
+        switch (change.getKind()) {
+        case RESOURCE_STORE:
+            IPResource resource = change.getResource();
+            writeString(out, change.getA());
+            out.writeLong(change.getSequence());
+            writeString(out, resourceDefinitionByResourceClass.get(resource.getClass()).getResourceType());
+            writeString(out, JsonTools.compactPrint(resource));
+            break;
+        case RESOURCE_UNSTORE:
+            writeString(out, change.getA());
+            break;
+        case LINK_ADD:
+        case LINK_DELETE:
+            writeString(out, change.getA());
+            writeString(out, change.getB());
+            writeString(out, change.getC());
+            break;
+        default:
+            writeString(out, change.getA());
+            writeString(out, change.getB());
+            break;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * The next internal id that was persisted. Only known after {@link #load(Map, Consumer)}.
+     *
+     * @return the next internal id or 0 if none was persisted yet
+     */
+    public long getNextInternalId() {
+        return nextInternalId;
+    }
+
+    /**
+     * The next sequence that was persisted. Only known after {@link #load(Map, Consumer)}.
+     *
+     * @return the next sequence or 0 if none was persisted yet
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public int getSnapshotAfterChangeSets() {
+        return snapshotAfterChangeSets;
+    }
+
+    private File getSnapshotFile() {
+        return new File(directory, "snapshot.bin");
+    }
+
+    private File getWalFile(long generation) {
+        return new File(directory, "wal-" + generation + ".bin");
+    }
+
+    public boolean isSnapshotDue() {
+        return changeSetsInWal >= snapshotAfterChangeSets;
+    }
+
+    public boolean isSyncOnCommit() {
+        return syncOnCommit;
+    }
+
+    /**
+     * Read the latest snapshot and replay the write-ahead log. Then, starts appending to that log.
+     *
+     * @param resourceDefinitionByResourceClass
+     *            all the resource definitions (must already be all there)
+     * @param loader
+     *            receives the changes in order
+     */
+    public void load(Map<Class<? extends IPResource>, IPResourceDefinition> resourceDefinitionByResourceClass, Consumer<ResourcesInMemoryChange> loader) {
+
+        this.resourceDefinitionByResourceClass = resourceDefinitionByResourceClass;
+        this.resourceDefinitionByResourceType = resourceDefinitionByResourceClass.values().stream() //
+                .collect(Collectors.toMap(it -> it.getResourceType(), it -> it));
+
+        directory.mkdirs();
+
+        try {
+            // Snapshot
+            long snapshotChanges = 0;
+            generation = 0;
+            nextInternalId = 0;
+            nextSequence = 0;
+            File snapshotFile = getSnapshotFile();
+            if (snapshotFile.exists()) {
+                try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                    int version = buffer.getInt() == SNAPSHOT_MAGIC ? buffer.getInt() : -1;
+                    if (version != 1 && version != SNAPSHOT_VERSION) {
+                        throw new SmallToolsException("The snapshot " + snapshotFile.getAbsolutePath() + " is not in a supported format");
+                    }
+                    generation = buffer.getLong();
+                    if (version >= 2) {
+                        nextInternalId = buffer.getLong();
+                        nextSequence = buffer.getLong();
+                    }
+                    snapshotChanges = buffer.getLong();
+                    for (long i = 0; i < snapshotChanges; ++i) {
+                        loader.accept(decode(buffer));
+                    }
+                }
+            }
+
+            // Write-ahead log
+            changeSetsInWal = 0;
+            long walChanges = 0;
+            File walFile = getWalFile(generation);
+            walChannel = FileChannel.open(walFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validSize = 0;
+            if (walChannel.size() > 0) {
+                MappedByteBuffer buffer = walChannel.map(MapMode.READ_ONLY, 0, walChannel.size());
+                while (buffer.remaining() >= WAL_HEADER_SIZE) {
+                    int payloadLength = buffer.getInt();
+                    long crc = buffer.getLong();
+                    if (payloadLength < 0 || payloadLength > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] payload = new byte[payloadLength];
+                    buffer.get(payload);
+                    if (crc(payload, 0, payloadLength) != crc) {
+                        break;
+                    }
+
+                    ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+                    int count = payloadBuffer.getInt();
+                    for (int i = 0; i < count; ++i) {
+                        loader.accept(decode(payloadBuffer));
+                    }
+                    if (payloadBuffer.remaining() >= 16) {
+                        nextInternalId = payloadBuffer.getLong();
+                        nextSequence = payloadBuffer.getLong();
+                    }
+                    walChanges += count;
+                    ++changeSetsInWal;
+                    validSize = buffer.position();
+                }
+            }
+
+            // Drop a change set that was not completely written
+            if (validSize < walChannel.size()) {
+                logger.warn("Ignoring {} bytes at the end of the write-ahead log {}", walChannel.size() - validSize, walFile.getAbsolutePath());
+                walChannel.truncate(validSize);
+            }
+            walChannel.position(validSize);
+
+            // Remove the logs of older generations
+            File[] files = directory.listFiles((dir, name) -> name.startsWith("wal-") && name.endsWith(".bin"));
+            for (File file : files) {
+                if (!file.equals(walFile)) {
+                    file.delete();
+                }
+            }
+
+            logger.info("Loaded {} changes from the snapshot and {} changes in {} change sets from the write-ahead log", snapshotChanges, walChanges, changeSetsInWal);
+        } catch (IOException e) {
+            throw new SmallToolsException("Could not load from " + directory.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Choose after how many change sets in the write-ahead log a new snapshot is taken.
+     *
+     * <p>
+     * The snapshot is taken by the commit that reaches that amount, while it still holds the writer lock, since the store it writes is the one the next writer changes. That commit and all the
+     * writers waiting after it are stalled for the time it takes to write all the resources (the readers are not). With a lot of resources, use a higher value to take them less often at the cost of
+     * a longer write-ahead log to replay on load.
+     * </p>
+     *
+     * @param snapshotAfterChangeSets
+     *            the amount of change sets (default: 10000)
+     */
+    public void setSnapshotAfterChangeSets(int snapshotAfterChangeSets) {
+        this.snapshotAfterChangeSets = snapshotAfterChangeSets;
+    }
+
+    /**
+     * Choose to force the write-ahead log on the disk at each commit.
+     *
+     * @param syncOnCommit
+     *            true to be sure a committed transaction survives a crash of the machine (default: true)
+     */
+    public void setSyncOnCommit(boolean syncOnCommit) {
+        this.syncOnCommit = syncOnCommit;
+    }
+
+    /**
+     * Write a snapshot of everything and start a new write-ahead log.
+     *
+     * @param store
+     *            the store with all the committed changes. Must not change while taking the snapshot
+     * @param nextInternalId
+     *            the next internal id to give
+     * @param nextSequence
+     *            the next sequence to give
+     */
+    public void snapshot(ResourcesInMemoryStore store, long nextInternalId, long nextSequence) {
+
+        List<IPResource> resources = store.getResources();
+        List<Tuple3<String, String, String>> links = store.getLinks();
+        List<Tuple2<String, String>> tags = store.getTags();
+        long nextGeneration = generation + 1;
+
+        logger.info("Taking a snapshot of {} resources, {} links and {} tags", resources.size(), links.size(), tags.size());
+
+        try {
+            File snapshotFile = getSnapshotFile();
+            File tmpSnapshotFile = new File(directory, "snapshot.bin.tmp");
+            try (FileOutputStream fileOutputStream = new FileOutputStream(tmpSnapshotFile)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 1024 * 1024));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(nextGeneration);
+                out.writeLong(nextInternalId);
+                out.writeLong(nextSequence);
+                out.writeLong(resources.size() + links.size() + tags.size());
+                for (IPResource resource : resources) {
+                    encode(out, ResourcesInMemoryChange.resourceStore(resource, store.getSequence(resource.getInternalId())));
+                }
+                for (Tuple3<String, String, String> link : links) {
+                    encode(out, ResourcesInMemoryChange.linkAdd(link.getA(), link.getB(), link.getC()));
+                }
+                for (Tuple2<String, String> tag : tags) {
+                    encode(out, ResourcesInMemoryChange.tagAdd(tag.getA(), tag.getB()));
+                }
+                out.flush();
+                fileOutputStream.getFD().sync();
+            }
+            Files.move(tmpSnapshotFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            // Start the new log
+            FileChannel nextWalChannel = FileChannel.open(getWalFile(nextGeneration).toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            File previousWalFile = getWalFile(generation);
+            close();
+            previousWalFile.delete();
+            walChannel = nextWalChannel;
+            generation = nextGeneration;
+            changeSetsInWal = 0;
+        } catch (IOException e) {
+            throw new SmallToolsException("Could not take a snapshot in " + directory.getAbsolutePath(), e);
+        }
+    }
+
+}
@@ -0,0 +1,527 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.tuple.Tuple2;
+import com.foilen.smalltools.tuple.Tuple3;
+
+/**
+ * All the resources, links and tags with their indexes. It is not thread-safe: {@link ResourceServicesInMemoryImpl} keeps 2 of them, one that is only read and one that is only written, and swaps
+ * them when a transaction is committed.
+ */
+public class ResourcesInMemoryStore {
+
+    private Map<Class<? extends IPResource>, IPResourceDefinition> resourceDefinitionByResourceClass;
+
+    // Readers currently using this store (a single counter since the writer needs an exact value) and the writer waiting for them to be done
+    private AtomicInteger readers = new AtomicInteger();
+    private volatile boolean writerWaiting;
+    private Lock readersLock = new ReentrantLock();
+    private Condition readersDone = readersLock.newCondition();
+
+    // Resources
+    private Map<String, IPResource> resourceById = new HashMap<>();
+    private Map<String, Long> sequenceByResourceId = new HashMap<>();
+    private NavigableMap<Long, String> resourceIdBySequence = new TreeMap<>();
+    private Map<ResourcePrimaryKey, String> resourceIdByPk = new HashMap<>();
+    private Map<Class<?>, Set<String>> resourceIdsByClass = new HashMap<>();
+
+    // Links and tags with the resource ids, link types and tag names as indexes
+    private StringDictionary resourceIds = new StringDictionary();
+    private StringDictionary linkTypes = new StringDictionary();
+    private StringDictionary tagNames = new StringDictionary();
+    private ResourceLinksTable links = new ResourceLinksTable();
+    private ResourceTagsTable tags = new ResourceTagsTable();
+
+    // Secondary indexes on the searchable properties
+    private Map<Class<?>, Map<String, ResourcePropertyIndex>> propertyIndexesByResourceClass = new HashMap<>();
+
+    public ResourcesInMemoryStore(Map<Class<? extends IPResource>, IPResourceDefinition> resourceDefinitionByResourceClass) {
+        this.resourceDefinitionByResourceClass = resourceDefinitionByResourceClass;
+    }
+
+    /**
+     * Wait until there are no more readers (without spinning since the last reader to exit signals the writer). An interruption does not stop the wait since the store cannot be changed while it
+     * is read, but the interrupted flag is kept.
+     *
+     * @param timeoutInMs
+     *            the maximum time to wait
+     * @return true if there are no more readers ; false if some are still reading after the timeout
+     */
+    public boolean awaitNoReaders(long timeoutInMs) {
+        long deadlineInNs = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMs);
+        boolean interrupted = false;
+        writerWaiting = true;
+        readersLock.lock();
+        try {
+            while (hasReaders()) {
+                long remainingInNs = deadlineInNs - System.nanoTime();
+                if (remainingInNs <= 0) {
+                    return false;
+                }
+                try {
+                    readersDone.awaitNanos(remainingInNs);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return true;
+        } finally {
+            writerWaiting = false;
+            readersLock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void buildPropertyIndexes(IPResourceDefinition resourceDefinition) {
+        Map<String, ResourcePropertyIndex> propertyIndexes = new HashMap<>();
+        for (String propertyName : resourceDefinition.getSearchableProperties()) {
+            Method getterMethod = resourceDefinition.getPropertyGetterMethod(propertyName);
+            Class<?> propertyType = resourceDefinition.getPropertyType(propertyName);
+            if (getterMethod == null || propertyType == null) {
+                continue;
+            }
+            propertyIndexes.put(propertyName, new ResourcePropertyIndex(getterMethod, Set.class.isAssignableFrom(propertyType)));
+        }
+
+        for (String resourceId : getResourceIdsByClass(resourceDefinition.getResourceClass())) {
+            IPResource resource = resourceById.get(resourceId);
+            propertyIndexes.values().forEach(it -> it.add(resourceId, resource));
+        }
+
+        propertyIndexesByResourceClass.put(resourceDefinition.getResourceClass(), propertyIndexes);
+    }
+
+    /**
+     * Find the candidates in the property indexes of all the types of the query.
+     *
+     * @param query
+     *            the query
+     * @param propertyName
+     *            the property to look for
+     * @param finder
+     *            what to find in the index
+     * @return the candidates or null if one of the types cannot use an index for that property
+     */
+    private Set<String> findInPropertyIndexes(IPResourceQuery<?> query, String propertyName, Function<ResourcePropertyIndex, Set<String>> finder) {
+        Set<String> resourceIds = null;
+        for (IPResourceDefinition resourceDefinition : query.getResourceDefinitions()) {
+            ResourcePropertyIndex propertyIndex = propertyIndexesByResourceClass.getOrDefault(resourceDefinition.getResourceClass(), Collections.emptyMap()).get(propertyName);
+            if (propertyIndex == null) {
+                return null;
+            }
+            Set<String> typeResourceIds = finder.apply(propertyIndex);
+            if (typeResourceIds == null) {
+                return null;
+            }
+            if (resourceIds == null) {
+                resourceIds = typeResourceIds;
+            } else {
+                resourceIds = new HashSet<>(resourceIds);
+                resourceIds.addAll(typeResourceIds);
+            }
+        }
+        return resourceIds;
+    }
+
+    public List<Tuple3<String, String, String>> getLinks() {
+        List<Tuple3<String, String, String>> result = new ArrayList<>(links.size());
+        links.forEach((from, type, to) -> result.add(new Tuple3<>(resourceIds.get(from), linkTypes.get(type), resourceIds.get(to))));
+        return result;
+    }
+
+    public List<Tuple3<String, String, String>> getLinksByFromId(String fromResourceId) {
+        return toLinks(links.slotsByFrom(resourceIds.indexOf(fromResourceId)).toArray(), -1);
+    }
+
+    public List<Tuple3<String, String, String>> getLinksByFromIdAndLinkType(String fromResourceId, String linkType) {
+        int type = linkTypes.indexOf(linkType);
+        if (type == -1) {
+            return Collections.emptyList();
+        }
+        return toLinks(links.slotsByFrom(resourceIds.indexOf(fromResourceId)).toArray(), type);
+    }
+
+    public List<Tuple3<String, String, String>> getLinksByResourceId(String resourceId) {
+        return toLinks(links.slotsByResource(resourceIds.indexOf(resourceId)), -1);
+    }
+
+    public List<Tuple3<String, String, String>> getLinksByToId(String toResourceId) {
+        return toLinks(links.slotsByTo(resourceIds.indexOf(toResourceId)).toArray(), -1);
+    }
+
+    private ResourcePrimaryKey getPk(IPResource resource) {
+        return ResourcePrimaryKey.from(resourceDefinitionByResourceClass.get(resource.getClass()), resource);
+    }
+
+    /**
+     * Get the resources that can be reached by following the links with a breadth-first search.
+     *
+     * @param startResourceId
+     *            the resource to start from
+     * @param linkTypeNames
+     *            the link types to follow or null for all of them
+     * @param outgoing
+     *            true to go from the "from" resources to the "to" resources ; false for the other way
+     * @param maxDepth
+     *            the maximum amount of links to follow
+     * @return the resource ids (without the starting one) in the order they were found
+     */
+    public List<String> getReachableResourceIds(String startResourceId, Set<String> linkTypeNames, boolean outgoing, int maxDepth) {
+        int start = resourceIds.indexOf(startResourceId);
+        if (start == -1) {
+            return Collections.emptyList();
+        }
+
+        // null for all types
+        boolean[] followedTypes = null;
+        if (linkTypeNames != null) {
+            followedTypes = new boolean[linkTypes.size()];
+            for (String linkTypeName : linkTypeNames) {
+                int type = linkTypes.indexOf(linkTypeName);
+                if (type != -1) {
+                    followedTypes[type] = true;
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        BitSet visited = new BitSet();
+        visited.set(start);
+        IntArrayList current = new IntArrayList();
+        current.add(start);
+        for (int depth = 0; depth < maxDepth && !current.isEmpty(); ++depth) {
+            IntArrayList next = new IntArrayList();
+            for (int i = 0; i < current.size(); ++i) {
+                IntArrayList slots = outgoing ? links.slotsByFrom(current.get(i)) : links.slotsByTo(current.get(i));
+                for (int j = 0; j < slots.size(); ++j) {
+                    int slot = slots.get(j);
+                    if (followedTypes != null && !followedTypes[links.getType(slot)]) {
+                        continue;
+                    }
+                    int resource = outgoing ? links.getTo(slot) : links.getFrom(slot);
+                    if (!visited.get(resource)) {
+                        visited.set(resource);
+                        next.add(resource);
+                        result.add(resourceIds.get(resource));
+                    }
+                }
+            }
+            current = next;
+        }
+        return result;
+    }
+
+    public IPResource getResource(String internalId) {
+        return resourceById.get(internalId);
+    }
+
+    public String getResourceIdByPk(ResourcePrimaryKey pk) {
+        return resourceIdByPk.get(pk);
+    }
+
+    public Set<String> getResourceIdsByClass(Class<?> resourceClass) {
+        return resourceIdsByClass.getOrDefault(resourceClass, Collections.emptySet());
+    }
+
+    public List<IPResource> getResources() {
+        return resourceIdBySequence.values().stream() //
+                .map(it -> resourceById.get(it)) //
+                .collect(Collectors.toList());
+    }
+
+    public Long getSequence(String internalId) {
+        return sequenceByResourceId.get(internalId);
+    }
+
+    public List<Tuple2<String, String>> getTags() {
+        List<Tuple2<String, String>> result = new ArrayList<>();
+        int upperBound = Math.min(tags.resourcesUpperBound(), resourceIds.size());
+        for (int resource = 0; resource < upperBound; ++resource) {
+            IntArrayList resourceTags = tags.tagsByResource(resource);
+            for (int i = 0; i < resourceTags.size(); ++i) {
+                result.add(new Tuple2<>(resourceIds.get(resource), tagNames.get(resourceTags.get(i))));
+            }
+        }
+        return result;
+    }
+
+    public Set<String> getTagsByResourceId(String resourceId) {
+        IntArrayList resourceTags = tags.tagsByResource(resourceIds.indexOf(resourceId));
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < resourceTags.size(); ++i) {
+            result.add(tagNames.get(resourceTags.get(i)));
+        }
+        return result;
+    }
+
+    public boolean hasReaders() {
+        return readers.get() != 0;
+    }
+
+    public void linkAdd(String fromResourceId, String linkType, String toResourceId) {
+        links.add(resourceIds.add(fromResourceId), linkTypes.add(linkType), resourceIds.add(toResourceId));
+    }
+
+    public void linkDelete(String fromResourceId, String linkType, String toResourceId) {
+        int from = resourceIds.indexOf(fromResourceId);
+        int type = linkTypes.indexOf(linkType);
+        int to = resourceIds.indexOf(toResourceId);
+        if (from != -1 && type != -1 && to != -1 && links.delete(from, type, to)) {
+            releaseResourceIndexIfUnused(from, fromResourceId);
+            if (to != from) {
+                releaseResourceIndexIfUnused(to, toResourceId);
+            }
+        }
+    }
+
+    public boolean linkExists(String fromResourceId, String linkType, String toResourceId) {
+        int from = resourceIds.indexOf(fromResourceId);
+        int type = linkTypes.indexOf(linkType);
+        int to = resourceIds.indexOf(toResourceId);
+        return from != -1 && type != -1 && to != -1 && links.exists(from, type, to);
+    }
+
+    public void readerEnter() {
+        readers.incrementAndGet();
+    }
+
+    public void readerExit() {
+        readers.decrementAndGet();
+        if (writerWaiting) {
+            readersLock.lock();
+            try {
+                readersDone.signalAll();
+            } finally {
+                readersLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Remove all the property indexes and build them for these types.
+     *
+     * @param resourceDefinitions
+     *            the types to index
+     */
+    public void rebuildPropertyIndexes(Collection<IPResourceDefinition> resourceDefinitions) {
+        propertyIndexesByResourceClass.clear();
+        resourceDefinitions.forEach(it -> buildPropertyIndexes(it));
+    }
+
+    /**
+     * Give back the index of the resource to the dictionary when it has no more links and tags (e.g. deleted).
+     *
+     * @param resource
+     *            the resource index
+     * @param resourceId
+     *            the resource id
+     */
+    private void releaseResourceIndexIfUnused(int resource, String resourceId) {
+        if (links.slotsByFrom(resource).isEmpty() && links.slotsByTo(resource).isEmpty() && tags.tagsByResource(resource).isEmpty()) {
+            resourceIds.remove(resourceId);
+        }
+    }
+
+    public void removePropertyIndexes(Class<?> resourceClass) {
+        propertyIndexesByResourceClass.remove(resourceClass);
+    }
+
+    /**
+     * Use the property indexes to find the smallest set of candidates.
+     *
+     * @param query
+     *            the query
+     * @return the candidates or null if no index can be used
+     */
+    public Set<String> resourceIdsByPropertyIndexes(IPResourceQuery<?> query) {
+
+        if (propertyIndexesByResourceClass.isEmpty()) {
+            return null;
+        }
+
+        List<Set<String>> plans = new ArrayList<>();
+        query.getPropertyEquals().forEach((propertyName, value) -> plans.add(findInPropertyIndexes(query, propertyName, it -> it.findEquals(value))));
+        query.getPropertyContains().forEach((propertyName, value) -> plans.add(findInPropertyIndexes(query, propertyName, it -> it.findContains(value))));
+        query.getPropertyGreater().forEach((propertyName, value) -> plans.add(findInPropertyIndexes(query, propertyName, it -> it.findRange(value, true, false))));
+        query.getPropertyGreaterEquals().forEach((propertyName, value) -> plans.add(findInPropertyIndexes(query, propertyName, it -> it.findRange(value, true, true))));
+        query.getPropertyLesser().forEach((propertyName, value) -> plans.add(findInPropertyIndexes(query, propertyName, it -> it.findRange(value, false, false))));
+        query.getPropertyLesserAndEquals().forEach((propertyName, value) -> plans.add(findInPropertyIndexes(query, propertyName, it -> it.findRange(value, false, true))));
+
+        return plans.stream() //
+                .filter(it -> it != null) //
+                .min((a, b) -> Integer.compare(a.size(), b.size())) //
+                .orElse(null);
+    }
+
+    /**
+     * Get the ids of the resources that have all the "and" tags and at least one of the "or" tags.
+     *
+     * @param tagsAnd
+     *            all these tags must be present
+     * @param tagsOr
+     *            one of these tags must be present (if not empty)
+     * @return the ids or null if there are no tags to filter on
+     */
+    public Set<String> resourceIdsByTags(Set<String> tagsAnd, Set<String> tagsOr) {
+
+        if (tagsAnd.isEmpty() && tagsOr.isEmpty()) {
+            return null;
+        }
+
+        // Start from the smallest list of resources
+        int[] andTags = new int[tagsAnd.size()];
+        int andIndex = 0;
+        IntArrayList candidates = null;
+        for (String tagName : tagsAnd) {
+            int tag = tagNames.indexOf(tagName);
+            if (tag == -1) {
+                return Collections.emptySet();
+            }
+            andTags[andIndex++] = tag;
+            IntArrayList resources = tags.resourcesByTag(tag);
+            if (candidates == null || resources.size() < candidates.size()) {
+                candidates = resources;
+            }
+        }
+        int[] orTags = tagsOr.stream() //
+                .mapToInt(it -> tagNames.indexOf(it)) //
+                .filter(it -> it != -1) //
+                .toArray();
+        if (candidates == null) {
+            IntArrayList orCandidates = new IntArrayList();
+            for (int tag : orTags) {
+                IntArrayList resources = tags.resourcesByTag(tag);
+                for (int i = 0; i < resources.size(); ++i) {
+                    orCandidates.add(resources.get(i));
+                }
+            }
+            candidates = orCandidates;
+        }
+
+        // Check the tags of each candidate
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < candidates.size(); ++i) {
+            int resource = candidates.get(i);
+            IntArrayList resourceTags = tags.tagsByResource(resource);
+            boolean matches = true;
+            for (int tag : andTags) {
+                if (!resourceTags.containsSorted(tag)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches && !tagsOr.isEmpty()) {
+                matches = false;
+                for (int tag : orTags) {
+                    if (resourceTags.containsSorted(tag)) {
+                        matches = true;
+                        break;
+                    }
+                }
+            }
+            if (matches) {
+                result.add(resourceIds.get(resource));
+            }
+        }
+
+        return result;
+    }
+
+    public void storeResource(IPResource resource, long sequence) {
+        String internalId = resource.getInternalId();
+        resourceById.put(internalId, resource);
+        sequenceByResourceId.put(internalId, sequence);
+        resourceIdBySequence.put(sequence, internalId);
+        resourceIdByPk.put(getPk(resource), internalId);
+        resourceIdsByClass.computeIfAbsent(resource.getClass(), it -> new HashSet<>()).add(internalId);
+        propertyIndexesByResourceClass.getOrDefault(resource.getClass(), Collections.emptyMap()).values().forEach(it -> it.add(internalId, resource));
+    }
+
+    public void tagAdd(String resourceId, String tagName) {
+        tags.add(resourceIds.add(resourceId), tagNames.add(tagName));
+    }
+
+    public void tagDelete(String resourceId, String tagName) {
+        int resource = resourceIds.indexOf(resourceId);
+        int tag = tagNames.indexOf(tagName);
+        if (resource != -1 && tag != -1 && tags.delete(resource, tag)) {
+            if (tags.resourcesByTag(tag).isEmpty()) {
+                tagNames.remove(tagName);
+            }
+            releaseResourceIndexIfUnused(resource, resourceId);
+        }
+    }
+
+    public boolean tagExists(String resourceId, String tagName) {
+        int resource = resourceIds.indexOf(resourceId);
+        int tag = tagNames.indexOf(tagName);
+        return resource != -1 && tag != -1 && tags.exists(resource, tag);
+    }
+
+    /**
+     * Get the links in these slots.
+     *
+     * @param slots
+     *            the slots
+     * @param type
+     *            only keep that link type or -1 for all
+     * @return the links
+     */
+    private List<Tuple3<String, String, String>> toLinks(int[] slots, int type) {
+        List<Tuple3<String, String, String>> result = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            if (type == -1 || links.getType(slot) == type) {
+                result.add(new Tuple3<>(resourceIds.get(links.getFrom(slot)), linkTypes.get(links.getType(slot)), resourceIds.get(links.getTo(slot))));
+            }
+        }
+        return result;
+    }
+
+    public IPResource unstoreResource(String internalId) {
+        IPResource resource = resourceById.remove(internalId);
+        if (resource == null) {
+            return null;
+        }
+        resourceIdBySequence.remove(sequenceByResourceId.remove(internalId));
+        resourceIdByPk.remove(getPk(resource), internalId);
+        resourceIdsByClass.getOrDefault(resource.getClass(), Collections.emptySet()).remove(internalId);
+        propertyIndexesByResourceClass.getOrDefault(resource.getClass(), Collections.emptyMap()).values().forEach(it -> it.remove(internalId, resource));
+        return resource;
+    }
+
+}
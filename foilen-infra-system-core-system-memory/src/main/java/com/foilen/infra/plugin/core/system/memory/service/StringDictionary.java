@@ -0,0 +1,173 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.util.Arrays;
+
+/**
+ * Gives a small int to each distinct text (resource ids, link types, tag names) so that they can be kept in primitive arrays. The index of a removed text is given to the next new text. Uses open
+ * addressing to avoid an entry object per text.
+ */
+public class StringDictionary {
+
+    private static int hash(String text) {
+        int h = text.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // The text by index (null when removed)
+    private String[] texts = new String[16];
+    private int size;
+    private int count;
+    private IntArrayList freeIndexes = new IntArrayList();
+
+    // The index + 1 of the text or 0 when empty
+    private int[] table = new int[32];
+
+    /**
+     * Get the index of the text and add it if it is not there.
+     *
+     * @param text
+     *            the text
+     * @return its index
+     */
+    public int add(String text) {
+        int mask = table.length - 1;
+        int position = hash(text) & mask;
+        while (table[position] != 0) {
+            int index = table[position] - 1;
+            if (texts[index].equals(text)) {
+                return index;
+            }
+            position = (position + 1) & mask;
+        }
+
+        int index;
+        if (freeIndexes.isEmpty()) {
+            index = size++;
+            if (index == texts.length) {
+                texts = Arrays.copyOf(texts, texts.length * 2);
+            }
+        } else {
+            index = freeIndexes.removeLast();
+        }
+        texts[index] = text;
+        table[position] = index + 1;
+        ++count;
+
+        if (count * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return index;
+    }
+
+    /**
+     * The amount of texts.
+     *
+     * @return the amount of texts
+     */
+    public int count() {
+        return count;
+    }
+
+    private int findPosition(String text) {
+        int mask = table.length - 1;
+        int position = hash(text) & mask;
+        while (table[position] != 0) {
+            if (texts[table[position] - 1].equals(text)) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String get(int index) {
+        return texts[index];
+    }
+
+    /**
+     * Get the index of the text without adding it.
+     *
+     * @param text
+     *            the text
+     * @return its index or -1 if it is not there
+     */
+    public int indexOf(String text) {
+        if (text == null) {
+            return -1;
+        }
+        int position = findPosition(text);
+        return position == -1 ? -1 : table[position] - 1;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < size; ++index) {
+            if (texts[index] == null) {
+                continue;
+            }
+            int position = hash(texts[index]) & mask;
+            while (table[position] != 0) {
+                position = (position + 1) & mask;
+            }
+            table[position] = index + 1;
+        }
+    }
+
+    /**
+     * Remove the text when nothing uses its index anymore. Its index will be given to a next new text.
+     *
+     * @param text
+     *            the text
+     * @return true if it was there
+     */
+    public boolean remove(String text) {
+        int position = findPosition(text);
+        if (position == -1) {
+            return false;
+        }
+        int index = table[position] - 1;
+
+        // Shift back the next entries that would not be found anymore
+        int mask = table.length - 1;
+        int empty = position;
+        int current = position;
+        while (true) {
+            current = (current + 1) & mask;
+            if (table[current] == 0) {
+                break;
+            }
+            int ideal = hash(texts[table[current] - 1]) & mask;
+            boolean staysAfterEmpty = empty <= current ? (empty < ideal && ideal <= current) : (empty < ideal || ideal <= current);
+            if (!staysAfterEmpty) {
+                table[empty] = table[current];
+                empty = current;
+            }
+        }
+        table[empty] = 0;
+
+        texts[index] = null;
+        freeIndexes.add(index);
+        --count;
+        return true;
+    }
+
+    /**
+     * The upper bound of the indexes (the removed ones included).
+     *
+     * @return the upper bound
+     */
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.changeexecution;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.foilen.infra.plugin.core.system.memory.junits.ResourceServicesInMemoryTests;
+import com.foilen.infra.plugin.core.system.memory.service.ResourceServicesInMemoryImpl;
+import com.foilen.infra.plugin.v1.core.context.ChangesContext;
+import com.foilen.infra.resource.example.JunitResource;
+
+public class TransactionResourceCacheTest {
+
+    private ResourceServicesInMemoryImpl resourceServicesInMemoryImpl = ResourceServicesInMemoryTests.init();
+    private TransactionResourceCache transactionResourceCache = new TransactionResourceCache(resourceServicesInMemoryImpl);
+
+    private JunitResource add(String text) {
+        ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+        changes.resourceAdd(new JunitResource(text));
+        resourceServicesInMemoryImpl.changesExecute(changes);
+        return resourceServicesInMemoryImpl.resourceFindByPk(new JunitResource(text)).get();
+    }
+
+    private void fillCache(String id, String... texts) {
+        transactionResourceCache.resourceFind(id);
+        for (String text : texts) {
+            transactionResourceCache.resourceFindByPk(new JunitResource(text));
+        }
+    }
+
+    @Test
+    public void testCopiesAreNotShared() {
+
+        JunitResource resource = add("cache_copy");
+
+        JunitResource found = (JunitResource) transactionResourceCache.resourceFind(resource.getInternalId()).get();
+        found.setLongNumber(10L);
+
+        Assert.assertNull(((JunitResource) transactionResourceCache.resourceFind(resource.getInternalId()).get()).getLongNumber());
+        Assert.assertNull(transactionResourceCache.resourceFindByPk(new JunitResource("cache_copy")).get().getLongNumber());
+        Assert.assertEquals(resource.getInternalId(), transactionResourceCache.resourceFindByPk(new JunitResource("cache_copy")).get().getInternalId());
+
+    }
+
+    @Test
+    public void testInvalidate_delete() {
+
+        JunitResource resource = add("cache_delete");
+        fillCache(resource.getInternalId(), "cache_delete");
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+        changes.resourceDelete(resource.getInternalId());
+        resourceServicesInMemoryImpl.changesExecute(changes);
+        transactionResourceCache.invalidate(resource);
+
+        Assert.assertFalse(transactionResourceCache.resourceFind(resource.getInternalId()).isPresent());
+        Assert.assertFalse(transactionResourceCache.resourceFindByPk(new JunitResource("cache_delete")).isPresent());
+
+    }
+
+    @Test
+    public void testInvalidate_pkChange() {
+
+        JunitResource resource = add("cache_pk_before");
+        fillCache(resource.getInternalId(), "cache_pk_before", "cache_pk_after");
+        Assert.assertFalse(transactionResourceCache.resourceFindByPk(new JunitResource("cache_pk_after")).isPresent());
+
+        JunitResource updatedResource = new JunitResource("cache_pk_after");
+        ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+        changes.resourceUpdate(resource.getInternalId(), updatedResource);
+        resourceServicesInMemoryImpl.changesExecute(changes);
+        updatedResource.setInternalId(resource.getInternalId());
+        transactionResourceCache.invalidate(resource);
+        transactionResourceCache.invalidate(updatedResource);
+
+        Assert.assertEquals("cache_pk_after", ((JunitResource) transactionResourceCache.resourceFind(resource.getInternalId()).get()).getText());
+        Assert.assertFalse(transactionResourceCache.resourceFindByPk(new JunitResource("cache_pk_before")).isPresent());
+        Assert.assertEquals(resource.getInternalId(), transactionResourceCache.resourceFindByPk(new JunitResource("cache_pk_after")).get().getInternalId());
+
+    }
+
+    @Test
+    public void testInvalidate_update() {
+
+        JunitResource resource = add("cache_update");
+        fillCache(resource.getInternalId(), "cache_update");
+
+        JunitResource updatedResource = new JunitResource("cache_update");
+        updatedResource.setLongNumber(20L);
+        ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+        changes.resourceUpdate(resource.getInternalId(), updatedResource);
+        resourceServicesInMemoryImpl.changesExecute(changes);
+        updatedResource.setInternalId(resource.getInternalId());
+        transactionResourceCache.invalidate(resource);
+        transactionResourceCache.invalidate(updatedResource);
+
+        Assert.assertEquals((Long) 20L, ((JunitResource) transactionResourceCache.resourceFind(resource.getInternalId()).get()).getLongNumber());
+        Assert.assertEquals((Long) 20L, transactionResourceCache.resourceFindByPk(new JunitResource("cache_update")).get().getLongNumber());
+
+    }
+
+}
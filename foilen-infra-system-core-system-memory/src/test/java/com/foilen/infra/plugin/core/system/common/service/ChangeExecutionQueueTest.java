@@ -0,0 +1,244 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.common.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.foilen.infra.plugin.core.system.memory.junits.ResourceServicesInMemoryTests;
+import com.foilen.infra.plugin.core.system.memory.service.ResourceServicesInMemoryImpl;
+import com.foilen.infra.plugin.v1.core.context.ChangesContext;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangeExecutionHook;
+import com.foilen.infra.plugin.v1.core.eventhandler.changes.ChangesInTransactionContext;
+import com.foilen.infra.plugin.v1.core.exception.ResourceNotFoundException;
+import com.foilen.infra.plugin.v1.core.exception.ResourcePrimaryKeyCollisionException;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.infra.resource.example.JunitResource;
+import com.foilen.smalltools.exception.SmallToolsException;
+import com.foilen.smalltools.tuple.Tuple2;
+
+public class ChangeExecutionQueueTest {
+
+    /**
+     * Keeps "txId event text" for the resources of this test.
+     */
+    private static class RecordingHook implements ChangeExecutionHook {
+
+        private List<String> events = new ArrayList<>();
+
+        private synchronized void add(ChangesInTransactionContext changesInTransactionContext, IPResource resource, String event) {
+            if (resource instanceof JunitResource && ((JunitResource) resource).getText().startsWith("queue_")) {
+                events.add(changesInTransactionContext.getTxId() + " " + event + " " + ((JunitResource) resource).getText());
+            }
+        }
+
+        public synchronized List<String> getEvents() {
+            return events.stream().map(it -> it.substring(it.indexOf(' ') + 1)).collect(Collectors.toList());
+        }
+
+        public synchronized long getTransactionCount() {
+            return events.stream().map(it -> it.substring(0, it.indexOf(' '))).distinct().count();
+        }
+
+        @Override
+        public void resourceAdded(ChangesInTransactionContext changesInTransactionContext, IPResource resource) {
+            add(changesInTransactionContext, resource, "resourceAdded");
+        }
+
+        @Override
+        public void tagAdded(ChangesInTransactionContext changesInTransactionContext, IPResource resource, String tagName) {
+            add(changesInTransactionContext, resource, "tagAdded/" + tagName);
+        }
+
+        @Override
+        public void tagDeleted(ChangesInTransactionContext changesInTransactionContext, IPResource resource, String tagName) {
+            add(changesInTransactionContext, resource, "tagDeleted/" + tagName);
+        }
+
+    }
+
+    private ResourceServicesInMemoryImpl resourceServicesInMemoryImpl;
+    private ChangeExecutionQueue changeExecutionQueue;
+    private RecordingHook recordingHook;
+
+    @After
+    public void after() {
+        changeExecutionQueue.stop();
+    }
+
+    @Before
+    public void before() {
+        resourceServicesInMemoryImpl = ResourceServicesInMemoryTests.init();
+        recordingHook = new RecordingHook();
+        List<ChangeExecutionHook> hooks = new ArrayList<>(resourceServicesInMemoryImpl.getDefaultChangeExecutionHooks());
+        hooks.add(recordingHook);
+        resourceServicesInMemoryImpl.setDefaultChangeExecutionHooks(hooks);
+
+        changeExecutionQueue = new ChangeExecutionQueue();
+        changeExecutionQueue.setCommonServicesContext(resourceServicesInMemoryImpl.getCommonServicesContext());
+        changeExecutionQueue.setInternalServicesContext(resourceServicesInMemoryImpl.getInternalServicesContext());
+        changeExecutionQueue.setMergeWindowInMs(500);
+    }
+
+    private ChangesContext newChanges() {
+        return new ChangesContext(resourceServicesInMemoryImpl);
+    }
+
+    @Test(timeout = 10000)
+    public void testCoalescing() {
+
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 1; i <= 3; ++i) {
+            ChangesContext changes = newChanges();
+            changes.resourceAdd(new JunitResource("queue_" + i));
+            results.add(changeExecutionQueue.submit(changes));
+        }
+        results.forEach(it -> it.join());
+
+        Assert.assertEquals(Arrays.asList("resourceAdded queue_1", "resourceAdded queue_2", "resourceAdded queue_3"), recordingHook.getEvents());
+        Assert.assertEquals(1, recordingHook.getTransactionCount());
+        for (int i = 1; i <= 3; ++i) {
+            Assert.assertTrue(resourceServicesInMemoryImpl.resourceFindByPk(new JunitResource("queue_" + i)).isPresent());
+        }
+
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorFailsTheSubmissionAndKeepsTheWorker() {
+
+        // An Error while processing the submission
+        ChangesContext failingChanges = new ChangesContext(resourceServicesInMemoryImpl) {
+            @Override
+            public List<Tuple2<IPResource, String>> getTagsToAdd() {
+                throw new AssertionError("Failing in the worker");
+            }
+        };
+        try {
+            changeExecutionQueue.submit(failingChanges).join();
+            Assert.fail("Expecting AssertionError");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof AssertionError);
+        }
+
+        // The next ones are still executed
+        ChangesContext changes = newChanges();
+        changes.resourceAdd(new JunitResource("queue_after"));
+        changeExecutionQueue.execute(changes);
+        Assert.assertTrue(resourceServicesInMemoryImpl.resourceFindByPk(new JunitResource("queue_after")).isPresent());
+
+    }
+
+    @Test(timeout = 10000)
+    public void testFailuresArePropagatedToEachSubmitter() {
+
+        // Create one to collide with
+        ChangesContext changes = newChanges();
+        changes.resourceAdd(new JunitResource("queue_existing"));
+        changeExecutionQueue.execute(changes);
+
+        // Submit a good one and two failing ones that do not conflict (all merged)
+        ChangesContext okChanges = newChanges();
+        okChanges.resourceAdd(new JunitResource("queue_ok"));
+        ChangesContext notFoundChanges = newChanges();
+        notFoundChanges.tagAdd(new JunitResource("queue_missing"), "tag1");
+        ChangesContext collisionChanges = newChanges();
+        collisionChanges.resourceAdd(new JunitResource("queue_existing"));
+
+        CompletableFuture<Void> okResult = changeExecutionQueue.submit(okChanges);
+        CompletableFuture<Void> notFoundResult = changeExecutionQueue.submit(notFoundChanges);
+        CompletableFuture<Void> collisionResult = changeExecutionQueue.submit(collisionChanges);
+
+        // Each one gets its own result
+        okResult.join();
+        Assert.assertTrue(resourceServicesInMemoryImpl.resourceFindByPk(new JunitResource("queue_ok")).isPresent());
+        try {
+            notFoundResult.join();
+            Assert.fail("Expecting ResourceNotFoundException");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof ResourceNotFoundException);
+        }
+        try {
+            collisionResult.join();
+            Assert.fail("Expecting ResourcePrimaryKeyCollisionException");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof ResourcePrimaryKeyCollisionException);
+        }
+
+        // The synchronous call throws the failure itself
+        ChangesContext failingChanges = newChanges();
+        failingChanges.tagAdd(new JunitResource("queue_missing"), "tag1");
+        Assert.assertThrows(ResourceNotFoundException.class, () -> changeExecutionQueue.execute(failingChanges));
+
+    }
+
+    @Test(timeout = 10000)
+    public void testFifoWhenConflicting() {
+
+        JunitResource resource = new JunitResource("queue_fifo");
+
+        ChangesContext changes1 = newChanges();
+        changes1.resourceAdd(resource);
+        changes1.tagAdd(resource, "tag1");
+        ChangesContext changes2 = newChanges();
+        changes2.tagDelete(resource, "tag1");
+        ChangesContext changes3 = newChanges();
+        changes3.tagAdd(resource, "tag1");
+        changes3.tagAdd(resource, "tag2");
+
+        CompletableFuture<Void> result1 = changeExecutionQueue.submit(changes1);
+        CompletableFuture<Void> result2 = changeExecutionQueue.submit(changes2);
+        CompletableFuture<Void> result3 = changeExecutionQueue.submit(changes3);
+        result1.join();
+        result2.join();
+        result3.join();
+
+        Assert.assertEquals(Arrays.asList("resourceAdded queue_fifo", "tagAdded/tag1 queue_fifo", "tagDeleted/tag1 queue_fifo", "tagAdded/tag1 queue_fifo", "tagAdded/tag2 queue_fifo"), recordingHook.getEvents());
+        Assert.assertEquals(3, recordingHook.getTransactionCount());
+        resource = resourceServicesInMemoryImpl.resourceFindByPk(resource).get();
+        Assert.assertEquals(Arrays.asList("tag1", "tag2"), resourceServicesInMemoryImpl.tagFindAllByResource(resource).stream().sorted().collect(Collectors.toList()));
+
+    }
+
+    @Test(timeout = 10000)
+    public void testStopFailsTheSubmissionsNotExecuted() {
+
+        // Waiting in the merge window or in the queue
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 1; i <= 3; ++i) {
+            ChangesContext changes = newChanges();
+            changes.resourceAdd(new JunitResource("queue_" + i));
+            results.add(changeExecutionQueue.submit(changes));
+        }
+
+        changeExecutionQueue.stop();
+
+        for (CompletableFuture<Void> result : results) {
+            try {
+                result.join();
+                Assert.fail("Expecting SmallToolsException");
+            } catch (CompletionException e) {
+                Assert.assertTrue(e.getCause() instanceof SmallToolsException);
+            }
+        }
+        Assert.assertEquals(Collections.emptyList(), recordingHook.getEvents());
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.foilen.infra.plugin.core.system.junits.AbstractIPResourceServiceTest;
+import com.foilen.infra.plugin.core.system.memory.junits.ResourceServicesInMemoryTests;
+import com.foilen.infra.plugin.v1.core.context.ChangesContext;
+import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
+import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
+import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
+import com.foilen.infra.resource.example.JunitDynamicChangesHandler;
+import com.foilen.infra.resource.example.JunitResource;
+
+public class ResourceServicesInMemoryImplConcurrentTest extends AbstractIPResourceServiceTest {
+
+    private ResourceServicesInMemoryImpl resourceServicesInMemoryImpl;
+
+    public ResourceServicesInMemoryImplConcurrentTest() {
+        resourceServicesInMemoryImpl = ResourceServicesInMemoryTests.init();
+        resourceServicesInMemoryImpl.setComputeActionsParallelism(4);
+        resourceServicesInMemoryImpl.setExecuteActionsParallelism(4);
+    }
+
+    @After
+    public void after() {
+        resourceServicesInMemoryImpl.close();
+    }
+
+    /**
+     * Execute, in the same iteration, 2 actions that update the same resource and 2 actions that add the same resource when it is missing.
+     *
+     * @param services
+     *            the services to use
+     * @return the counter and the amount of added resources
+     */
+    private List<Long> executeConflictingActions(ResourceServicesInMemoryImpl services) {
+
+        ChangesContext changes = new ChangesContext(services);
+        JunitResource counter = new JunitResource("conflict_counter");
+        counter.setLongNumber(0L);
+        changes.resourceAdd(counter);
+        services.changesExecute(changes);
+
+        ActionHandler increment = (s, actionChanges) -> {
+            JunitResource resource = s.getResourceService().resourceFindByPk(new JunitResource("conflict_counter")).get();
+            resource.setLongNumber(resource.getLongNumber() + 1);
+            actionChanges.resourceUpdate(resource.getInternalId(), resource);
+        };
+        ActionHandler addIfMissing = (s, actionChanges) -> {
+            if (!s.getResourceService().resourceFindByPk(new JunitResource("conflict_added")).isPresent()) {
+                actionChanges.resourceAdd(new JunitResource("conflict_added"));
+            }
+        };
+        AtomicBoolean given = new AtomicBoolean();
+        JunitDynamicChangesHandler.setDynamicChangesEventHandlers(Collections.singletonList((s, changesInTransactionContext) -> {
+            if (given.getAndSet(true)) {
+                return Collections.emptyList();
+            }
+            return Arrays.asList(increment, increment, addIfMissing, addIfMissing);
+        }));
+        try {
+            changes.resourceAdd(new JunitResource("conflict_trigger"));
+            services.changesExecute(changes);
+        } finally {
+            JunitDynamicChangesHandler.setDynamicChangesEventHandlers(Collections.emptyList());
+        }
+
+        long added = services.resourceFindAll(services.createResourceQuery(JunitResource.class)).stream() //
+                .filter(it -> "conflict_added".equals(it.getText())) //
+                .count();
+        return Arrays.asList(services.resourceFindByPk(counter).get().getLongNumber(), added);
+    }
+
+    @Override
+    protected CommonServicesContext getCommonServicesContext() {
+        return resourceServicesInMemoryImpl.getCommonServicesContext();
+    }
+
+    @Override
+    protected InternalServicesContext getInternalServicesContext() {
+        return resourceServicesInMemoryImpl.getInternalServicesContext();
+    }
+
+    @Test
+    public void testClose_stillExecutesOneAfterTheOther() {
+
+        resourceServicesInMemoryImpl.close();
+        Assert.assertEquals(1, resourceServicesInMemoryImpl.getComputeActionsParallelism());
+        Assert.assertEquals(1, resourceServicesInMemoryImpl.getExecuteActionsParallelism());
+
+        Assert.assertEquals(Arrays.asList(2L, 1L), executeConflictingActions(resourceServicesInMemoryImpl));
+    }
+
+    @Test
+    public void testConflictingActions_sameResultAsSerial() {
+
+        // Executed at the same time, they all read the same state and the second ones of each pair conflict with the first ones, so they are executed again one after the other
+        List<Long> concurrentResult = executeConflictingActions(resourceServicesInMemoryImpl);
+        List<Long> serialResult = executeConflictingActions(ResourceServicesInMemoryTests.init());
+
+        Assert.assertEquals(Arrays.asList(2L, 1L), serialResult);
+        Assert.assertEquals(serialResult, concurrentResult);
+    }
+
+}
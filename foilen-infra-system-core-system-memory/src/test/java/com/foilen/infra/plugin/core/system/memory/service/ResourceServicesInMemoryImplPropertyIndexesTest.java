@@ -0,0 +1,36 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import com.foilen.infra.plugin.core.system.junits.AbstractIPResourceServiceTest;
+import com.foilen.infra.plugin.core.system.memory.junits.ResourceServicesInMemoryTests;
+import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
+import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
+
+public class ResourceServicesInMemoryImplPropertyIndexesTest extends AbstractIPResourceServiceTest {
+
+    private ResourceServicesInMemoryImpl resourceServicesInMemoryImpl;
+
+    public ResourceServicesInMemoryImplPropertyIndexesTest() {
+        resourceServicesInMemoryImpl = ResourceServicesInMemoryTests.init();
+        resourceServicesInMemoryImpl.setPropertyIndexesEnabled(true);
+    }
+
+    @Override
+    protected CommonServicesContext getCommonServicesContext() {
+        return resourceServicesInMemoryImpl.getCommonServicesContext();
+    }
+
+    @Override
+    protected InternalServicesContext getInternalServicesContext() {
+        return resourceServicesInMemoryImpl.getInternalServicesContext();
+    }
+
+}
@@ -9,16 +9,43 @@
  */
 package com.foilen.infra.plugin.core.system.memory.service;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.foilen.infra.plugin.core.system.common.changeexecution.ChangeKind;
+import com.foilen.infra.plugin.core.system.common.changeexecution.hook.ChangeExecutionMetricsHook;
+import com.foilen.infra.plugin.core.system.common.changeexecution.hook.ChangeExecutionMetricsRegistryInMemoryImpl;
+import com.foilen.infra.plugin.core.system.common.resource.ResourceDeepCopy;
+import com.foilen.infra.plugin.core.system.common.resource.ResourceStructuralEquality;
 import com.foilen.infra.plugin.core.system.junits.AbstractIPResourceServiceTest;
 import com.foilen.infra.plugin.core.system.memory.junits.ResourceServicesInMemoryTests;
+import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
+import com.foilen.infra.plugin.v1.core.exception.InfiniteUpdateLoop;
+import com.foilen.infra.resource.example.JunitResource;
+import com.foilen.infra.resource.example.JunitResourceEnum;
+import com.foilen.infra.resource.testing.controller.TestingControllerPluginDefinitionProvider;
+import com.foilen.smalltools.tools.DateTools;
+import com.foilen.smalltools.tools.JsonTools;
 
 public class ResourceServicesInMemoryImplTest extends AbstractIPResourceServiceTest {
 
+    private static List<String> sortedJson(List<?> items) {
+        return items.stream() //
+                .map(it -> JsonTools.compactPrint(it)) //
+                .sorted() //
+                .collect(Collectors.toList());
+    }
+
     private ResourceServicesInMemoryImpl resourceServicesInMemoryImpl;
 
     public ResourceServicesInMemoryImplTest() {
@@ -35,6 +62,46 @@ public class ResourceServicesInMemoryImplTest extends AbstractIPResourceServiceT
         return resourceServicesInMemoryImpl.getInternalServicesContext();
     }
 
+    @Test
+    public void testChangeExecutionMetricsHook() {
+
+        ChangeExecutionMetricsRegistryInMemoryImpl registry = new ChangeExecutionMetricsRegistryInMemoryImpl();
+        ChangeExecutionMetricsHook hook = new ChangeExecutionMetricsHook(registry);
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+        JunitResource r1 = new JunitResource("metrics_1");
+        JunitResource r2 = new JunitResource("metrics_2");
+        changes.resourceAdd(r1);
+        changes.resourceAdd(r2);
+        changes.linkAdd(r1, "link1", r2);
+        changes.tagAdd(r1, "tag1");
+        resourceServicesInMemoryImpl.changesExecute(changes, Collections.singletonList(hook));
+
+        Assert.assertEquals(1, registry.getSummary(ChangeExecutionMetricsHook.METRIC_TRANSACTION_DURATION, ChangeExecutionMetricsHook.TAG_OUTCOME, "success").getCount());
+        Assert.assertTrue(registry.getSummary(ChangeExecutionMetricsHook.METRIC_TRANSACTION_ITERATIONS, ChangeExecutionMetricsHook.TAG_OUTCOME, "success").getMax() >= 1);
+        Assert.assertTrue(registry.getSummary(ChangeExecutionMetricsHook.METRIC_APPLY_COUNT, ChangeExecutionMetricsHook.TAG_CHANGE_KIND, ChangeKind.RESOURCE_ADD.name()).getTotal() >= 2);
+        Assert.assertTrue(registry.getSummary(ChangeExecutionMetricsHook.METRIC_APPLY_COUNT, ChangeExecutionMetricsHook.TAG_CHANGE_KIND, ChangeKind.LINK_ADD.name()).getTotal() >= 1);
+        Assert.assertTrue(registry.getSummary(ChangeExecutionMetricsHook.METRIC_APPLY_COUNT, ChangeExecutionMetricsHook.TAG_CHANGE_KIND, ChangeKind.TAG_ADD.name()).getTotal() >= 1);
+        Assert.assertNotNull(registry.getSummary(ChangeExecutionMetricsHook.METRIC_ITERATION_DURATION));
+
+    }
+
+    @Test(timeout = 10000)
+    public void testInfiniteLoop_failsBeforeTheTimeout() {
+
+        resourceServicesInMemoryImpl.setInfiniteLoopTimeoutInMs(60000);
+        resourceServicesInMemoryImpl.setMaxUpdatesPerResource(500);
+        TestingControllerPluginDefinitionProvider.getInstance().getTestingControllerInfiniteLoopChangesEventHandler().setAlwaysUpdate(true);
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+        changes.resourceAdd(new JunitResource("OneToGetStarted"));
+
+        Assert.assertThrows(InfiniteUpdateLoop.class, () -> {
+            resourceServicesInMemoryImpl.changesExecute(changes);
+        });
+
+    }
+
     @Test
     public void testMatchingLike_beginning() {
         Assert.assertTrue(resourceServicesInMemoryImpl.matchingLike("%bcd", "bcd"));
@@ -60,4 +127,141 @@ public class ResourceServicesInMemoryImplTest extends AbstractIPResourceServiceT
         Assert.assertFalse(resourceServicesInMemoryImpl.matchingLike("a%c", "abtcz"));
     }
 
+    @Test
+    public void testPersistence_deletedIdsAreNotReused() throws Exception {
+
+        File directory = Files.createTempDirectory("inMemoryPersistence").toFile();
+        try {
+            ResourceServicesInMemoryImpl services = ResourceServicesInMemoryTests.init();
+            ResourcesInMemoryPersistence persistence = new ResourcesInMemoryPersistence(directory.getAbsolutePath());
+            persistence.setSnapshotAfterChangeSets(1);
+            services.setPersistence(persistence);
+
+            // Add and delete the last one, so it is not in the snapshot
+            ChangesContext changes = new ChangesContext(services);
+            changes.resourceAdd(new JunitResource("kept"));
+            changes.resourceAdd(new JunitResource("deleted"));
+            services.changesExecute(changes);
+            String deletedId = services.resourceFindByPk(new JunitResource("deleted")).get().getInternalId();
+            changes.resourceDelete(deletedId);
+            services.changesExecute(changes);
+            Assert.assertEquals(2, persistence.getGeneration());
+            persistence.close();
+
+            // The new one does not get the id of the deleted one
+            ResourceServicesInMemoryImpl reloaded = ResourceServicesInMemoryTests.init();
+            ResourcesInMemoryPersistence reloadedPersistence = new ResourcesInMemoryPersistence(directory.getAbsolutePath());
+            reloaded.setPersistence(reloadedPersistence);
+            changes = new ChangesContext(reloaded);
+            changes.resourceAdd(new JunitResource("added"));
+            reloaded.changesExecute(changes);
+            reloadedPersistence.close();
+
+            String addedId = reloaded.resourceFindByPk(new JunitResource("added")).get().getInternalId();
+            Assert.assertNotEquals(deletedId, addedId);
+            Assert.assertTrue(Long.parseLong(addedId) > Long.parseLong(deletedId));
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testPersistence_reload() throws Exception {
+
+        File directory = Files.createTempDirectory("inMemoryPersistence").toFile();
+        try {
+            ResourcesInMemoryPersistence persistence = new ResourcesInMemoryPersistence(directory.getAbsolutePath());
+            persistence.setSnapshotAfterChangeSets(3);
+            resourceServicesInMemoryImpl.setPersistence(persistence);
+
+            // Some in the snapshot and some only in the write-ahead log
+            for (int i = 0; i < 5; ++i) {
+                ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+                JunitResource r1 = new JunitResource("persisted_" + i + "_1");
+                JunitResource r2 = new JunitResource("persisted_" + i + "_2");
+                changes.resourceAdd(r1);
+                changes.resourceAdd(r2);
+                changes.linkAdd(r1, "link", r2);
+                changes.tagAdd(r1, "tag_" + i);
+                resourceServicesInMemoryImpl.changesExecute(changes);
+            }
+            ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+            changes.resourceDelete(new JunitResource("persisted_0_2"));
+            changes.tagDelete(new JunitResource("persisted_1_1"), "tag_1");
+            resourceServicesInMemoryImpl.changesExecute(changes);
+            Assert.assertEquals(1, persistence.getGeneration());
+            persistence.close();
+
+            ResourceServicesInMemoryImpl reloaded = ResourceServicesInMemoryTests.init();
+            ResourcesInMemoryPersistence reloadedPersistence = new ResourcesInMemoryPersistence(directory.getAbsolutePath());
+            reloaded.setPersistence(reloadedPersistence);
+            reloadedPersistence.close();
+
+            Assert.assertEquals(JsonTools.compactPrint(resourceServicesInMemoryImpl.getResources()), JsonTools.compactPrint(reloaded.getResources()));
+            Assert.assertEquals(sortedJson(resourceServicesInMemoryImpl.getLinks()), sortedJson(reloaded.getLinks()));
+            Assert.assertEquals(sortedJson(resourceServicesInMemoryImpl.getTags()), sortedJson(reloaded.getTags()));
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testReadersOnlySeeCommittedTransactions() throws Exception {
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger partialReads = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        Runnable reader = () -> {
+            do {
+                // Each transaction adds 2 resources
+                int count = resourceServicesInMemoryImpl.resourceFindAll(resourceServicesInMemoryImpl.createResourceQuery(JunitResource.class).tagAddAnd("concurrent")).size();
+                if (count % 2 != 0) {
+                    partialReads.incrementAndGet();
+                }
+                reads.incrementAndGet();
+            } while (writing.get());
+        };
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; ++i) {
+            readers[i] = new Thread(reader);
+            readers[i].start();
+        }
+
+        for (int i = 0; i < 50; ++i) {
+            ChangesContext changes = new ChangesContext(resourceServicesInMemoryImpl);
+            JunitResource r1 = new JunitResource("concurrent_" + i + "_1");
+            JunitResource r2 = new JunitResource("concurrent_" + i + "_2");
+            changes.resourceAdd(r1);
+            changes.resourceAdd(r2);
+            changes.tagAdd(r1, "concurrent");
+            changes.tagAdd(r2, "concurrent");
+            resourceServicesInMemoryImpl.changesExecute(changes);
+        }
+        writing.set(false);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+
+        Assert.assertTrue(reads.get() > 0);
+        Assert.assertEquals(0, partialReads.get());
+        Assert.assertEquals(100, resourceServicesInMemoryImpl.resourceFindAll(resourceServicesInMemoryImpl.createResourceQuery(JunitResource.class).tagAddAnd("concurrent")).size());
+    }
+
+    @Test
+    public void testResourceDeepCopy_sameAsJson() {
+        JunitResource resource = new JunitResource("t1_aaa", JunitResourceEnum.A, DateTools.parseFull("2000-01-01 00:00:00"), 1, 1L, 1.0, 1.0f, true, "one", "two");
+
+        JunitResource copy = ResourceDeepCopy.copy(resource);
+
+        Assert.assertNotSame(resource, copy);
+        Assert.assertEquals(JsonTools.compactPrint(JsonTools.clone(resource)), JsonTools.compactPrint(copy));
+        Assert.assertTrue(ResourceStructuralEquality.resourceEquals(resource, copy));
+    }
+
 }
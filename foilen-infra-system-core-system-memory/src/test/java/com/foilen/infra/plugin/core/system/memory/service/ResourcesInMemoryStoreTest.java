@@ -0,0 +1,80 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourcesInMemoryStoreTest {
+
+    @Test(timeout = 10000)
+    public void testAwaitNoReaders_readerThatNeverFinishes() {
+        ResourcesInMemoryStore store = new ResourcesInMemoryStore(Collections.emptyMap());
+        store.readerEnter();
+
+        Assert.assertFalse(store.awaitNoReaders(100));
+        Assert.assertTrue(store.hasReaders());
+    }
+
+    @Test(timeout = 10000)
+    public void testAwaitNoReaders_signaledByTheLastReader() throws Exception {
+        ResourcesInMemoryStore store = new ResourcesInMemoryStore(Collections.emptyMap());
+        store.readerEnter();
+        store.readerEnter();
+
+        CompletableFuture<Boolean> writer = CompletableFuture.supplyAsync(() -> store.awaitNoReaders(60000));
+        Thread.sleep(100);
+        Assert.assertFalse(writer.isDone());
+
+        store.readerExit();
+        Thread.sleep(100);
+        Assert.assertFalse(writer.isDone());
+
+        // The writer is woken up way before its timeout
+        store.readerExit();
+        Assert.assertTrue(writer.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitNoReaders_withoutReaders() {
+        ResourcesInMemoryStore store = new ResourcesInMemoryStore(Collections.emptyMap());
+        Assert.assertTrue(store.awaitNoReaders(0));
+    }
+
+    @Test
+    public void testTagsAndLinks_indexesOfDeletedResourcesAreReused() {
+        ResourcesInMemoryStore store = new ResourcesInMemoryStore(Collections.emptyMap());
+        store.tagAdd("r1", "tag1");
+        store.tagAdd("r1", "tag2");
+        store.linkAdd("r1", "USES", "r2");
+
+        // Delete r1 and use its index for r3
+        store.tagDelete("r1", "tag1");
+        store.tagDelete("r1", "tag2");
+        store.linkDelete("r1", "USES", "r2");
+        store.tagAdd("r3", "tag2");
+        store.linkAdd("r3", "USES", "r2");
+
+        Assert.assertEquals(Collections.emptySet(), store.getTagsByResourceId("r1"));
+        Assert.assertFalse(store.tagExists("r1", "tag2"));
+        Assert.assertFalse(store.linkExists("r1", "USES", "r2"));
+        Assert.assertEquals(Collections.singleton("tag2"), store.getTagsByResourceId("r3"));
+        Assert.assertEquals(Collections.emptySet(), store.resourceIdsByTags(Collections.singleton("tag1"), Collections.emptySet()));
+        Assert.assertEquals(Collections.singleton("r3"), store.resourceIdsByTags(Collections.singleton("tag2"), Collections.emptySet()));
+        Assert.assertEquals(Arrays.asList("r2"), store.getReachableResourceIds("r3", null, true, 5));
+        Assert.assertEquals(Collections.emptyList(), store.getReachableResourceIds("r1", null, true, 5));
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.memory.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringDictionaryTest {
+
+    @Test
+    public void testRemove_indexIsReused() {
+        StringDictionary dictionary = new StringDictionary();
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertEquals(i, dictionary.add("text_" + i));
+        }
+
+        // Remove half of them
+        for (int i = 0; i < 1000; i += 2) {
+            Assert.assertTrue(dictionary.remove("text_" + i));
+        }
+        Assert.assertFalse(dictionary.remove("text_0"));
+        Assert.assertEquals(500, dictionary.count());
+        Assert.assertEquals(1000, dictionary.size());
+
+        // The others are still found
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertEquals(i % 2 == 0 ? -1 : i, dictionary.indexOf("text_" + i));
+        }
+
+        // The new ones reuse the indexes
+        for (int i = 0; i < 500; ++i) {
+            int index = dictionary.add("new_" + i);
+            Assert.assertTrue(index < 1000);
+            Assert.assertEquals("new_" + i, dictionary.get(index));
+        }
+        Assert.assertEquals(1000, dictionary.count());
+        Assert.assertEquals(1000, dictionary.size());
+        for (int i = 1; i < 1000; i += 2) {
+            Assert.assertEquals(i, dictionary.indexOf("text_" + i));
+        }
+    }
+
+}
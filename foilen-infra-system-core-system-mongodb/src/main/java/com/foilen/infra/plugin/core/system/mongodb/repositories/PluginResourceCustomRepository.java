@@ -11,12 +11,14 @@ package com.foilen.infra.plugin.core.system.mongodb.repositories;
 
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.core.query.Query;
 
 import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
 import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
 import com.foilen.infra.plugin.v1.model.resource.IPResource;
 
@@ -34,4 +36,44 @@ public interface PluginResourceCustomRepository {
 
     boolean removeTagById(String resourceId, String tagName);
 
+    /**
+     * Stream the resources with a cursor instead of loading all of them. The stream must be closed.
+     *
+     * @param <T>
+     *            the type of resources
+     * @param query
+     *            the query
+     * @param batchSize
+     *            the amount of documents per batch
+     * @return the resources
+     */
+    <T extends IPResource> Stream<T> stream(IPResourceQuery<T> query, int batchSize);
+
+    /**
+     * Stream all the resources with a cursor instead of loading all of them. The stream must be closed.
+     *
+     * @param batchSize
+     *            the amount of documents per batch
+     * @return the resources
+     */
+    Stream<PluginResource> streamAll(int batchSize);
+
+    /**
+     * Compute the primary key hash of the resources that do not have it (e.g. their plugin was not loaded during the upgrade) or that have a stale one (e.g. their plugin changed its primary key).
+     * Fails with the list of the resources that have the same primary key as other ones.
+     *
+     * @param resourceDefinitions
+     *            all the resource definitions
+     */
+    void updatePkHashes(List<IPResourceDefinition> resourceDefinitions);
+
+    /**
+     * Create a partial index (filtered on the type) for the primary key and searchable properties of each resource definition that has searchable properties and drop the ones that are no longer
+     * declared. Fails without changing anything if they would not fit in the 64 indexes per collection that MongoDB allows.
+     *
+     * @param resourceDefinitions
+     *            all the resource definitions
+     */
+    void updatePropertiesIndexes(List<IPResourceDefinition> resourceDefinitions);
+
 }
@@ -11,43 +11,66 @@ package com.foilen.infra.plugin.core.system.mongodb.repositories;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Component;
 
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
 import com.foilen.infra.plugin.v1.core.exception.ProblemException;
 import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
 import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
 import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.smalltools.exception.SmallToolsException;
 import com.foilen.smalltools.tools.AbstractBasics;
 import com.foilen.smalltools.tools.CollectionsTools;
+import com.foilen.smalltools.tuple.Tuple3;
 import com.mongodb.client.result.UpdateResult;
 
 @Component
 public class PluginResourceCustomRepositoryImpl extends AbstractBasics implements PluginResourceCustomRepository {
 
+    private static final String PROPERTIES_INDEX_PREFIX = "resourceProperties_";
+
+    // MongoDB limits
+    private static final int MAX_FIELDS_PER_INDEX = 32;
+    private static final int MAX_INDEXES_PER_COLLECTION = 64;
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
     @Override
     public void addTagById(String resourceId, String tagName) {
         Query query = new Query();
-        query.addCriteria(new Criteria("id").is(resourceId));
+        query.addCriteria(new Criteria("id").is(resourceId).and("tags").ne(tagName));
         Update update = new Update();
         update.addToSet("tags", tagName);
+        update.inc("version", 1);
         mongoTemplate.updateMulti(query, update, PluginResource.class);
     }
 
@@ -57,9 +80,16 @@ public class PluginResourceCustomRepositoryImpl extends AbstractBasics implement
         });
     }
 
-    @SuppressWarnings("unchecked")
-    @Override
-    public <T extends IPResource> List<T> findAll(IPResourceQuery<T> query, Consumer<Query> queryHook) {
+    /**
+     * Create the MongoDB query.
+     *
+     * @param query
+     *            the resources query
+     * @param queryHook
+     *            a hook to change the query
+     * @return the query or null if nothing can match
+     */
+    private Query createQuery(IPResourceQuery<?> query, Consumer<Query> queryHook) {
         Query mongoQuery = new Query();
 
         List<IPResourceDefinition> resourceDefinitions = query.getResourceDefinitions();
@@ -127,7 +157,7 @@ public class PluginResourceCustomRepositoryImpl extends AbstractBasics implement
 
                 mongoQuery.addCriteria(new Criteria().andOperator(criterias));
             } else {
-                return new ArrayList<>();
+                return null;
             }
         }
 
@@ -219,6 +249,17 @@ public class PluginResourceCustomRepositoryImpl extends AbstractBasics implement
 
         logger.debug("MongoDB Query (after hook): {}", mongoQuery);
 
+        return mongoQuery;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends IPResource> List<T> findAll(IPResourceQuery<T> query, Consumer<Query> queryHook) {
+        Query mongoQuery = createQuery(query, queryHook);
+        if (mongoQuery == null) {
+            return new ArrayList<>();
+        }
+
         List<PluginResource> found = mongoTemplate.find(mongoQuery, PluginResource.class);
         return found.stream() //
                 .map(it -> {
@@ -264,11 +305,164 @@ public class PluginResourceCustomRepositoryImpl extends AbstractBasics implement
     @Override
     public boolean removeTagById(String resourceId, String tagName) {
         Query query = new Query();
-        query.addCriteria(new Criteria("id").is(resourceId));
+        query.addCriteria(new Criteria("id").is(resourceId).and("tags").is(tagName));
         Update update = new Update();
         update.pull("tags", tagName);
+        update.inc("version", 1);
         UpdateResult result = mongoTemplate.updateMulti(query, update, PluginResource.class);
         return result.getModifiedCount() > 0;
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends IPResource> Stream<T> stream(IPResourceQuery<T> query, int batchSize) {
+        Query mongoQuery = createQuery(query, q -> {
+        });
+        if (mongoQuery == null) {
+            return Stream.empty();
+        }
+
+        mongoQuery.cursorBatchSize(batchSize);
+        return mongoTemplate.stream(mongoQuery, PluginResource.class).stream() //
+                .map(it -> (T) it.getResource());
+    }
+
+    @Override
+    public Stream<PluginResource> streamAll(int batchSize) {
+        return mongoTemplate.stream(new Query().cursorBatchSize(batchSize), PluginResource.class).stream();
+    }
+
+    @Override
+    public void updatePkHashes(List<IPResourceDefinition> resourceDefinitions) {
+
+        for (IPResourceDefinition resourceDefinition : resourceDefinitions) {
+            String resourceType = resourceDefinition.getResourceType();
+
+            // Find the missing and stale ones (id, version, pkHash)
+            List<Tuple3<String, Long, String>> toUpdate = new ArrayList<>();
+            Query query = new Query(new Criteria("type").is(resourceType)).cursorBatchSize(100);
+            query.fields().include("version").include("pkHash").include("resource");
+            try (Stream<PluginResource> pluginResources = mongoTemplate.stream(query, PluginResource.class).stream()) {
+                pluginResources.forEach(pluginResource -> {
+                    String pkHash = ResourcePrimaryKey.from(resourceDefinition, pluginResource.getResource()).toHash();
+                    if (!pkHash.equals(pluginResource.getPkHash())) {
+                        toUpdate.add(new Tuple3<>(pluginResource.getId(), pluginResource.getVersion(), pkHash));
+                    }
+                });
+            }
+            if (toUpdate.isEmpty()) {
+                continue;
+            }
+
+            // Remove them all first since a stale hash can be the new hash of another resource (skip the ones that changed meanwhile since their hash was set by the change)
+            logger.info("Updating the primary key hash of {} resources of type {}", toUpdate.size(), resourceType);
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED, PluginResource.class);
+            toUpdate.forEach(next -> bulkOperations.updateOne(new Query(new Criteria("id").is(next.getA()).and("version").is(next.getB())), new Update().unset("pkHash")));
+            bulkOperations.execute();
+
+            // Set them
+            List<String> duplicates = new ArrayList<>();
+            for (Tuple3<String, Long, String> next : toUpdate) {
+                try {
+                    mongoTemplate.updateFirst(new Query(new Criteria("id").is(next.getA()).and("version").is(next.getB())), new Update().set("pkHash", next.getC()), PluginResource.class);
+                } catch (DuplicateKeyException e) {
+                    logger.error("The resource {} of type {} has the same primary key as another one", next.getA(), resourceType);
+                    duplicates.add(next.getA());
+                }
+            }
+            if (!duplicates.isEmpty()) {
+                throw new SmallToolsException("The resources " + duplicates + " of type " + resourceType
+                        + " have the same primary key as other resources and cannot be found by primary key. Remove or change the duplicates and restart");
+            }
+        }
+
+    }
+
+    @Override
+    public void updatePropertiesIndexes(List<IPResourceDefinition> resourceDefinitions) {
+
+        // Wanted: the searchable properties and then the primary key, only for the type and only for the types that are searchable (the unique index on the primary key hash is enough for the others)
+        // The searchable properties are first since a query can only use the prefix of a compound index and the searches filter on them, not on the whole primary key
+        // One index per type (instead of one per searchable property) keeps the amount of indexes under the MongoDB limit
+        Map<String, Index> wantedIndexByName = new LinkedHashMap<>();
+        for (IPResourceDefinition resourceDefinition : resourceDefinitions) {
+            if (resourceDefinition.getSearchableProperties().isEmpty()) {
+                continue;
+            }
+            List<String> propertyNames = new ArrayList<>(new TreeSet<>(resourceDefinition.getSearchableProperties()));
+            new TreeSet<>(resourceDefinition.getPrimaryKeyProperties()).stream() //
+                    .filter(it -> !propertyNames.contains(it)) //
+                    .forEach(propertyNames::add);
+
+            // A compound index can contain only one array
+            List<String> dbPropertyNames = new ArrayList<>();
+            boolean hasCollection = false;
+            for (String propertyName : propertyNames) {
+                Class<?> propertyType = resourceDefinition.getPropertyType(propertyName);
+                if (propertyType != null && Collection.class.isAssignableFrom(propertyType)) {
+                    if (hasCollection) {
+                        continue;
+                    }
+                    hasCollection = true;
+                }
+                dbPropertyNames.add("resource." + getDbPropertyName(propertyName));
+                if (dbPropertyNames.size() == MAX_FIELDS_PER_INDEX) {
+                    break;
+                }
+            }
+            if (dbPropertyNames.isEmpty()) {
+                continue;
+            }
+
+            // The name changes when the fields change
+            String resourceType = resourceDefinition.getResourceType();
+            String name = PROPERTIES_INDEX_PREFIX + resourceType + "_" + Integer.toHexString(dbPropertyNames.hashCode());
+            Index index = new Index() //
+                    .named(name) //
+                    .partial(PartialIndexFilter.of(new Criteria("type").is(resourceType)));
+            dbPropertyNames.forEach(it -> index.on(it, Direction.ASC));
+            wantedIndexByName.put(name, index);
+        }
+
+        // Check that they all fit with the other indexes before changing anything
+        IndexOperations indexOperations = mongoTemplate.indexOps(PluginResource.class);
+        List<IndexInfo> indexInfos = indexOperations.getIndexInfo();
+        long otherIndexesCount = indexInfos.stream() //
+                .filter(it -> !it.getName().startsWith(PROPERTIES_INDEX_PREFIX)) //
+                .count();
+        if (otherIndexesCount + wantedIndexByName.size() > MAX_INDEXES_PER_COLLECTION) {
+            throw new SmallToolsException("Cannot have the " + wantedIndexByName.size() + " properties indexes since there are already " + otherIndexesCount + " other indexes and MongoDB allows "
+                    + MAX_INDEXES_PER_COLLECTION + " per collection. Reduce the amount of resource types with searchable properties");
+        }
+
+        // Drop the ones that are no longer declared
+        Set<String> existingNames = new HashSet<>();
+        for (IndexInfo indexInfo : indexInfos) {
+            String name = indexInfo.getName();
+            if (!name.startsWith(PROPERTIES_INDEX_PREFIX)) {
+                continue;
+            }
+            if (wantedIndexByName.containsKey(name)) {
+                existingNames.add(name);
+            } else {
+                logger.info("Dropping the index {}", name);
+                indexOperations.dropIndex(name);
+            }
+        }
+
+        // Create the missing ones
+        wantedIndexByName.forEach((name, index) -> {
+            if (existingNames.contains(name)) {
+                return;
+            }
+            logger.info("Creating the index {} with keys {}", name, index.getIndexKeys());
+            try {
+                indexOperations.ensureIndex(index);
+            } catch (Exception e) {
+                throw new SmallToolsException("Could not create the index " + name, e);
+            }
+        });
+
+    }
+
 }
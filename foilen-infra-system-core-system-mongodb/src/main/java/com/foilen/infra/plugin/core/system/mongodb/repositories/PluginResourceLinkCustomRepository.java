@@ -0,0 +1,52 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.mongodb.repositories;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResourceLinkWithResources;
+
+public interface PluginResourceLinkCustomRepository {
+
+    /**
+     * Find the resources that can be reached by following the links with a $graphLookup.
+     *
+     * @param startResourceId
+     *            the resource to start from
+     * @param linkTypes
+     *            the link types to follow or null for all of them
+     * @param outgoing
+     *            true to go from the "from" resources to the "to" resources ; false for the other way
+     * @param maxDepth
+     *            the maximum amount of links to follow (at least 1)
+     * @param targetResourceTypes
+     *            the types of the resources to return
+     * @return the resources (only the id and the resource are filled) ordered by the depth they were first found at
+     */
+    List<PluginResource> findAllReachableResources(String startResourceId, Set<String> linkTypes, boolean outgoing, int maxDepth, List<String> targetResourceTypes);
+
+    /**
+     * Find the links and their resources in a single aggregation.
+     *
+     * @param linksCriteria
+     *            the criteria on the links
+     * @param withFrom
+     *            true to join the "from" resources
+     * @param withTo
+     *            true to join the "to" resources
+     * @return the links in the natural order
+     */
+    List<PluginResourceLinkWithResources> findAllWithResources(Criteria linksCriteria, boolean withFrom, boolean withTo);
+
+}
@@ -0,0 +1,111 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.mongodb.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators.Convert;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResourceLinkWithResources;
+import com.foilen.smalltools.tools.AbstractBasics;
+
+@Component
+public class PluginResourceLinkCustomRepositoryImpl extends AbstractBasics implements PluginResourceLinkCustomRepository {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private void addJoin(List<AggregationOperation> operations, Document projection, String side) {
+        // The links have the ids as strings while the resources have them as ObjectId
+        String resourceIdField = side + "ResourceId";
+        String objectIdField = side + "ObjectId";
+        operations.add(Aggregation.addFields() //
+                .addFieldWithValue(objectIdField, Convert.convertValueOf(resourceIdField).to("objectId").onErrorReturnValueOf(resourceIdField)) //
+                .build());
+        operations.add(Aggregation.lookup("pluginResource", objectIdField, "_id", side));
+        operations.add(Aggregation.unwind(side, true));
+
+        // Not the tags and the other search fields
+        projection.append(side + "._id", 1);
+        projection.append(side + ".resource", 1);
+    }
+
+    @Override
+    public List<PluginResource> findAllReachableResources(String startResourceId, Set<String> linkTypes, boolean outgoing, int maxDepth, List<String> targetResourceTypes) {
+
+        String fromIdField = outgoing ? "fromResourceId" : "toResourceId";
+        String toIdField = outgoing ? "toResourceId" : "fromResourceId";
+        String toTypeField = outgoing ? "toResourceType" : "fromResourceType";
+
+        // All the links from the starting resource (depth 0 is the direct links)
+        Document graphLookup = new Document("from", "pluginResourceLink") //
+                .append("startWith", new Document("$literal", startResourceId)) //
+                .append("connectFromField", toIdField) //
+                .append("connectToField", fromIdField) //
+                .append("as", "links") //
+                .append("maxDepth", maxDepth - 1) //
+                .append("depthField", "depth");
+        if (linkTypes != null) {
+            graphLookup.append("restrictSearchWithMatch", new Document("linkType", new Document("$in", linkTypes)));
+        }
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        Object startObjectId = ObjectId.isValid(startResourceId) ? new ObjectId(startResourceId) : startResourceId;
+        operations.add(context -> new Document("$match", new Document("_id", startObjectId)));
+        operations.add(context -> new Document("$graphLookup", graphLookup));
+        operations.add(context -> new Document("$unwind", "$links"));
+
+        // Keep the first depth of each wanted resource
+        operations.add(context -> new Document("$match", new Document("links." + toIdField, new Document("$ne", startResourceId)) //
+                .append("links." + toTypeField, new Document("$in", targetResourceTypes))));
+        operations.add(context -> new Document("$group", new Document("_id", "$links." + toIdField) //
+                .append("depth", new Document("$min", "$links.depth"))));
+        operations.add(context -> new Document("$sort", new Document("depth", 1).append("_id", 1)));
+
+        // Get the resources
+        operations.add(Aggregation.addFields() //
+                .addFieldWithValue("objectId", Convert.convertValueOf("_id").to("objectId").onErrorReturnValueOf("_id")) //
+                .build());
+        operations.add(Aggregation.lookup("pluginResource", "objectId", "_id", "found"));
+        operations.add(Aggregation.unwind("found"));
+        operations.add(context -> new Document("$project", new Document("_id", "$found._id").append("resource", "$found.resource")));
+
+        return mongoTemplate.aggregate(Aggregation.newAggregation(operations), "pluginResource", PluginResource.class).getMappedResults();
+    }
+
+    @Override
+    public List<PluginResourceLinkWithResources> findAllWithResources(Criteria linksCriteria, boolean withFrom, boolean withTo) {
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(linksCriteria));
+        Document projection = new Document("_id", 0).append("linkType", 1);
+        if (withFrom) {
+            addJoin(operations, projection, "from");
+        }
+        if (withTo) {
+            addJoin(operations, projection, "to");
+        }
+        operations.add(context -> new Document("$project", projection));
+
+        return mongoTemplate.aggregate(Aggregation.newAggregation(operations), "pluginResourceLink", PluginResourceLinkWithResources.class).getMappedResults();
+    }
+
+}
@@ -9,13 +9,11 @@
  */
 package com.foilen.infra.plugin.core.system.mongodb.repositories;
 
-import java.util.List;
-
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResourceLink;
 
-public interface PluginResourceLinkRepository extends MongoRepository<PluginResourceLink, String> {
+public interface PluginResourceLinkRepository extends MongoRepository<PluginResourceLink, String>, PluginResourceLinkCustomRepository {
 
     long deleteAllByFromResourceIdAndLinkTypeAndToResourceId(String fromResourceId, String linkType, String toResourceId);
 
@@ -23,18 +21,4 @@ public interface PluginResourceLinkRepository extends MongoRepository<PluginReso
 
     boolean existsByFromResourceIdAndLinkTypeAndToResourceId(String fromResourceId, String linkType, String toResourceId);
 
-    List<PluginResourceLink> findAllByFromResourceId(String fromResourceId);
-
-    List<PluginResourceLink> findAllByFromResourceIdAndLinkType(String fromResourceId, String linkType);
-
-    List<PluginResourceLink> findAllByFromResourceIdAndLinkTypeAndToResourceTypeIn(String fromResourceId, String linkType, List<String> toResourceTypes);
-
-    List<PluginResourceLink> findAllByFromResourceIdOrToResourceId(String fromResourceId, String toResourceId);
-
-    List<PluginResourceLink> findAllByFromResourceTypeInAndLinkTypeAndToResourceId(List<String> fromResourceTypes, String linkType, String toResourceId);
-
-    List<PluginResourceLink> findAllByLinkTypeAndToResourceId(String linkType, String toResourceId);
-
-    List<PluginResourceLink> findAllByToResourceId(String toResourceId);
-
 }
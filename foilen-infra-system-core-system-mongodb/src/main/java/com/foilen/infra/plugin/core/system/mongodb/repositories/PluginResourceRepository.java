@@ -9,6 +9,8 @@
  */
 package com.foilen.infra.plugin.core.system.mongodb.repositories;
 
+import java.util.Optional;
+
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
@@ -17,4 +19,6 @@ public interface PluginResourceRepository extends MongoRepository<PluginResource
 
     long deleteOneById(String id);
 
+    Optional<PluginResource> findByTypeAndPkHash(String type, String pkHash);
+
 }
@@ -16,6 +16,8 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
 import com.foilen.infra.plugin.v1.model.resource.IPResource;
 import com.foilen.smalltools.tools.AssertTools;
 
@@ -33,6 +35,7 @@ public class PluginResource {
     private String editorName;
 
     private String type;
+    private String pkHash;
 
     private IPResource resource;
 
@@ -44,8 +47,8 @@ public class PluginResource {
     public PluginResource() {
     }
 
-    public PluginResource(String resourceType, IPResource resource) {
-        store(resourceType, resource);
+    public PluginResource(IPResourceDefinition resourceDefinition, IPResource resource) {
+        store(resourceDefinition, resource);
     }
 
     public PluginResource addTag(String tagName) {
@@ -61,6 +64,10 @@ public class PluginResource {
         return id;
     }
 
+    public String getPkHash() {
+        return pkHash;
+    }
+
     public IPResource getResource() {
         resource.setInternalId(id);
         return resource;
@@ -96,6 +103,11 @@ public class PluginResource {
         return this;
     }
 
+    public PluginResource setPkHash(String pkHash) {
+        this.pkHash = pkHash;
+        return this;
+    }
+
     public PluginResource setResource(IPResource resource) {
         this.resource = resource;
         return this;
@@ -126,10 +138,11 @@ public class PluginResource {
         return this;
     }
 
-    public void store(String resourceType, IPResource resource) {
-        AssertTools.assertNotNull(resourceType, "The resourceType cannot be null");
+    public void store(IPResourceDefinition resourceDefinition, IPResource resource) {
+        AssertTools.assertNotNull(resourceDefinition, "The resourceDefinition cannot be null");
         AssertTools.assertNotNull(resource, "The resource to store cannot be null");
-        type = resourceType;
+        type = resourceDefinition.getResourceType();
+        pkHash = ResourcePrimaryKey.from(resourceDefinition, resource).toHash();
         this.resource = resource;
         this.resourceName = resource.getResourceName();
         this.resourceDescription = resource.getResourceDescription();
@@ -0,0 +1,56 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.mongodb.repositories.documents;
+
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+
+/**
+ * A link with its resources joined by the database. Only the id and the resource are filled in the plugin resources and they are null when not joined.
+ */
+public class PluginResourceLinkWithResources {
+
+    private String linkType;
+
+    private PluginResource from;
+    private PluginResource to;
+
+    public PluginResource getFrom() {
+        return from;
+    }
+
+    public IPResource getFromResource() {
+        return from == null ? null : from.getResource();
+    }
+
+    public String getLinkType() {
+        return linkType;
+    }
+
+    public PluginResource getTo() {
+        return to;
+    }
+
+    public IPResource getToResource() {
+        return to == null ? null : to.getResource();
+    }
+
+    public void setFrom(PluginResource from) {
+        this.from = from;
+    }
+
+    public void setLinkType(String linkType) {
+        this.linkType = linkType;
+    }
+
+    public void setTo(PluginResource to) {
+        this.to = to;
+    }
+
+}
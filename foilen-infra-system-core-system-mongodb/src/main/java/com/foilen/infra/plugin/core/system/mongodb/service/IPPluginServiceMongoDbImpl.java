@@ -0,0 +1,31 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.mongodb.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.foilen.infra.plugin.core.system.common.service.IPPluginServiceImpl;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.PluginResourceRepository;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+
+public class IPPluginServiceMongoDbImpl extends IPPluginServiceImpl {
+
+    @Autowired
+    private PluginResourceRepository pluginResourceRepository;
+
+    @Override
+    protected void updateResourcesColumnSearch(List<IPResourceDefinition> resourceDefinitions) {
+        pluginResourceRepository.updatePkHashes(resourceDefinitions);
+        pluginResourceRepository.updatePropertiesIndexes(resourceDefinitions);
+    }
+
+}
@@ -0,0 +1,377 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.mongodb.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResourceLink;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.mongodb.bulk.BulkWriteResult;
+
+/**
+ * Keeps the resources, links and tags changes of a transaction in memory and writes them all at the end with ordered bulk writes. The pending resources can be retrieved by id and by primary key.
+ * Any other query must {@link #flush()} first.
+ *
+ * <p>
+ * The changed resources are replaced only if their version is still the one that was read, else the flush fails with an {@link OptimisticLockingFailureException}. The tags of the resources that
+ * are not replaced are changed with atomic updates.
+ * </p>
+ */
+public class MongoDbWriteBehindBuffer extends AbstractBasics {
+
+    private static List<String> linkKey(String fromResourceId, String linkType, String toResourceId) {
+        return Arrays.asList(fromResourceId, linkType, toResourceId);
+    }
+
+    private MongoTemplate mongoTemplate;
+
+    // Resources (added, updated or with changed tags)
+    private Map<String, PluginResource> resourceById = new HashMap<>();
+    private Map<String, ResourcePrimaryKey> pkById = new HashMap<>();
+    private Map<ResourcePrimaryKey, String> idByPk = new HashMap<>();
+    private Set<String> addedResourceIds = new LinkedHashSet<>();
+    private Set<String> updatedResourceIds = new LinkedHashSet<>();
+    private Set<String> deletedResourceIds = new LinkedHashSet<>();
+
+    // Tags of the resources that are not added or updated
+    private Map<String, Set<String>> addedTagsById = new LinkedHashMap<>();
+    private Map<String, Set<String>> deletedTagsById = new LinkedHashMap<>();
+
+    // Links
+    private Map<List<String>, PluginResourceLink> addedLinks = new LinkedHashMap<>();
+    private Set<List<String>> deletedLinks = new LinkedHashSet<>();
+
+    public MongoDbWriteBehindBuffer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public void clear() {
+        resourceById.clear();
+        pkById.clear();
+        idByPk.clear();
+        addedResourceIds.clear();
+        updatedResourceIds.clear();
+        deletedResourceIds.clear();
+        addedTagsById.clear();
+        deletedTagsById.clear();
+        addedLinks.clear();
+        deletedLinks.clear();
+    }
+
+    /**
+     * Write everything that is pending.
+     */
+    public void flush() {
+
+        if (isEmpty()) {
+            return;
+        }
+
+        logger.debug("Flushing {} added resources, {} updated resources, {} deleted resources, {} resources with changed tags, {} added links and {} deleted links", //
+                addedResourceIds.size(), updatedResourceIds.size(), deletedResourceIds.size(), resourceById.size() - addedResourceIds.size() - updatedResourceIds.size(), addedLinks.size(),
+                deletedLinks.size());
+
+        // Resources
+        if (!resourceById.isEmpty() || !deletedResourceIds.isEmpty()) {
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.ORDERED, PluginResource.class);
+            int expectedMatchedCount = 0;
+
+            // Removing the primary keys of the updated resources and deleting the resources first to free the primary keys before they are reused (unique index ; e.g. swapped)
+            for (String id : updatedResourceIds) {
+                bulkOperations.updateOne(new Query(new Criteria("id").is(id).and("version").is(resourceById.get(id).getVersion())), new Update().unset("pkHash"));
+                ++expectedMatchedCount;
+            }
+            for (String id : deletedResourceIds) {
+                bulkOperations.remove(new Query(new Criteria("id").is(id)));
+            }
+
+            // Replacing the updated resources if they are still at the version that was read
+            for (String id : updatedResourceIds) {
+                PluginResource pluginResource = resourceById.get(id);
+                long version = pluginResource.getVersion();
+                pluginResource.setVersion(version + 1);
+                bulkOperations.replaceOne(new Query(new Criteria("id").is(id).and("version").is(version)), pluginResource);
+                ++expectedMatchedCount;
+            }
+
+            // Changing the tags of the other resources
+            for (Entry<String, Set<String>> entry : addedTagsById.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    bulkOperations.updateOne(new Query(new Criteria("id").is(entry.getKey())), new Update().addToSet("tags").each(entry.getValue().toArray()).inc("version", 1));
+                    ++expectedMatchedCount;
+                }
+            }
+            for (Entry<String, Set<String>> entry : deletedTagsById.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    bulkOperations.updateOne(new Query(new Criteria("id").is(entry.getKey())), new Update().pullAll("tags", entry.getValue().toArray()).inc("version", 1));
+                    ++expectedMatchedCount;
+                }
+            }
+
+            // Adding
+            for (String id : addedResourceIds) {
+                bulkOperations.insert(resourceById.get(id));
+            }
+
+            BulkWriteResult result = bulkOperations.execute();
+            if (result.getMatchedCount() < expectedMatchedCount) {
+                throw new OptimisticLockingFailureException(
+                        "Some resources were modified or deleted by another transaction. Expected to change " + expectedMatchedCount + " documents, but " + result.getMatchedCount() + " matched");
+            }
+        }
+
+        // Links
+        if (!deletedResourceIds.isEmpty() || !deletedLinks.isEmpty() || !addedLinks.isEmpty()) {
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.ORDERED, PluginResourceLink.class);
+            if (!deletedResourceIds.isEmpty()) {
+                bulkOperations.remove(new Query(new Criteria().orOperator( //
+                        new Criteria("fromResourceId").in(deletedResourceIds), //
+                        new Criteria("toResourceId").in(deletedResourceIds))));
+            }
+            for (List<String> link : deletedLinks) {
+                bulkOperations.remove(new Query(new Criteria("fromResourceId").is(link.get(0)) //
+                        .and("linkType").is(link.get(1)) //
+                        .and("toResourceId").is(link.get(2))));
+            }
+            for (PluginResourceLink link : addedLinks.values()) {
+                bulkOperations.insert(link);
+            }
+            bulkOperations.execute();
+        }
+
+        clear();
+    }
+
+    /**
+     * Get the pending resource.
+     *
+     * @param id
+     *            the id of the resource
+     * @return the resource if it was added, updated or had its tags changed in this transaction or null if it is not in the buffer (might be in the database or deleted)
+     */
+    public PluginResource getResource(String id) {
+        return resourceById.get(id);
+    }
+
+    /**
+     * Get the id of the pending resource with that primary key.
+     *
+     * @param pk
+     *            the primary key
+     * @return the id or null if no pending resource has that primary key
+     */
+    public String getResourceIdByPk(ResourcePrimaryKey pk) {
+        return idByPk.get(pk);
+    }
+
+    public boolean isEmpty() {
+        return resourceById.isEmpty() && deletedResourceIds.isEmpty() && addedLinks.isEmpty() && deletedLinks.isEmpty();
+    }
+
+    public boolean isResourceDeleted(String id) {
+        return deletedResourceIds.contains(id);
+    }
+
+    /**
+     * Tells if the resource was added, updated or had its tags changed in this transaction, in which case the database version must be ignored.
+     *
+     * @param id
+     *            the id of the resource
+     * @return true if the buffer has a newer version or if it is deleted
+     */
+    public boolean isResourceOverridden(String id) {
+        return resourceById.containsKey(id) || deletedResourceIds.contains(id);
+    }
+
+    public void linkAdd(PluginResourceLink link) {
+        List<String> key = linkKey(link.getFromResourceId(), link.getLinkType(), link.getToResourceId());
+        if (!deletedLinks.remove(key)) {
+            addedLinks.put(key, link);
+        }
+    }
+
+    /**
+     * Delete a link.
+     *
+     * @param fromResourceId
+     *            the from resource id
+     * @param linkType
+     *            the link type
+     * @param toResourceId
+     *            the to resource id
+     * @param existsInDatabase
+     *            to check if it exists in the database
+     * @return true if it existed
+     */
+    public boolean linkDelete(String fromResourceId, String linkType, String toResourceId, Supplier<Boolean> existsInDatabase) {
+        List<String> key = linkKey(fromResourceId, linkType, toResourceId);
+        if (addedLinks.remove(key) != null) {
+            return true;
+        }
+        if (deletedLinks.contains(key) || deletedResourceIds.contains(fromResourceId) || deletedResourceIds.contains(toResourceId)) {
+            return false;
+        }
+        if (existsInDatabase.get()) {
+            deletedLinks.add(key);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean linkExists(String fromResourceId, String linkType, String toResourceId, Supplier<Boolean> existsInDatabase) {
+        if (deletedResourceIds.contains(fromResourceId) || deletedResourceIds.contains(toResourceId)) {
+            return false;
+        }
+        List<String> key = linkKey(fromResourceId, linkType, toResourceId);
+        if (addedLinks.containsKey(key)) {
+            return true;
+        }
+        if (deletedLinks.contains(key)) {
+            return false;
+        }
+        return existsInDatabase.get();
+    }
+
+    /**
+     * Keep a new resource.
+     *
+     * @param pluginResource
+     *            the resource with its id and its initial version
+     * @param pk
+     *            its primary key
+     */
+    public void resourceAdd(PluginResource pluginResource, ResourcePrimaryKey pk) {
+        addedResourceIds.add(pluginResource.getId());
+        resourceKeep(pluginResource, pk);
+    }
+
+    /**
+     * Delete a resource and all its links.
+     *
+     * @param id
+     *            the id of the resource
+     */
+    public void resourceDelete(String id) {
+        resourceById.remove(id);
+        ResourcePrimaryKey pk = pkById.remove(id);
+        if (pk != null && id.equals(idByPk.get(pk))) {
+            idByPk.remove(pk);
+        }
+        updatedResourceIds.remove(id);
+        addedTagsById.remove(id);
+        deletedTagsById.remove(id);
+        if (!addedResourceIds.remove(id)) {
+            deletedResourceIds.add(id);
+        }
+
+        addedLinks.keySet().removeIf(it -> id.equals(it.get(0)) || id.equals(it.get(2)));
+    }
+
+    private void resourceKeep(PluginResource pluginResource, ResourcePrimaryKey pk) {
+        String id = pluginResource.getId();
+        resourceById.put(id, pluginResource);
+        ResourcePrimaryKey previousPk = pkById.put(id, pk);
+        if (previousPk != null && id.equals(idByPk.get(previousPk))) {
+            idByPk.remove(previousPk);
+        }
+        idByPk.put(pk, id);
+    }
+
+    /**
+     * Keep a resource that has a new content. It will be replaced completely (with its tags).
+     *
+     * @param pluginResource
+     *            the resource with the version that was read
+     * @param pk
+     *            its primary key
+     */
+    public void resourceUpdate(PluginResource pluginResource, ResourcePrimaryKey pk) {
+        String id = pluginResource.getId();
+        if (!addedResourceIds.contains(id)) {
+            updatedResourceIds.add(id);
+        }
+        addedTagsById.remove(id);
+        deletedTagsById.remove(id);
+        resourceKeep(pluginResource, pk);
+    }
+
+    /**
+     * Add a tag on a resource.
+     *
+     * @param pluginResource
+     *            the current resource
+     * @param pk
+     *            its primary key
+     * @param tagName
+     *            the tag
+     */
+    public void tagAdd(PluginResource pluginResource, ResourcePrimaryKey pk, String tagName) {
+        if (!pluginResource.getTags().add(tagName)) {
+            return;
+        }
+        resourceKeep(pluginResource, pk);
+
+        String id = pluginResource.getId();
+        if (addedResourceIds.contains(id) || updatedResourceIds.contains(id)) {
+            return;
+        }
+        Set<String> deletedTags = deletedTagsById.get(id);
+        if (deletedTags == null || !deletedTags.remove(tagName)) {
+            addedTagsById.computeIfAbsent(id, it -> new LinkedHashSet<>()).add(tagName);
+        }
+    }
+
+    /**
+     * Delete a tag on a resource.
+     *
+     * @param pluginResource
+     *            the current resource
+     * @param pk
+     *            its primary key
+     * @param tagName
+     *            the tag
+     * @return true if it was present
+     */
+    public boolean tagDelete(PluginResource pluginResource, ResourcePrimaryKey pk, String tagName) {
+        if (!pluginResource.getTags().remove(tagName)) {
+            return false;
+        }
+        resourceKeep(pluginResource, pk);
+
+        String id = pluginResource.getId();
+        if (addedResourceIds.contains(id) || updatedResourceIds.contains(id)) {
+            return true;
+        }
+        Set<String> addedTags = addedTagsById.get(id);
+        if (addedTags == null || !addedTags.remove(tagName)) {
+            deletedTagsById.computeIfAbsent(id, it -> new LinkedHashSet<>()).add(tagName);
+        }
+        return true;
+    }
+
+}
@@ -11,24 +11,32 @@ package com.foilen.infra.plugin.core.system.mongodb.service;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.Stream;
 
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Example;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.foilen.infra.plugin.core.system.common.changeexecution.ChangeExecutionLogic;
+import com.foilen.infra.plugin.core.system.common.resource.ResourceDeepCopy;
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.core.system.common.service.ResourceGraphService;
+import com.foilen.infra.plugin.core.system.common.service.ResourceStreamingService;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.PluginResourceLinkRepository;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.PluginResourceRepository;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResourceLink;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResourceLinkWithResources;
 import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
@@ -47,7 +55,7 @@ import com.foilen.smalltools.tuple.Tuple2;
 import com.foilen.smalltools.tuple.Tuple3;
 
 @Transactional
-public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPResourceService, InternalIPResourceService, InternalChangeService {
+public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPResourceService, InternalIPResourceService, InternalChangeService, ResourceGraphService, ResourceStreamingService {
 
     @Autowired
     private CommonServicesContext commonServicesContext;
@@ -59,26 +67,53 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
     private PluginResourceLinkRepository pluginResourceLinkRepository;
     @Autowired
     private ResourceDefinitionService resourceDefinitionService;
+    @Autowired
+    private MongoTemplate mongoTemplate;
 
     private long infiniteLoopTimeoutInMs = 15000;
+    private int maxIdenticalIterations = 3;
+    private int maxUpdatesPerResource = 0;
+    private int streamBatchSize = 500;
+
+    private boolean writeBehind = true;
+    private ThreadLocal<MongoDbWriteBehindBuffer> writeBehindBuffer = new ThreadLocal<>();
 
     private List<ChangeExecutionHook> defaultChangeExecutionHooks = new ArrayList<>();
 
     @Override
     public void changesExecute(ChangesContext changes) {
-        ChangeExecutionLogic changeExecutionLogic = new ChangeExecutionLogic(commonServicesContext, internalServicesContext);
-        changeExecutionLogic.setInfiniteLoopTimeoutInMs(infiniteLoopTimeoutInMs);
-        defaultChangeExecutionHooks.forEach(hook -> changeExecutionLogic.addHook(hook));
-        changeExecutionLogic.execute(changes);
+        changesExecute(changes, Collections.emptyList());
     }
 
     @Override
     public void changesExecute(ChangesContext changes, List<ChangeExecutionHook> extraChangeExecutionHooks) {
         ChangeExecutionLogic changeExecutionLogic = new ChangeExecutionLogic(commonServicesContext, internalServicesContext);
         changeExecutionLogic.setInfiniteLoopTimeoutInMs(infiniteLoopTimeoutInMs);
+        changeExecutionLogic.setMaxIdenticalIterations(maxIdenticalIterations);
+        changeExecutionLogic.setMaxUpdatesPerResource(maxUpdatesPerResource);
         defaultChangeExecutionHooks.forEach(hook -> changeExecutionLogic.addHook(hook));
         extraChangeExecutionHooks.forEach(hook -> changeExecutionLogic.addHook(hook));
-        changeExecutionLogic.execute(changes);
+
+        if (!writeBehind || writeBehindBuffer.get() != null) {
+            changeExecutionLogic.execute(changes);
+            return;
+        }
+
+        // Keep all the writes until the end
+        MongoDbWriteBehindBuffer buffer = new MongoDbWriteBehindBuffer(mongoTemplate);
+        writeBehindBuffer.set(buffer);
+        try {
+            changeExecutionLogic.execute(changes);
+            buffer.flush();
+        } finally {
+            writeBehindBuffer.remove();
+        }
+    }
+
+    private IPResource copy(IPResource resource) {
+        IPResource copy = ResourceDeepCopy.copy(resource);
+        copy.setInternalId(resource.getInternalId());
+        return copy;
     }
 
     @Override
@@ -102,6 +137,27 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         return (IPResourceQuery<T>) createResourceQuery(resourceDefinition.getResourceClass());
     }
 
+    private Optional<PluginResource> findPluginResource(String id) {
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null) {
+            if (buffer.isResourceDeleted(id)) {
+                return Optional.empty();
+            }
+            PluginResource pluginResource = buffer.getResource(id);
+            if (pluginResource != null) {
+                return Optional.of(pluginResource);
+            }
+        }
+        return pluginResourceRepository.findById(id);
+    }
+
+    private void flushWriteBehind() {
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null) {
+            buffer.flush();
+        }
+    }
+
     @Override
     public List<ChangeExecutionHook> getDefaultChangeExecutionHooks() {
         return defaultChangeExecutionHooks;
@@ -111,6 +167,18 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         return infiniteLoopTimeoutInMs;
     }
 
+    public int getMaxIdenticalIterations() {
+        return maxIdenticalIterations;
+    }
+
+    public int getMaxUpdatesPerResource() {
+        return maxUpdatesPerResource;
+    }
+
+    private ResourcePrimaryKey getPk(IPResource resource) {
+        return ResourcePrimaryKey.from(getResourceDefinition(resource), resource);
+    }
+
     @Override
     public IPResourceDefinition getResourceDefinition(Class<? extends IPResource> resourceClass) {
         return resourceDefinitionService.getResourceDefinition(resourceClass);
@@ -131,20 +199,44 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         return resourceDefinitionService.getResourceDefinitions();
     }
 
+    public int getStreamBatchSize() {
+        return streamBatchSize;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
     @Override
     public void linkAdd(String fromResourceId, String linkType, String toResourceId) {
-        String fromResourceType = pluginResourceRepository.findById(fromResourceId).get().getType();
-        String toResourceType = pluginResourceRepository.findById(toResourceId).get().getType();
-        pluginResourceLinkRepository.save(new PluginResourceLink(fromResourceId, fromResourceType, linkType, toResourceId, toResourceType));
+        String fromResourceType = findPluginResource(fromResourceId).get().getType();
+        String toResourceType = findPluginResource(toResourceId).get().getType();
+        PluginResourceLink pluginResourceLink = new PluginResourceLink(fromResourceId, fromResourceType, linkType, toResourceId, toResourceType);
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer == null) {
+            pluginResourceLinkRepository.save(pluginResourceLink);
+        } else {
+            buffer.linkAdd(pluginResourceLink);
+        }
     }
 
     @Override
     public boolean linkDelete(String fromResourceId, String linkType, String toResourceId) {
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null) {
+            return buffer.linkDelete(fromResourceId, linkType, toResourceId,
+                    () -> pluginResourceLinkRepository.existsByFromResourceIdAndLinkTypeAndToResourceId(fromResourceId, linkType, toResourceId));
+        }
         return pluginResourceLinkRepository.deleteAllByFromResourceIdAndLinkTypeAndToResourceId(fromResourceId, linkType, toResourceId) > 0;
     }
 
     @Override
     public boolean linkExists(String fromResourceId, String linkType, String toResourceId) {
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null) {
+            return buffer.linkExists(fromResourceId, linkType, toResourceId,
+                    () -> pluginResourceLinkRepository.existsByFromResourceIdAndLinkTypeAndToResourceId(fromResourceId, linkType, toResourceId));
+        }
         return pluginResourceLinkRepository.existsByFromResourceIdAndLinkTypeAndToResourceId(fromResourceId, linkType, toResourceId);
     }
 
@@ -158,7 +250,7 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         if (toInternalId == null) {
             return false;
         }
-        return pluginResourceLinkRepository.existsByFromResourceIdAndLinkTypeAndToResourceId(fromInternalId, linkType, toInternalId);
+        return linkExists(fromInternalId, linkType, toInternalId);
     }
 
     @Override
@@ -172,12 +264,9 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
 
     @Override
     public List<Tuple2<String, ? extends IPResource>> linkFindAllByFromResource(String fromResourceId) {
-        List<PluginResourceLink> resourceLinks = pluginResourceLinkRepository.findAllByFromResourceId(fromResourceId);
-        Iterable<PluginResource> toResources = pluginResourceRepository.findAllById(resourceLinks.stream().map(PluginResourceLink::getToResourceId).sorted().distinct().collect(Collectors.toList()));
-        Map<String, IPResource> resourceByInternalId = StreamSupport.stream(toResources.spliterator(), false) //
-                .collect(Collectors.toMap(PluginResource::getId, PluginResource::getResource));
-        return resourceLinks.stream() //
-                .map(it -> new Tuple2<>(it.getLinkType(), resourceByInternalId.get(it.getToResourceId()))) //
+        flushWriteBehind();
+        return pluginResourceLinkRepository.findAllWithResources(new Criteria("fromResourceId").is(fromResourceId), false, true).stream() //
+                .map(it -> new Tuple2<>(it.getLinkType(), it.getToResource())) //
                 .collect(Collectors.toList());
     }
 
@@ -188,12 +277,9 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
             return Collections.emptyList();
         }
 
-        List<PluginResourceLink> resourceLinks = pluginResourceLinkRepository.findAllByFromResourceIdAndLinkType(fromResourceId, linkType);
-        Iterable<PluginResource> toResources = pluginResourceRepository.findAllById(resourceLinks.stream().map(PluginResourceLink::getToResourceId).sorted().distinct().collect(Collectors.toList()));
-        Map<String, IPResource> resourceByInternalId = StreamSupport.stream(toResources.spliterator(), false) //
-                .collect(Collectors.toMap(PluginResource::getId, PluginResource::getResource));
-        return resourceLinks.stream() //
-                .map(it -> resourceByInternalId.get(it.getToResourceId())) //
+        flushWriteBehind();
+        return pluginResourceLinkRepository.findAllWithResources(new Criteria("fromResourceId").is(fromResourceId).and("linkType").is(linkType), false, true).stream() //
+                .map(PluginResourceLinkWithResources::getToResource) //
                 .collect(Collectors.toList());
     }
 
@@ -206,12 +292,10 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         }
         List<IPResourceDefinition> ipResourceDefinitions = resourceDefinitionService.getResourceDefinitions(toResourceClass);
         List<String> toResourceTypes = ipResourceDefinitions.stream().map(IPResourceDefinition::getResourceType).collect(Collectors.toList());
-        List<PluginResourceLink> resourceLinks = pluginResourceLinkRepository.findAllByFromResourceIdAndLinkTypeAndToResourceTypeIn(fromInternalId, linkType, toResourceTypes);
-        Iterable<PluginResource> toResources = pluginResourceRepository.findAllById(resourceLinks.stream().map(PluginResourceLink::getToResourceId).sorted().distinct().collect(Collectors.toList()));
-        Map<String, IPResource> resourceByInternalId = StreamSupport.stream(toResources.spliterator(), false) //
-                .collect(Collectors.toMap(PluginResource::getId, PluginResource::getResource));
-        return resourceLinks.stream() //
-                .map(it -> (R) resourceByInternalId.get(it.getToResourceId())) //
+        flushWriteBehind();
+        Criteria criteria = new Criteria("fromResourceId").is(fromInternalId).and("linkType").is(linkType).and("toResourceType").in(toResourceTypes);
+        return pluginResourceLinkRepository.findAllWithResources(criteria, false, true).stream() //
+                .map(it -> (R) it.getToResource()) //
                 .collect(Collectors.toList());
     }
 
@@ -224,13 +308,10 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         }
         List<IPResourceDefinition> ipResourceDefinitions = resourceDefinitionService.getResourceDefinitions(fromResourceClass);
         List<String> fromResourceTypes = ipResourceDefinitions.stream().map(IPResourceDefinition::getResourceType).collect(Collectors.toList());
-        List<PluginResourceLink> resourceLinks = pluginResourceLinkRepository.findAllByFromResourceTypeInAndLinkTypeAndToResourceId(fromResourceTypes, linkType, toInternalId);
-        Iterable<PluginResource> fromResources = pluginResourceRepository
-                .findAllById(resourceLinks.stream().map(PluginResourceLink::getFromResourceId).sorted().distinct().collect(Collectors.toList()));
-        Map<String, IPResource> resourceByInternalId = StreamSupport.stream(fromResources.spliterator(), false) //
-                .collect(Collectors.toMap(PluginResource::getId, PluginResource::getResource));
-        return resourceLinks.stream() //
-                .map(it -> (R) resourceByInternalId.get(it.getFromResourceId())) //
+        flushWriteBehind();
+        Criteria criteria = new Criteria("fromResourceType").in(fromResourceTypes).and("linkType").is(linkType).and("toResourceId").is(toInternalId);
+        return pluginResourceLinkRepository.findAllWithResources(criteria, true, false).stream() //
+                .map(it -> (R) it.getFromResource()) //
                 .collect(Collectors.toList());
     }
 
@@ -241,13 +322,9 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
             return Collections.emptyList();
         }
 
-        List<PluginResourceLink> resourceLinks = pluginResourceLinkRepository.findAllByLinkTypeAndToResourceId(linkType, toResourceId);
-        Iterable<PluginResource> fromResources = pluginResourceRepository
-                .findAllById(resourceLinks.stream().map(PluginResourceLink::getFromResourceId).sorted().distinct().collect(Collectors.toList()));
-        Map<String, IPResource> resourceByInternalId = StreamSupport.stream(fromResources.spliterator(), false) //
-                .collect(Collectors.toMap(PluginResource::getId, PluginResource::getResource));
-        return resourceLinks.stream() //
-                .map(it -> resourceByInternalId.get(it.getFromResourceId())) //
+        flushWriteBehind();
+        return pluginResourceLinkRepository.findAllWithResources(new Criteria("linkType").is(linkType).and("toResourceId").is(toResourceId), true, false).stream() //
+                .map(PluginResourceLinkWithResources::getFromResource) //
                 .collect(Collectors.toList());
     }
 
@@ -262,13 +339,24 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
 
     @Override
     public List<Tuple2<? extends IPResource, String>> linkFindAllByToResource(String toResourceId) {
-        List<PluginResourceLink> resourceLinks = pluginResourceLinkRepository.findAllByToResourceId(toResourceId);
-        Iterable<PluginResource> fromResources = pluginResourceRepository
-                .findAllById(resourceLinks.stream().map(PluginResourceLink::getFromResourceId).sorted().distinct().collect(Collectors.toList()));
-        Map<String, IPResource> resourceByInternalId = StreamSupport.stream(fromResources.spliterator(), false) //
-                .collect(Collectors.toMap(PluginResource::getId, PluginResource::getResource));
-        return resourceLinks.stream() //
-                .map(it -> new Tuple2<>(resourceByInternalId.get(it.getFromResourceId()), it.getLinkType())) //
+        flushWriteBehind();
+        return pluginResourceLinkRepository.findAllWithResources(new Criteria("toResourceId").is(toResourceId), true, false).stream() //
+                .map(it -> new Tuple2<>(it.getFromResource(), it.getLinkType())) //
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <R extends IPResource> List<R> linkFindAllReachable(IPResource startResource, Set<String> linkTypes, LinkDirection direction, int maxDepth, Class<R> targetResourceClass) {
+        String startInternalId = resourceFindIdByPk(startResource);
+        if (startInternalId == null || maxDepth < 1) {
+            return Collections.emptyList();
+        }
+        List<IPResourceDefinition> ipResourceDefinitions = resourceDefinitionService.getResourceDefinitions(targetResourceClass);
+        List<String> targetResourceTypes = ipResourceDefinitions.stream().map(IPResourceDefinition::getResourceType).collect(Collectors.toList());
+        flushWriteBehind();
+        return pluginResourceLinkRepository.findAllReachableResources(startInternalId, linkTypes, direction == LinkDirection.OUTGOING, maxDepth, targetResourceTypes).stream() //
+                .map(it -> (R) it.getResource()) //
                 .collect(Collectors.toList());
     }
 
@@ -283,23 +371,30 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
 
     @Override
     public List<Tuple3<IPResource, String, IPResource>> linkFindAllRelatedByResource(String internalResourceId) {
-        List<PluginResourceLink> resourceLinks = pluginResourceLinkRepository.findAllByFromResourceIdOrToResourceId(internalResourceId, internalResourceId);
-
-        Iterable<PluginResource> resources = pluginResourceRepository
-                .findAllById(resourceLinks.stream().flatMap(it -> Arrays.asList(it.getFromResourceId(), it.getToResourceId()).stream()).sorted().distinct().collect(Collectors.toList()));
-        Map<String, IPResource> resourceByInternalId = StreamSupport.stream(resources.spliterator(), false) //
-                .collect(Collectors.toMap(PluginResource::getId, PluginResource::getResource));
-
-        return resourceLinks.stream() //
-                .map(it -> new Tuple3<>(resourceByInternalId.get(it.getFromResourceId()), it.getLinkType(), resourceByInternalId.get(it.getToResourceId()))) //
+        flushWriteBehind();
+        Criteria criteria = new Criteria().orOperator( //
+                new Criteria("fromResourceId").is(internalResourceId), //
+                new Criteria("toResourceId").is(internalResourceId));
+        return pluginResourceLinkRepository.findAllWithResources(criteria, true, true).stream() //
+                .map(it -> new Tuple3<>(it.getFromResource(), it.getLinkType(), it.getToResource())) //
                 .collect(Collectors.toList());
     }
 
     @Override
     public IPResource resourceAdd(IPResource resource) {
-        String resourceType = resourceDefinitionService.getResourceDefinition(resource).getResourceType();
-        PluginResource pluginResource = pluginResourceRepository.save(new PluginResource(resourceType, resource));
-        resource.setInternalId(pluginResource.getId());
+        IPResourceDefinition resourceDefinition = resourceDefinitionService.getResourceDefinition(resource);
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer == null) {
+            PluginResource pluginResource = pluginResourceRepository.save(new PluginResource(resourceDefinition, resource));
+            resource.setInternalId(pluginResource.getId());
+        } else {
+            // Versioned like a document inserted by the repository
+            PluginResource pluginResource = new PluginResource(resourceDefinition, copy(resource)) //
+                    .setId(new ObjectId().toHexString()) //
+                    .setVersion(1);
+            buffer.resourceAdd(pluginResource, getPk(resource));
+            resource.setInternalId(pluginResource.getId());
+        }
         return resource;
     }
 
@@ -310,6 +405,15 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
 
     @Override
     public boolean resourceDelete(String resourceId) {
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null) {
+            boolean exists = buffer.getResource(resourceId) != null || (!buffer.isResourceDeleted(resourceId) && pluginResourceRepository.existsById(resourceId));
+            if (exists) {
+                buffer.resourceDelete(resourceId);
+            }
+            return exists;
+        }
+
         pluginResourceLinkRepository.deleteAllByFromResourceIdOrToResourceId(resourceId, resourceId);
         return pluginResourceRepository.deleteOneById(resourceId) > 0;
     }
@@ -374,17 +478,22 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
 
     @Override
     public Optional<IPResource> resourceFind(String internalResourceId) {
-        Optional<PluginResource> pluginResourceOptional = pluginResourceRepository.findById(internalResourceId);
+        Optional<PluginResource> pluginResourceOptional = findPluginResource(internalResourceId);
         if (pluginResourceOptional.isEmpty()) {
             return Optional.empty();
         }
         PluginResource pluginResource = pluginResourceOptional.get();
         IPResource resource = pluginResource.getResource();
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null && buffer.getResource(internalResourceId) != null) {
+            resource = copy(resource);
+        }
         return Optional.of(resource);
     }
 
     @Override
     public List<? extends IPResource> resourceFindAll() {
+        flushWriteBehind();
         return pluginResourceRepository.findAll().stream() //
                 .map(it -> it.getResource()) //
                 .collect(Collectors.toList());
@@ -392,14 +501,33 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
 
     @Override
     public <T extends IPResource> List<T> resourceFindAll(IPResourceQuery<T> query) {
+        flushWriteBehind();
         return pluginResourceRepository.findAll(query);
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public <R extends IPResource> Optional<R> resourceFindByPk(R resource) {
-        return resourceFind(createResourceQuery((Class<R>) resource.getClass()) //
-                .primaryKeyEquals(resource));
+        IPResourceDefinition resourceDefinition = getResourceDefinition(resource);
+        if (resourceDefinition == null) {
+            throw new SmallToolsException("Resource class " + resource.getClass().getName() + " is unknown");
+        }
+        ResourcePrimaryKey pk = ResourcePrimaryKey.from(resourceDefinition, resource);
+
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null) {
+            // Pending
+            String pendingId = buffer.getResourceIdByPk(pk);
+            if (pendingId != null) {
+                return Optional.of((R) copy(buffer.getResource(pendingId).getResource()));
+            }
+        }
+
+        // In the database if not changed (the unique index on the type and the primary key hash makes it a single point read ; the primary key is checked in case of a hash collision)
+        return pluginResourceRepository.findByTypeAndPkHash(resourceDefinition.getResourceType(), pk.toHash()) //
+                .filter(it -> buffer == null || !buffer.isResourceOverridden(it.getId())) //
+                .filter(it -> pk.equals(ResourcePrimaryKey.from(resourceDefinition, it.getResource()))) //
+                .map(it -> (R) it.getResource());
     }
 
     private String resourceFindIdByPk(IPResource resource) {
@@ -418,17 +546,53 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         return null;
     }
 
+    /**
+     * Stream all the resources. Does not start a transaction since the cursor is read after this method returns and must not be bound to a session that is already closed. When called in a
+     * transaction (e.g. in a change execution), it joins it and the stream must be consumed before that transaction ends. The caller must close the stream.
+     *
+     * @return the resources
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Stream<? extends IPResource> resourceStreamAll() {
+        flushWriteBehind();
+        return pluginResourceRepository.streamAll(streamBatchSize) //
+                .map(it -> it.getResource());
+    }
+
+    /**
+     * Stream the resources matching the query. Same transaction behavior as {@link #resourceStreamAll()}. The caller must close the stream.
+     *
+     * @param <T>
+     *            the type of resources
+     * @param query
+     *            the query
+     * @return the resources
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public <T extends IPResource> Stream<T> resourceStreamAll(IPResourceQuery<T> query) {
+        flushWriteBehind();
+        return pluginResourceRepository.stream(query, streamBatchSize);
+    }
+
     @Override
     public void resourceUpdate(IPResource previousResource, IPResource updatedResource) {
-        Optional<PluginResource> pluginResourceOptional = pluginResourceRepository.findById(previousResource.getInternalId());
+        Optional<PluginResource> pluginResourceOptional = findPluginResource(previousResource.getInternalId());
         if (pluginResourceOptional.isEmpty()) {
             throw new ResourceNotFoundException(previousResource);
         }
 
         PluginResource pluginResource = pluginResourceOptional.get();
-        String resourceType = getResourceDefinition(updatedResource).getResourceType();
-        pluginResource.store(resourceType, updatedResource);
-        pluginResourceRepository.save(pluginResource);
+        IPResourceDefinition resourceDefinition = getResourceDefinition(updatedResource);
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer == null) {
+            pluginResource.store(resourceDefinition, updatedResource);
+            pluginResourceRepository.save(pluginResource);
+        } else {
+            pluginResource.store(resourceDefinition, copy(updatedResource));
+            buffer.resourceUpdate(pluginResource, getPk(updatedResource));
+        }
     }
 
     @Override
@@ -441,18 +605,69 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
         this.infiniteLoopTimeoutInMs = infiniteLoopTimeoutInMs;
     }
 
+    public void setMaxIdenticalIterations(int maxIdenticalIterations) {
+        this.maxIdenticalIterations = maxIdenticalIterations;
+    }
+
+    public void setMaxUpdatesPerResource(int maxUpdatesPerResource) {
+        this.maxUpdatesPerResource = maxUpdatesPerResource;
+    }
+
+    /**
+     * The amount of resources to get from the database at a time when streaming them.
+     *
+     * @param streamBatchSize
+     *            the batch size
+     */
+    public void setStreamBatchSize(int streamBatchSize) {
+        this.streamBatchSize = streamBatchSize;
+    }
+
+    /**
+     * Keep all the writes of a transaction in memory and write them with bulk writes when needed (before a query that cannot be answered from memory and at the end).
+     *
+     * @param writeBehind
+     *            true to buffer the writes (default)
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
     @Override
     public void tagAdd(String resourceId, String tagName) {
-        pluginResourceRepository.addTagById(resourceId, tagName);
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer == null) {
+            pluginResourceRepository.addTagById(resourceId, tagName);
+            return;
+        }
+
+        findPluginResource(resourceId).ifPresent(pluginResource -> buffer.tagAdd(pluginResource, getPk(pluginResource.getResource()), tagName));
     }
 
     @Override
     public boolean tagDelete(String resourceId, String tagName) {
-        return pluginResourceRepository.removeTagById(resourceId, tagName);
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer == null) {
+            return pluginResourceRepository.removeTagById(resourceId, tagName);
+        }
+
+        Optional<PluginResource> pluginResourceOptional = findPluginResource(resourceId);
+        if (pluginResourceOptional.isEmpty()) {
+            return false;
+        }
+        PluginResource pluginResource = pluginResourceOptional.get();
+        return buffer.tagDelete(pluginResource, getPk(pluginResource.getResource()), tagName);
     }
 
     @Override
     public boolean tagExists(String resourceId, String tagName) {
+        MongoDbWriteBehindBuffer buffer = writeBehindBuffer.get();
+        if (buffer != null && buffer.isResourceOverridden(resourceId)) {
+            return findPluginResource(resourceId) //
+                    .map(it -> it.getTags().contains(tagName)) //
+                    .orElse(false);
+        }
+
         PluginResource pluginResource = new PluginResource() //
                 .setId(resourceId) //
                 .addTag(tagName);
@@ -467,9 +682,9 @@ public class ResourceServicesInMongoDbImpl extends AbstractBasics implements IPR
             return Collections.emptySet();
         }
 
-        Optional<PluginResource> pluginResource = pluginResourceRepository.findById(internalId);
+        Optional<PluginResource> pluginResource = findPluginResource(internalId);
         if (pluginResource.isPresent()) {
-            return pluginResource.get().getTags();
+            return new HashSet<>(pluginResource.get().getTags());
         } else {
             return Collections.emptySet();
         }
@@ -18,9 +18,10 @@ import org.springframework.context.annotation.Configuration;
 
 import com.foilen.infra.plugin.core.system.common.context.CommonServicesContextBean;
 import com.foilen.infra.plugin.core.system.common.context.InternalServicesContextBean;
-import com.foilen.infra.plugin.core.system.common.service.IPPluginServiceImpl;
+import com.foilen.infra.plugin.core.system.common.service.ChangeExecutionQueue;
 import com.foilen.infra.plugin.core.system.common.service.TimerServiceInExecutorImpl;
 import com.foilen.infra.plugin.core.system.common.service.TranslationServiceImpl;
+import com.foilen.infra.plugin.core.system.mongodb.service.IPPluginServiceMongoDbImpl;
 import com.foilen.infra.plugin.core.system.mongodb.service.MessagingServiceMongoDbImpl;
 import com.foilen.infra.plugin.core.system.mongodb.service.ResourceServicesInMongoDbImpl;
 import com.foilen.infra.plugin.v1.core.common.InfraPluginCommonInit;
@@ -40,6 +41,11 @@ public class ResourceServicesMongoDBSpringConfig {
     @Autowired
     private InternalServicesContext internalServicesContext;
 
+    @Bean
+    public ChangeExecutionQueue changeExecutionQueue() {
+        return new ChangeExecutionQueue();
+    }
+
     @Bean
     public CommonServicesContext commonServicesContext() {
         return new CommonServicesContextBean();
@@ -57,7 +63,7 @@ public class ResourceServicesMongoDBSpringConfig {
 
     @Bean
     public IPPluginService ipPluginService() {
-        return new IPPluginServiceImpl();
+        return new IPPluginServiceMongoDbImpl();
     }
 
     @Bean
@@ -9,7 +9,7 @@
  */
 package com.foilen.infra.plugin.core.system.mongodb.upgrader;
 
-import java.util.List;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,28 +35,27 @@ public class V2021020201_PluginResources_AddNewFields extends AbstractBasics imp
     @Override
     public void execute() {
 
-        List<PluginResource> pluginResources = pluginResourceRepository.findAll();
-        logger.info("Got {} resources to update", pluginResources.size());
-
         BufferBatchesTools.<PluginResource> autoClose(100, items -> {
             logger.info("Saving {} in batch", items.size());
             pluginResourceRepository.saveAll(items);
         }, bufferBatchesTools -> {
 
-            pluginResources.forEach(pluginResource -> {
-                boolean alreadyCorrect = CollectionsTools.isAllItemNotNull(pluginResource.getResourceDescription(), pluginResource.getResourceName());
-                if (alreadyCorrect) {
-                    logger.info("{} ({}) already correct. Skip", pluginResource.getId(), pluginResource.getResourceName());
-                    return;
-                }
-
-                IPResource resource = pluginResource.getResource();
-                pluginResource.setResourceDescription(resource.getResourceDescription());
-                pluginResource.setResourceName(resource.getResourceName());
-                logger.info("{} ({}) needs update", pluginResource.getId(), pluginResource.getResourceName());
-                bufferBatchesTools.add(pluginResource);
-
-            });
+            try (Stream<PluginResource> pluginResources = pluginResourceRepository.streamAll(100)) {
+                pluginResources.forEach(pluginResource -> {
+                    boolean alreadyCorrect = CollectionsTools.isAllItemNotNull(pluginResource.getResourceDescription(), pluginResource.getResourceName());
+                    if (alreadyCorrect) {
+                        logger.info("{} ({}) already correct. Skip", pluginResource.getId(), pluginResource.getResourceName());
+                        return;
+                    }
+
+                    IPResource resource = pluginResource.getResource();
+                    pluginResource.setResourceDescription(resource.getResourceDescription());
+                    pluginResource.setResourceName(resource.getResourceName());
+                    logger.info("{} ({}) needs update", pluginResource.getId(), pluginResource.getResourceName());
+                    bufferBatchesTools.add(pluginResource);
+
+                });
+            }
 
         });
 
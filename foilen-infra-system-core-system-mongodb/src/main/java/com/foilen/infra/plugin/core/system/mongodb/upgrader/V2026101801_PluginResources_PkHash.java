@@ -0,0 +1,112 @@
+/*
+    Foilen Infra System
+    https://github.com/foilen/foilen-infra-system
+    Copyright (c) 2017-2021 Foilen (https://foilen.com)
+
+    The MIT License
+    http://opensource.org/licenses/MIT
+
+ */
+package com.foilen.infra.plugin.core.system.mongodb.upgrader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.foilen.infra.plugin.core.system.common.resource.ResourcePrimaryKey;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.PluginResourceRepository;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
+import com.foilen.infra.plugin.core.system.mongodb.service.ResourceDefinitionService;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.smalltools.exception.SmallToolsException;
+import com.foilen.smalltools.tools.AbstractBasics;
+import com.foilen.smalltools.tools.BufferBatchesTools;
+import com.foilen.smalltools.upgrader.tasks.UpgradeTask;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+
+/**
+ * Fill the primary key hash of all the resources and make it unique per type. Fails with the list of the resources that have the same primary key if there are any.
+ */
+@Component
+public class V2026101801_PluginResources_PkHash extends AbstractBasics implements UpgradeTask {
+
+    @Autowired
+    private MongoClient mongoClient;
+    @Autowired
+    private PluginResourceRepository pluginResourceRepository;
+    @Autowired
+    private ResourceDefinitionService resourceDefinitionService;
+
+    @Value("${spring.data.mongodb.database}")
+    private String databaseName;
+
+    @Override
+    public void execute() {
+
+        BufferBatchesTools.<PluginResource> autoClose(100, items -> {
+            logger.info("Saving {} in batch", items.size());
+            pluginResourceRepository.saveAll(items);
+        }, bufferBatchesTools -> {
+
+            try (Stream<PluginResource> pluginResources = pluginResourceRepository.streamAll(100)) {
+                pluginResources.forEach(pluginResource -> {
+                    IPResourceDefinition resourceDefinition = resourceDefinitionService.getResourceDefinition(pluginResource.getType());
+                    if (resourceDefinition == null) {
+                        logger.warn("{} ({}) has the unknown type {}. Skip (its hash will be computed when its plugin is loaded)", pluginResource.getId(), pluginResource.getResourceName(), pluginResource.getType());
+                        return;
+                    }
+
+                    pluginResource.store(resourceDefinition, pluginResource.getResource());
+                    bufferBatchesTools.add(pluginResource);
+
+                });
+            }
+
+        });
+
+        MongoCollection<Document> collection = mongoClient.getDatabase(databaseName).getCollection("pluginResource");
+
+        logger.info("Check that no resources have the same type and primary key");
+        List<Document> duplicates = collection.aggregate(Arrays.asList( //
+                new Document("$match", new Document("pkHash", new Document("$exists", true))), //
+                new Document("$group", new Document("_id", new Document("type", "$type").append("pkHash", "$pkHash")) //
+                        .append("count", new Document("$sum", 1)) //
+                        .append("ids", new Document("$push", "$_id"))), //
+                new Document("$match", new Document("count", new Document("$gt", 1))) //
+        )).allowDiskUse(true).into(new ArrayList<>());
+        if (!duplicates.isEmpty()) {
+            for (Document duplicate : duplicates) {
+                String type = ((Document) duplicate.get("_id")).getString("type");
+                IPResourceDefinition resourceDefinition = resourceDefinitionService.getResourceDefinition(type);
+                List<String> resources = new ArrayList<>();
+                for (Object id : duplicate.getList("ids", Object.class)) {
+                    pluginResourceRepository.findById(id.toString()).ifPresent(pluginResource -> resources.add( //
+                            pluginResource.getId() + " (" + pluginResource.getResourceName() + ") " + ResourcePrimaryKey.from(resourceDefinition, pluginResource.getResource())));
+                }
+                logger.error("{} resources of type {} have the same primary key: {}", duplicate.getInteger("count"), type, resources);
+            }
+            throw new SmallToolsException("Cannot create the unique index on the type and the primary key hash since " + duplicates.size()
+                    + " primary keys are used by many resources (see the logs). Remove or change the duplicates and restart");
+        }
+
+        logger.info("Create the unique index on the type and the primary key hash");
+        collection.createIndex(new Document("type", 1).append("pkHash", 1), new IndexOptions() //
+                .unique(true) //
+                .partialFilterExpression(new Document("pkHash", new Document("$exists", true))));
+
+    }
+
+    @Override
+    public String useTracker() {
+        return MongoDbUpgraderConstants.TRACKER;
+    }
+
+}
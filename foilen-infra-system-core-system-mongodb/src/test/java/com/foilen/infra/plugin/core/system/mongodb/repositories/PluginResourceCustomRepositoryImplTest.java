@@ -9,19 +9,34 @@
  */
 package com.foilen.infra.plugin.core.system.mongodb.repositories;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import com.foilen.infra.plugin.core.system.junits.JunitsHelper;
 import com.foilen.infra.plugin.core.system.mongodb.AbstractSpringTest;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.resource.example.JunitResource;
+import com.foilen.smalltools.exception.SmallToolsException;
 import com.foilen.smalltools.test.asserts.AssertTools;
 import com.foilen.smalltools.upgrader.tasks.UpgradeTask;
 
@@ -32,6 +47,8 @@ public class PluginResourceCustomRepositoryImplTest extends AbstractSpringTest {
     @Autowired
     private InternalServicesContext internalServicesContext;
     @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
     private PluginResourceRepository pluginResourceRepository;
     @Autowired
     private List<UpgradeTask> upgradeTasks;
@@ -54,4 +71,112 @@ public class PluginResourceCustomRepositoryImplTest extends AbstractSpringTest {
         AssertTools.assertJsonComparisonWithoutNulls("PluginResourceCustomRepositoryImplTest-testFindAllPageable-few-1.json", getClass(), cleanup(pluginResourceRepository.findAll(pageable)));
     }
 
+    private List<String> getOtherIndexNames() {
+        return mongoTemplate.indexOps(PluginResource.class).getIndexInfo().stream() //
+                .map(IndexInfo::getName) //
+                .filter(it -> !it.startsWith("resourceProperties_")) //
+                .sorted() //
+                .collect(Collectors.toList());
+    }
+
+    private List<String> getPropertiesIndexNames() {
+        return mongoTemplate.indexOps(PluginResource.class).getIndexInfo().stream() //
+                .map(IndexInfo::getName) //
+                .filter(it -> it.startsWith("resourceProperties_")) //
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testUpdatePkHashes() {
+
+        // One without hash (plugin not loaded during the upgrade) and one with a stale hash (plugin changed its primary key)
+        IPResourceDefinition resourceDefinition = commonServicesContext.getResourceService().getResourceDefinition(JunitResource.class);
+        PluginResource missing = pluginResourceRepository.save(new PluginResource(resourceDefinition, new JunitResource("missing")));
+        PluginResource stale = pluginResourceRepository.save(new PluginResource(resourceDefinition, new JunitResource("stale")));
+        mongoTemplate.updateFirst(new Query(new Criteria("id").is(missing.getId())), new Update().unset("pkHash"), PluginResource.class);
+        mongoTemplate.updateFirst(new Query(new Criteria("id").is(stale.getId())), new Update().set("pkHash", "stale"), PluginResource.class);
+        Assert.assertFalse(commonServicesContext.getResourceService().resourceFindByPk(new JunitResource("missing")).isPresent());
+        Assert.assertFalse(commonServicesContext.getResourceService().resourceFindByPk(new JunitResource("stale")).isPresent());
+
+        pluginResourceRepository.updatePkHashes(Collections.singletonList(resourceDefinition));
+
+        Assert.assertTrue(commonServicesContext.getResourceService().resourceFindByPk(new JunitResource("missing")).isPresent());
+        Assert.assertTrue(commonServicesContext.getResourceService().resourceFindByPk(new JunitResource("stale")).isPresent());
+    }
+
+    @Test
+    public void testUpdatePkHashes_duplicates() {
+
+        // 2 resources with the same primary key when one of them has no hash
+        IPResourceDefinition resourceDefinition = commonServicesContext.getResourceService().getResourceDefinition(JunitResource.class);
+        pluginResourceRepository.save(new PluginResource(resourceDefinition, new JunitResource("duplicate")));
+        PluginResource duplicate = new PluginResource(resourceDefinition, new JunitResource("duplicate"));
+        duplicate.setPkHash(null);
+        duplicate = pluginResourceRepository.save(duplicate);
+
+        try {
+            pluginResourceRepository.updatePkHashes(Collections.singletonList(resourceDefinition));
+            Assert.fail("Expecting SmallToolsException");
+        } catch (SmallToolsException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(duplicate.getId()));
+        }
+    }
+
+    @Test
+    public void testUpdatePropertiesIndexes() {
+
+        // The indexes from the upgrades (e.g. V2020040102_Indexes)
+        List<String> otherIndexNames = getOtherIndexNames();
+        Assert.assertTrue(otherIndexNames.contains("resource.$**_1"));
+
+        // Create
+        IPResourceDefinition resourceDefinition = commonServicesContext.getResourceService().getResourceDefinition(JunitResource.class);
+        pluginResourceRepository.updatePropertiesIndexes(Collections.singletonList(resourceDefinition));
+        List<String> names = getPropertiesIndexNames();
+        Assert.assertEquals(1, names.size());
+        Assert.assertTrue(names.get(0).startsWith("resourceProperties_" + resourceDefinition.getResourceType() + "_"));
+
+        // The searchable properties are the prefix
+        IndexInfo indexInfo = mongoTemplate.indexOps(PluginResource.class).getIndexInfo().stream() //
+                .filter(it -> it.getName().equals(names.get(0))) //
+                .findFirst().get();
+        String firstSearchableProperty = new TreeSet<>(resourceDefinition.getSearchableProperties()).first();
+        Assert.assertEquals("resource." + firstSearchableProperty, indexInfo.getIndexFields().get(0).getKey());
+
+        // Still usable
+        JunitsHelper.createFakeData(commonServicesContext, internalServicesContext);
+
+        // Drop the ones no longer declared
+        pluginResourceRepository.updatePropertiesIndexes(Collections.emptyList());
+        Assert.assertEquals(Collections.emptyList(), getPropertiesIndexNames());
+
+        // The other indexes are untouched
+        Assert.assertEquals(otherIndexNames, getOtherIndexNames());
+    }
+
+    @Test
+    public void testUpdatePropertiesIndexes_tooManyIndexes() {
+
+        // Fill the collection up to the MongoDB limit
+        pluginResourceRepository.updatePropertiesIndexes(Collections.emptyList());
+        IndexOperations indexOperations = mongoTemplate.indexOps(PluginResource.class);
+        List<String> otherIndexNames = getOtherIndexNames();
+        for (int i = otherIndexNames.size(); i < 64; ++i) {
+            indexOperations.ensureIndex(new Index().named("filler_" + i).on("filler_" + i, Direction.ASC));
+        }
+
+        try {
+            IPResourceDefinition resourceDefinition = commonServicesContext.getResourceService().getResourceDefinition(JunitResource.class);
+            pluginResourceRepository.updatePropertiesIndexes(Collections.singletonList(resourceDefinition));
+            Assert.fail("Expecting SmallToolsException");
+        } catch (SmallToolsException e) {
+            Assert.assertEquals(Collections.emptyList(), getPropertiesIndexNames());
+        } finally {
+            for (int i = otherIndexNames.size(); i < 64; ++i) {
+                indexOperations.dropIndex("filler_" + i);
+            }
+        }
+        Assert.assertEquals(otherIndexNames, getOtherIndexNames());
+    }
+
 }
@@ -9,22 +9,41 @@
  */
 package com.foilen.infra.plugin.core.system.mongodb.service;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.foilen.infra.plugin.core.system.junits.AbstractIPResourceServiceTest;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.MessageRepository;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.PluginResourceLinkRepository;
 import com.foilen.infra.plugin.core.system.mongodb.repositories.PluginResourceRepository;
+import com.foilen.infra.plugin.core.system.mongodb.repositories.documents.PluginResource;
 import com.foilen.infra.plugin.core.system.mongodb.spring.MongoDbSpringConfig;
 import com.foilen.infra.plugin.core.system.mongodb.spring.ResourceServicesMongoDBSpringConfig;
+import com.foilen.infra.plugin.core.system.mongodb.upgrader.V2026101801_PluginResources_PkHash;
+import com.foilen.infra.plugin.v1.core.context.ChangesContext;
 import com.foilen.infra.plugin.v1.core.context.CommonServicesContext;
 import com.foilen.infra.plugin.v1.core.context.internal.InternalServicesContext;
+import com.foilen.infra.plugin.v1.core.eventhandler.ActionHandler;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceDefinition;
+import com.foilen.infra.plugin.v1.core.resource.IPResourceQuery;
+import com.foilen.infra.plugin.v1.model.resource.IPResource;
+import com.foilen.infra.resource.example.JunitDynamicChangesHandler;
+import com.foilen.infra.resource.example.JunitResource;
+import com.foilen.smalltools.exception.SmallToolsException;
 import com.foilen.smalltools.upgrader.tasks.UpgradeTask;
 
 @RunWith(SpringRunner.class)
@@ -38,10 +57,16 @@ public class MongoDbIPResourceServiceTest extends AbstractIPResourceServiceTest
     @Autowired
     private MessageRepository messageRepository;
     @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private V2026101801_PluginResources_PkHash pkHashUpgradeTask;
+    @Autowired
     private PluginResourceRepository pluginResourceRepository;
     @Autowired
     private PluginResourceLinkRepository pluginResourceLinkRepository;
     @Autowired
+    private ResourceServicesInMongoDbImpl resourceServicesInMongoDbImpl;
+    @Autowired
     private List<UpgradeTask> upgradeTasks;
 
     public MongoDbIPResourceServiceTest() {
@@ -61,6 +86,21 @@ public class MongoDbIPResourceServiceTest extends AbstractIPResourceServiceTest
         super.beforeEach();
     }
 
+    private void changesExecuteWithActionOnce(ChangesContext changes, ActionHandler action) {
+        AtomicBoolean executed = new AtomicBoolean();
+        JunitDynamicChangesHandler.setDynamicChangesEventHandlers(Collections.singletonList((services, changesInTransactionContext) -> {
+            if (executed.getAndSet(true)) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(action);
+        }));
+        try {
+            resourceServicesInMongoDbImpl.changesExecute(changes);
+        } finally {
+            JunitDynamicChangesHandler.setDynamicChangesEventHandlers(Collections.emptyList());
+        }
+    }
+
     @Override
     protected CommonServicesContext getCommonServicesContext() {
         return commonServicesContext;
@@ -71,4 +111,239 @@ public class MongoDbIPResourceServiceTest extends AbstractIPResourceServiceTest
         return internalServicesContext;
     }
 
+    @Test
+    public void testResourceStreamAll() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        for (int i = 0; i < 5; ++i) {
+            changes.resourceAdd(new JunitResource("streamed_" + i));
+        }
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+
+        // Many batches
+        int initialStreamBatchSize = resourceServicesInMongoDbImpl.getStreamBatchSize();
+        resourceServicesInMongoDbImpl.setStreamBatchSize(2);
+        try {
+            List<String> expected = resourceServicesInMongoDbImpl.resourceFindAll().stream().map(IPResource::getInternalId).collect(Collectors.toList());
+            try (Stream<? extends IPResource> stream = resourceServicesInMongoDbImpl.resourceStreamAll()) {
+                Assert.assertEquals(expected, stream.map(IPResource::getInternalId).collect(Collectors.toList()));
+            }
+
+            IPResourceQuery<JunitResource> query = resourceServicesInMongoDbImpl.createResourceQuery(JunitResource.class);
+            expected = resourceServicesInMongoDbImpl.resourceFindAll(query).stream().map(IPResource::getInternalId).collect(Collectors.toList());
+            try (Stream<JunitResource> stream = resourceServicesInMongoDbImpl.resourceStreamAll(query)) {
+                Assert.assertEquals(expected, stream.map(IPResource::getInternalId).collect(Collectors.toList()));
+            }
+        } finally {
+            resourceServicesInMongoDbImpl.setStreamBatchSize(initialStreamBatchSize);
+        }
+    }
+
+    @Test
+    public void testResourceStreamAll_consumedAfterTheCall() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        for (int i = 0; i < 7; ++i) {
+            changes.resourceAdd(new JunitResource("streamedLater_" + i));
+        }
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+        List<String> expected = resourceServicesInMongoDbImpl.resourceFindAll().stream().map(IPResource::getInternalId).collect(Collectors.toList());
+        List<String> expectedJunitResources = resourceServicesInMongoDbImpl.resourceFindAll(resourceServicesInMongoDbImpl.createResourceQuery(JunitResource.class)).stream() //
+                .map(IPResource::getInternalId) //
+                .collect(Collectors.toList());
+
+        // Get the streams and read them after the calls returned (more than one batch each)
+        int initialStreamBatchSize = resourceServicesInMongoDbImpl.getStreamBatchSize();
+        resourceServicesInMongoDbImpl.setStreamBatchSize(2);
+        try (Stream<? extends IPResource> allStream = resourceServicesInMongoDbImpl.resourceStreamAll(); //
+                Stream<JunitResource> queryStream = resourceServicesInMongoDbImpl.resourceStreamAll(resourceServicesInMongoDbImpl.createResourceQuery(JunitResource.class))) {
+            resourceServicesInMongoDbImpl.setStreamBatchSize(initialStreamBatchSize);
+
+            Assert.assertEquals(expected, allStream.map(IPResource::getInternalId).collect(Collectors.toList()));
+            Assert.assertEquals(expectedJunitResources, queryStream.map(IPResource::getInternalId).collect(Collectors.toList()));
+        } finally {
+            resourceServicesInMongoDbImpl.setStreamBatchSize(initialStreamBatchSize);
+        }
+    }
+
+    @Test
+    public void testUpgrade_pkHashDuplicatesAreReported() {
+
+        // Resources with the same primary key without the unique index
+        mongoTemplate.indexOps(PluginResource.class).dropIndex("type_1_pkHash_1");
+        JunitResource resource = new JunitResource("duplicate");
+        IPResourceDefinition resourceDefinition = resourceServicesInMongoDbImpl.getResourceDefinition(resource);
+        pluginResourceRepository.save(new PluginResource(resourceDefinition, resource));
+        pluginResourceRepository.save(new PluginResource(resourceDefinition, new JunitResource("duplicate")));
+
+        try {
+            pkHashUpgradeTask.execute();
+            Assert.fail("Expecting SmallToolsException");
+        } catch (SmallToolsException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("since 1 primary keys are used by many resources"));
+        } finally {
+            pluginResourceRepository.deleteAll();
+            pkHashUpgradeTask.execute();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_addAndDeleteInSameTransaction() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        JunitResource keep = new JunitResource("addDelete_keep");
+        changes.resourceAdd(keep);
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+        keep = resourceServicesInMongoDbImpl.resourceFindByPk(keep).get();
+
+        // Add with links and tags, then delete it in the same transaction
+        JunitResource added = new JunitResource("addDelete_added");
+        changes.resourceAdd(added);
+        changes.linkAdd(keep, "USES", added);
+        changes.linkAdd(added, "USES", keep);
+        changes.tagAdd(added, "added");
+        changesExecuteWithActionOnce(changes, (services, c) -> c.resourceDelete(new JunitResource("addDelete_added")));
+
+        Assert.assertFalse(resourceServicesInMongoDbImpl.resourceFindByPk(added).isPresent());
+        Assert.assertEquals(1, pluginResourceRepository.count());
+        Assert.assertEquals(0, pluginResourceLinkRepository.count());
+    }
+
+    @Test
+    public void testWriteBehind_cascadeLinkDeletion() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        JunitResource r1 = new JunitResource("cascade_1");
+        JunitResource r2 = new JunitResource("cascade_2");
+        JunitResource r3 = new JunitResource("cascade_3");
+        changes.resourceAdd(r1);
+        changes.resourceAdd(r2);
+        changes.resourceAdd(r3);
+        changes.linkAdd(r1, "USES", r2);
+        changes.linkAdd(r2, "USES", r3);
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+
+        // Add links (one on the deleted resource) and delete the resource in the same transaction
+        changes.linkAdd(r3, "USES", r2);
+        changes.linkAdd(r1, "USES", r3);
+        changesExecuteWithActionOnce(changes, (services, c) -> c.resourceDelete(new JunitResource("cascade_2")));
+
+        Assert.assertFalse(resourceServicesInMongoDbImpl.resourceFindByPk(r2).isPresent());
+        Assert.assertEquals(2, pluginResourceRepository.count());
+        Assert.assertEquals(1, pluginResourceLinkRepository.count());
+        Assert.assertEquals(Arrays.asList("cascade_3"), resourceServicesInMongoDbImpl.linkFindAllByFromResourceAndLinkType(r1, "USES").stream().map(it -> ((JunitResource) it).getText()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testWriteBehind_concurrentTagChangesAreKept() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        JunitResource resource = new JunitResource("concurrentTags");
+        changes.resourceAdd(resource);
+        changes.tagAdd(resource, "deleted");
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+        String id = resourceServicesInMongoDbImpl.resourceFindByPk(resource).get().getInternalId();
+
+        // Change the tags while another writer adds one
+        changes.tagAdd(resource, "mine");
+        changes.tagDelete(resource, "deleted");
+        changesExecuteWithActionOnce(changes, (services, c) -> pluginResourceRepository.addTagById(id, "theirs"));
+
+        Assert.assertEquals(Arrays.asList("mine", "theirs"), resourceServicesInMongoDbImpl.tagFindAllByResource(resource).stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testWriteBehind_concurrentUpdateFails() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        JunitResource resource = new JunitResource("concurrentUpdate");
+        changes.resourceAdd(resource);
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+        String id = resourceServicesInMongoDbImpl.resourceFindByPk(resource).get().getInternalId();
+
+        // Update (buffered) while another writer changes it
+        changes.tagAdd(resource, "mine");
+        try {
+            changesExecuteWithActionOnce(changes, (services, c) -> {
+                IPResource previousResource = resourceServicesInMongoDbImpl.resourceFind(id).get();
+                IPResource updatedResource = new JunitResource("concurrentUpdate_updated");
+                updatedResource.setInternalId(id);
+                resourceServicesInMongoDbImpl.resourceUpdate(previousResource, updatedResource);
+                pluginResourceRepository.addTagById(id, "theirs");
+            });
+            Assert.fail("Expecting OptimisticLockingFailureException");
+        } catch (OptimisticLockingFailureException e) {
+        }
+        changes.clear();
+
+        Assert.assertFalse(resourceServicesInMongoDbImpl.resourceFindByPk(new JunitResource("concurrentUpdate_updated")).isPresent());
+        Assert.assertEquals(id, resourceServicesInMongoDbImpl.resourceFindByPk(resource).get().getInternalId());
+    }
+
+    @Test
+    public void testWriteBehind_deleteAndAddSamePk() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        JunitResource resource = new JunitResource("samePk");
+        changes.resourceAdd(resource);
+        changes.tagAdd(resource, "first");
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+        String firstId = resourceServicesInMongoDbImpl.resourceFindByPk(resource).get().getInternalId();
+
+        // Delete and add it back in the same transaction
+        changes.resourceDelete(firstId);
+        changes.resourceAdd(new JunitResource("samePk"));
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+
+        JunitResource added = resourceServicesInMongoDbImpl.resourceFindByPk(resource).get();
+        Assert.assertNotEquals(firstId, added.getInternalId());
+        Assert.assertEquals(1, pluginResourceRepository.count());
+        Assert.assertTrue(resourceServicesInMongoDbImpl.tagFindAllByResource(added).isEmpty());
+    }
+
+    @Test
+    public void testWriteBehind_pkSwap() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        changes.resourceAdd(new JunitResource("swap_a"));
+        changes.resourceAdd(new JunitResource("swap_b"));
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+        String aId = resourceServicesInMongoDbImpl.resourceFindByPk(new JunitResource("swap_a")).get().getInternalId();
+        String bId = resourceServicesInMongoDbImpl.resourceFindByPk(new JunitResource("swap_b")).get().getInternalId();
+
+        // Swap the primary keys in the same transaction
+        changes.resourceUpdate(aId, new JunitResource("swap_tmp"));
+        changes.resourceUpdate(bId, new JunitResource("swap_a"));
+        changes.resourceUpdate(aId, new JunitResource("swap_b"));
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+
+        Assert.assertEquals(bId, resourceServicesInMongoDbImpl.resourceFindByPk(new JunitResource("swap_a")).get().getInternalId());
+        Assert.assertEquals(aId, resourceServicesInMongoDbImpl.resourceFindByPk(new JunitResource("swap_b")).get().getInternalId());
+        Assert.assertFalse(resourceServicesInMongoDbImpl.resourceFindByPk(new JunitResource("swap_tmp")).isPresent());
+        Assert.assertEquals(2, pluginResourceRepository.findById(aId).get().getVersion());
+        Assert.assertEquals(2, pluginResourceRepository.findById(bId).get().getVersion());
+    }
+
+    @Test
+    public void testWriteBehind_versionOfAddedResources() {
+
+        ChangesContext changes = new ChangesContext(resourceServicesInMongoDbImpl);
+        changes.resourceAdd(new JunitResource("version"));
+        resourceServicesInMongoDbImpl.changesExecute(changes);
+        String id = resourceServicesInMongoDbImpl.resourceFindByPk(new JunitResource("version")).get().getInternalId();
+        Assert.assertEquals(1, pluginResourceRepository.findById(id).get().getVersion());
+
+        // Saved by the repository
+        resourceServicesInMongoDbImpl.setWriteBehind(false);
+        try {
+            changes.resourceUpdate(id, new JunitResource("version_updated"));
+            resourceServicesInMongoDbImpl.changesExecute(changes);
+        } finally {
+            resourceServicesInMongoDbImpl.setWriteBehind(true);
+        }
+
+        Assert.assertEquals(1, pluginResourceRepository.count());
+        Assert.assertEquals(2, pluginResourceRepository.findById(id).get().getVersion());
+    }
+
 }